@@ -5,9 +5,13 @@
 package sim;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Assembler {
   public static class AssemblerException extends Exception {
@@ -23,9 +27,30 @@ public class Assembler {
                                                  "$gp", "$sp", "$fp", "$ra"};
 
   /**
-   * Map of labels and their corresponding memory addresses.
+   * Map of labels and their corresponding memory addresses, in source order. Kept per instance so
+   * that several assemblers can run concurrently without seeing each other's labels.
    */
-  private static final Map<String, Integer> labelMap = new HashMap<>();
+  private final Map<String, Integer> labelMap = new LinkedHashMap<>();
+
+  /**
+   * Source line number (1-based) of every instruction of the last assembled program.
+   */
+  private int[] sourceLines = new int[0];
+
+  /**
+   * Labels named by {@code .globl} directives in the last assembled program.
+   */
+  private final Set<String> exports = new LinkedHashSet<>();
+
+  /**
+   * Whether jump targets may be left for the linker, see {@link #assembleModule(String, String)}.
+   */
+  private boolean relocatable;
+
+  /**
+   * Jump target symbol of every j and jal instruction in relocatable mode, by instruction index.
+   */
+  private final Map<Integer, String> relocations = new LinkedHashMap<>();
 
   /**
    * Map of assembly instructions to their binary opcodes.
@@ -44,6 +69,12 @@ public class Assembler {
     put("addi", "001000");
     put("lw", "100011");
     put("sw", "101011");
+    put("lb", "100000");
+    put("lh", "100001");
+    put("lbu", "100100");
+    put("lhu", "100101");
+    put("sb", "101000");
+    put("sh", "101001");
     put("beq", "000100");
     put("bne", "000101");
 
@@ -75,17 +106,68 @@ public class Assembler {
    * @return A list of binary machine code instructions.
    */
   public List<String> assemble(String assemblyCode) throws AssemblerException {
+    relocatable = false;
+    return assembleLines(assemblyCode);
+  }
+
+  /**
+   * Assembles one source file of a larger program into a relocatable module, for
+   * {@link Linker}. Labels named by a {@code .globl} directive are exported to the other modules;
+   * {@code j} and {@code jal} may target labels of other modules, which are resolved when linking.
+   * Branches must stay within the module.
+   *
+   * @param name The module name, used in linker errors.
+   * @param assemblyCode The MIPS assembly code of the module.
+   *
+   * @return The module, with symbol offsets relative to its first instruction.
+   *
+   * @throws AssemblerException If the code cannot be assembled or exports an undefined label.
+   */
+  public Linker.ObjectModule assembleModule(String name, String assemblyCode)
+          throws AssemblerException {
+    relocatable = true;
+    try{
+      List<String> code = assembleLines(assemblyCode);
+      Map<String, Integer> symbols = new LinkedHashMap<>();
+      labelMap.forEach((label, address)->symbols.put(label, address - 0x00400000));
+      for(String export : exports){
+        if(!symbols.containsKey(export)){
+          throw new AssemblerException("Exported label not found: " + export);
+        }
+      }
+      return new Linker.ObjectModule(name, List.copyOf(code), Collections.unmodifiableMap(symbols),
+                                     Set.copyOf(exports),
+                                     Collections.unmodifiableMap(new LinkedHashMap<>(relocations)));
+    } finally{
+      relocatable = false;
+    }
+  }
+
+  private List<String> assembleLines(String assemblyCode) throws AssemblerException {
     List<String> binaryInstructions;
+    labelMap.clear();
+    exports.clear();
+    relocations.clear();
     String[] lines = assemblyCode.split("\n");
     List<String> assemblyLines = new ArrayList<>();
+    List<Integer> instructionLines = new ArrayList<>();
 
     // Remove comments and clean up assembly lines
-    for(String line : lines){
-      line = line.split("#")[0].trim(); // Remove comments
-      if(!line.isEmpty()){
+    for(int i = 0; i < lines.length; i++){
+      String line = lines[i].split("#")[0].trim(); // Remove comments
+      if(line.startsWith(".globl")){
+        String[] symbols = line.split("[ ,\t]+");
+        for(int j = 1; j < symbols.length; j++){
+          exports.add(symbols[j]);
+        }
+      } else if(!line.isEmpty()){
         assemblyLines.add(line);
+        if(!line.endsWith(":")){
+          instructionLines.add(i + 1);
+        }
       }
     }
+    sourceLines = instructionLines.stream().mapToInt(Integer::intValue).toArray();
 
     parseLabels(assemblyLines);
     binaryInstructions = convertToBinary(assemblyLines);
@@ -93,12 +175,31 @@ public class Assembler {
     return binaryInstructions;
   }
 
+  /**
+   * Retrieves the symbol table of the last assembled program.
+   *
+   * @return An unmodifiable map of label names to their addresses, in source order.
+   */
+  public Map<String, Integer> getLabels() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(labelMap));
+  }
+
+  /**
+   * Retrieves the source line of every instruction of the last assembled program, e.g. for
+   * coverage reports.
+   *
+   * @return A new array holding the 1-based line number of each instruction, by instruction index.
+   */
+  public int[] getSourceLines() {
+    return sourceLines.clone();
+  }
+
   /**
    * Parses labels in the assembly code and maps them to their corresponding memory addresses.
    *
    * @param assemblyLines A list of assembly code lines.
    */
-  private static void parseLabels(List<String> assemblyLines) {
+  private void parseLabels(List<String> assemblyLines) {
     int currentAddress = 0;
     for(String line : assemblyLines){
       line = line.trim();
@@ -118,7 +219,7 @@ public class Assembler {
    *
    * @return A list of binary machine code instructions.
    */
-  private static List<String> convertToBinary(List<String> assemblyLines) throws AssemblerException {
+  private List<String> convertToBinary(List<String> assemblyLines) throws AssemblerException {
     List<String> binaryCode = new ArrayList<>();
     int currentLine = 0;
 
@@ -174,7 +275,13 @@ public class Assembler {
             break;
           }
           case "lw":
-          case "sw":{
+          case "sw":
+          case "lb":
+          case "lh":
+          case "lbu":
+          case "lhu":
+          case "sb":
+          case "sh":{
             String rt = registerToBinary(parts[1]);
             String offsetAndRs = parts[2];
             String[] offsetParts = offsetAndRs.split("[()]");
@@ -209,7 +316,10 @@ public class Assembler {
           case "jal":{
             String label = parts[1];
             Integer address = labelMap.get(label); // Absolute label address
-            if(address == null){
+            if(relocatable){
+              relocations.put(currentLine, label);
+              address = 0x00400000; // Patched by the linker
+            } else if(address == null){
               throw new AssemblerException("Label not found: " + label + " in instruction: " + line);
             }
             // Compress 32 bits into 26 bits
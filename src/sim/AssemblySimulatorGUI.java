@@ -6,23 +6,62 @@
 package sim;
 
 import javax.swing.*;
+import javax.swing.border.TitledBorder;
 import javax.swing.plaf.basic.BasicScrollBarUI;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableModel;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AssemblySimulatorGUI {
   private static final Font TEXT_FONT = new Font("Cascadia Mono", Font.PLAIN, 16);
-  private final JTextArea assemblyInput, machineCodeOutput, registerFileLeft, registerFileRight,
-          instructionMemoryOutput, dataMemoryOutput;
+  private static final String[] BYTE_BINARY = new String[256];
+  private static final int DASHBOARD_INTERVAL_MILLIS = 250;
+  private static final int WATCHDOG_CHECK_INTERVAL = 1_000;
+  private final JTextArea assemblyInput, machineCodeOutput, registerFileLeft, registerFileRight;
+  private final InstructionMemoryTableModel instructionMemoryModel =
+          new InstructionMemoryTableModel();
+  private final DataMemoryTableModel dataMemoryModel = new DataMemoryTableModel();
+  private final JTable instructionMemoryTable;
+  private final JScrollPane instructionMemoryPane;
+  private final TitledBorder instructionMemoryBorder;
   private final JSpinner clockRateSpinner;
+  private final JSpinner dataMemorySpinner;
+  private final JProgressBar loadProgressBar;
+  private final PerformancePanel performancePanel = new PerformancePanel();
+  private final RunListener runListener = new RunListener();
+  private final AtomicReference<SimulationController.Snapshot> pendingSnapshot =
+          new AtomicReference<>();
   private Simulator simulator;
+  private Disassembler disassembler;
+  private SimulationController controller;
+  private SimulationController.Snapshot displayedSnapshot; // Read on the EDT only
+  private SimulatorMetrics simulatorMetrics;
   private boolean displayInHex = false;
 
+  static{
+    for(int i = 0; i < BYTE_BINARY.length; i++){
+      BYTE_BINARY[i] = String.format("%8s", Integer.toBinaryString(i)).replace(' ', '0');
+    }
+  }
+
   /**
    * The main entry point for launching the GUI.
    */
@@ -113,16 +152,26 @@ public class AssemblySimulatorGUI {
     mainPanel.add(topPanel, topPanelConstraints);
 
     // Memory display area
-    JPanel memoryPanel = new JPanel(new GridLayout(1, 2));
+    JPanel memoryPanel = new JPanel(new GridLayout(1, 3));
     memoryPanel.setBackground(Color.BLACK);
 
-    instructionMemoryOutput = createTextArea("INSTRUCTION MEMORY");
-    instructionMemoryOutput.setEditable(false);
-    memoryPanel.add(createStyledScrollPane(instructionMemoryOutput));
+    instructionMemoryTable = createTable(instructionMemoryModel);
+    instructionMemoryTable.setDefaultRenderer(Object.class, new ProgramCounterRenderer());
+    instructionMemoryBorder = createTitledBorder("INSTRUCTION MEMORY");
+    instructionMemoryPane = createStyledScrollPane(instructionMemoryTable);
+    instructionMemoryPane.setBorder(instructionMemoryBorder);
+    memoryPanel.add(instructionMemoryPane);
 
-    dataMemoryOutput = createTextArea("DATA MEMORY");
-    dataMemoryOutput.setEditable(false);
-    memoryPanel.add(createStyledScrollPane(dataMemoryOutput));
+    JScrollPane dataMemoryPane = createStyledScrollPane(createTable(dataMemoryModel));
+    dataMemoryPane.setBorder(createTitledBorder("DATA MEMORY"));
+    memoryPanel.add(dataMemoryPane);
+
+    // Live performance dashboard, sampled at a fixed low rate independent of the run speed
+    performancePanel.setBorder(createTitledBorder("PERFORMANCE"));
+    memoryPanel.add(performancePanel);
+    new Timer(DASHBOARD_INTERVAL_MILLIS, _->{
+      if(controller != null) performancePanel.sample(controller.snapshot());
+    }).start();
 
     mainPanel.add(memoryPanel, memoryPanelConstraints);
 
@@ -140,17 +189,34 @@ public class AssemblySimulatorGUI {
     clockRateLabel.setForeground(Color.WHITE);
     clockRateLabel.setFont(TEXT_FONT);
 
-    clockRateSpinner = new JSpinner(new SpinnerNumberModel(1, 1, Integer.MAX_VALUE, 1));
+    clockRateSpinner = new JSpinner(new SpinnerNumberModel(1, 0, Integer.MAX_VALUE, 1));
     clockRateSpinner.setPreferredSize(new Dimension(60, 30));
     clockRateSpinner.setFont(TEXT_FONT);
 
+    JLabel dataMemoryLabel = new JLabel("Data Memory (KB):");
+    dataMemoryLabel.setForeground(Color.WHITE);
+    dataMemoryLabel.setFont(TEXT_FONT);
+
+    // Applied on the next Assemble, up to the 1 MB the data memory supports
+    dataMemorySpinner = new JSpinner(new SpinnerNumberModel(4, 1, 1024, 1));
+    dataMemorySpinner.setPreferredSize(new Dimension(70, 30));
+    dataMemorySpinner.setFont(TEXT_FONT);
+
+    loadProgressBar = new JProgressBar(0, 100);
+    loadProgressBar.setStringPainted(true);
+    loadProgressBar.setFont(TEXT_FONT);
+    loadProgressBar.setVisible(false);
+
     bottomPanel.add(loadFileButton);
+    bottomPanel.add(loadProgressBar);
     bottomPanel.add(assembleButton);
     bottomPanel.add(runButton);
     bottomPanel.add(stepButton);
     bottomPanel.add(resetButton);
     bottomPanel.add(clockRateLabel);
     bottomPanel.add(clockRateSpinner);
+    bottomPanel.add(dataMemoryLabel);
+    bottomPanel.add(dataMemorySpinner);
 
     mainPanel.add(bottomPanel, bottomPanelConstraints);
     frame.add(mainPanel);
@@ -160,7 +226,7 @@ public class AssemblySimulatorGUI {
     binaryButton.addActionListener(_->updateMachineCode(false));
     loadFileButton.addActionListener(new LoadListener());
     assembleButton.addActionListener(new AssembleListener());
-    runButton.addActionListener(new RunListener());
+    runButton.addActionListener(runListener);
     stepButton.addActionListener(new StepListener());
     resetButton.addActionListener(new ResetListener());
   }
@@ -178,22 +244,56 @@ public class AssemblySimulatorGUI {
     textArea.setBackground(Color.DARK_GRAY);
     textArea.setForeground(Color.WHITE);
     textArea.setCaretColor(Color.WHITE);
-    textArea.setBorder(
-            BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), title, 2,
-                                             2, TEXT_FONT, Color.WHITE));
+    textArea.setBorder(createTitledBorder(title));
     return textArea;
   }
 
+  /**
+   * Creates the titled border used around the display areas.
+   *
+   * @param title The title to display.
+   *
+   * @return A styled TitledBorder.
+   */
+  private TitledBorder createTitledBorder(String title) {
+    return BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), title, 2,
+                                            2, TEXT_FONT, Color.WHITE);
+  }
+
+  /**
+   * Creates a styled, read-only JTable for the given model. Only the rows scrolled into view are
+   * rendered, so the model may be arbitrarily large.
+   *
+   * @param model The model providing the table's rows.
+   *
+   * @return A styled JTable.
+   */
+  private JTable createTable(TableModel model) {
+    JTable table = new JTable(model);
+    table.setFont(TEXT_FONT);
+    table.setRowHeight(table.getFontMetrics(TEXT_FONT).getHeight() + 2);
+    table.setBackground(Color.DARK_GRAY);
+    table.setForeground(Color.WHITE);
+    table.setGridColor(Color.GRAY);
+    table.setFillsViewportHeight(true);
+    table.getTableHeader().setFont(TEXT_FONT);
+    table.getTableHeader().setBackground(Color.BLACK);
+    table.getTableHeader().setForeground(Color.WHITE);
+    table.getTableHeader().setReorderingAllowed(false);
+    return table;
+  }
+
   /**
    * Creates a JScrollPane with a custom-styled vertical and horizontal scrollbar. The scrollbars
    * are modernized with a minimalist design and custom colors.
    *
-   * @param textArea The JTextArea to be added to the scroll pane.
+   * @param view The text area or table to be added to the scroll pane.
    *
    * @return A JScrollPane with styled scrollbars.
    */
-  private JScrollPane createStyledScrollPane(JTextArea textArea) {
-    JScrollPane scrollPane = new JScrollPane(textArea);
+  private JScrollPane createStyledScrollPane(JComponent view) {
+    JScrollPane scrollPane = new JScrollPane(view);
+    scrollPane.getViewport().setBackground(Color.DARK_GRAY);
 
     // Set the background color for scrollbars
     scrollPane.getVerticalScrollBar().setBackground(Color.DARK_GRAY);
@@ -232,7 +332,7 @@ public class AssemblySimulatorGUI {
   }
 
   /**
-   * Updates the machine code display area with the current machine code.
+   * Updates the machine code display area with the current machine code and its disassembly.
    *
    * @param toHex If true, displays the machine code in hexadecimal; otherwise, binary.
    */
@@ -244,7 +344,8 @@ public class AssemblySimulatorGUI {
       for(int i = 0; i < simulator.getInstructionMemorySize() * 4; i += 4){
         String instruction = simulator.getInstruction(i + 0x00400000);
         output.append(String.format("%-4d | ", lineNumber++)); // Satır numarasını ekle
-        output.append(toHex ? toHexadecimal(instruction) : instruction).append("\n");
+        output.append(toHex ? toHexadecimal(instruction) : instruction);
+        output.append(" | ").append(disassembler.disassemble(i + 0x00400000)).append("\n");
       }
       machineCodeOutput.setText(output.toString());
       machineCodeOutput.setCaretPosition(0);
@@ -263,83 +364,94 @@ public class AssemblySimulatorGUI {
   }
 
   /**
-   * Updates the instruction memory display area with the current instruction memory state.
+   * Reloads both memory tables after the simulator has been replaced, showing the initial
+   * snapshot of its controller.
    */
-  private void updateInstructionMemory() {
-    if(simulator != null){
-      StringBuilder instructionMemoryState = new StringBuilder();
-      int programCounter = simulator.getProgramCounter();
-      String[][] instructionMemory = simulator.getInstructionMemoryState();
-
-      instructionMemoryState.append(
-              String.format("Address     Byte 1   Byte 2   Byte 3   Byte 4   PC = 0x%08X\n",
-                            programCounter));
-
-      for(String[] addresses : instructionMemory){
-        // Split 32-bit instruction into 8-bit segments
-        String[]
-                instructionParts =
-                {addresses[1].substring(0, 8), addresses[1].substring(8, 16),
-                 addresses[1].substring(16, 24), addresses[1].substring(24, 32)};
-
-        // Append address and instruction parts
-        String address = addresses[0];
-        instructionMemoryState.append(
-                String.format("%s: %s %s %s %s", address, instructionParts[0], instructionParts[1],
-                              instructionParts[2], instructionParts[3]));
-        if(Long.parseLong(address.substring(2), 16) == programCounter){
-          instructionMemoryState.append(" <- PC");
-        }
-        instructionMemoryState.append("\n");
-      }
+  private void reloadMemoryTables() {
+    pendingSnapshot.set(null);
+    displayedSnapshot = controller.snapshot();
+    instructionMemoryModel.fireTableDataChanged();
+    dataMemoryModel.fireTableDataChanged();
+  }
 
-      instructionMemoryOutput.setText(instructionMemoryState.toString());
-      instructionMemoryOutput.setCaretPosition(0);
+  /**
+   * Schedules a refresh of the displays on the event dispatch thread. Called on the simulation
+   * thread for every published snapshot; while a refresh is pending, the snapshot it will show is
+   * replaced, so the displays skip intermediate snapshots but always end on the latest one.
+   */
+  private void scheduleRefresh(SimulationController.Snapshot snapshot) {
+    if(pendingSnapshot.getAndSet(snapshot) == null){
+      SwingUtilities.invokeLater(()->{
+        SimulationController.Snapshot next = pendingSnapshot.getAndSet(null);
+        if(next == null) return; // Already shown by a direct refresh
+        refreshDisplays(next);
+        runListener.checkStopped(next);
+      });
     }
   }
 
   /**
-   * Updates the data memory display area with the current data memory state.
+   * Updates all displays from the controller's latest snapshot, after the simulator was changed
+   * on the event dispatch thread.
    */
-  private void updateDataMemory() {
-    if(simulator != null){
-      StringBuilder dataMemoryState = new StringBuilder();
-      String[][] dataMemory = simulator.getDataMemoryState();
-
-      // Add header
-      dataMemoryState.append("Address     Byte 1   Byte 2   Byte 3   Byte 4   Decimal Value\n");
-
-      // Format data memory content
-      for(String[] entry : dataMemory){
-        String address = entry[0];
-        int data = Integer.parseInt(entry[1]);
-
-        // Split 32-bit data into 8-bit parts
-        String[] dataBytes = new String[4];
-        for(int j = 0; j < 4; j++){
-          dataBytes[j] =
-                  String.format("%8s", Integer.toBinaryString((data >> (24 - j * 8))&0xFF))
-                        .replace(' ', '0');
-        }
+  private void refreshDisplays() {
+    pendingSnapshot.set(null);
+    refreshDisplays(controller.snapshot());
+  }
 
-        // Append formatted address, data bytes, and decimal value
-        dataMemoryState.append(
-                String.format("%s: %s %s %s %s %d\n", address, dataBytes[0], dataBytes[1],
-                              dataBytes[2], dataBytes[3], data));
+  /**
+   * Updates all displays from a single snapshot, so that the PC, the registers and every data
+   * memory row shown come from the same point of the execution.
+   *
+   * @param snapshot The snapshot to show.
+   */
+  private void refreshDisplays(SimulationController.Snapshot snapshot) {
+    displayedSnapshot = snapshot;
+    updateInstructionMemory();
+    updateRegisterFile();
+    updateDataMemory();
+  }
+
+  /**
+   * Updates the instruction memory display area with the displayed program counter. Only the rows
+   * of the previous and current PC are repainted.
+   */
+  private void updateInstructionMemory() {
+    if(simulator != null){
+      int programCounter = displayedSnapshot.programCounter();
+      instructionMemoryBorder.setTitle(
+              String.format("INSTRUCTION MEMORY   PC = 0x%08X", programCounter));
+
+      int previousRow = instructionMemoryModel.programCounterRow;
+      int row = (programCounter - 0x00400000) / 4;
+      instructionMemoryModel.programCounterRow = row;
+      if(previousRow >= 0 && previousRow < instructionMemoryModel.getRowCount()){
+        instructionMemoryModel.fireTableRowsUpdated(previousRow, previousRow);
+      }
+      if(row >= 0 && row < instructionMemoryModel.getRowCount()){
+        instructionMemoryModel.fireTableRowsUpdated(row, row);
+        instructionMemoryTable.scrollRectToVisible(instructionMemoryTable.getCellRect(row, 0, true));
       }
+      instructionMemoryPane.repaint(); // Redraw the titled border
+    }
+  }
 
-      // Update GUI
-      dataMemoryOutput.setText(dataMemoryState.toString());
-      dataMemoryOutput.setCaretPosition(0);
+  /**
+   * Updates the data memory display area with the displayed data memory state. The table only
+   * re-reads the rows that are scrolled into view.
+   */
+  private void updateDataMemory() {
+    if(simulator != null && dataMemoryModel.getRowCount() > 0){
+      dataMemoryModel.fireTableRowsUpdated(0, dataMemoryModel.getRowCount() - 1);
     }
   }
 
   /**
-   * Updates the register file display areas with the current register states.
+   * Updates the register file display areas with the displayed register states.
    */
   private void updateRegisterFile() {
     if(simulator != null){
-      String[][] registerState = simulator.getRegisterState();
+      String[][] registerState = displayedSnapshot.registerState();
       StringBuilder leftOutput = new StringBuilder();
       StringBuilder rightOutput = new StringBuilder();
 
@@ -454,17 +566,276 @@ public class AssemblySimulatorGUI {
   }
 
   /**
-   * Event listener for the Assemble button. Initializes the simulator and updates all displays.
+   * Table model presenting the instruction memory one instruction per row, split into bytes and
+   * disassembled, with a marker on the row the program counter points to. Cells are formatted on
+   * demand.
+   */
+  private class InstructionMemoryTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Address", "Byte 1", "Byte 2", "Byte 3", "Byte 4",
+                                             "Assembly", "PC"};
+    private int programCounterRow;
+
+    @Override
+    public int getRowCount() {
+      return simulator == null ? 0 : simulator.getInstructionMemorySize();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+      int address = 0x00400000 + row * 4;
+      if(column == 0){
+        return String.format("0x%08X", address);
+      }
+      if(column == 5){
+        return disassembler.disassemble(address);
+      }
+      if(column == 6){
+        return row == programCounterRow ? "<- PC" : "";
+      }
+      int start = (column - 1) * 8;
+      return simulator.getInstruction(address).substring(start, start + 8);
+    }
+  }
+
+  /**
+   * Table model presenting every data memory word, split into bytes, with its decimal value.
+   * Cells are formatted on demand from the displayed snapshot.
+   */
+  private class DataMemoryTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Address", "Byte 1", "Byte 2", "Byte 3", "Byte 4",
+                                             "Decimal Value"};
+
+    @Override
+    public int getRowCount() {
+      return displayedSnapshot == null ? 0 : displayedSnapshot.memory().length;
+    }
+
+    @Override
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+      int address = 0xFFFFFFFF - row * 4;
+      if(column == 0){
+        return String.format("0x%08X", address);
+      }
+      int data = displayedSnapshot.memory()[row];
+      if(column == 5){
+        return data;
+      }
+      return BYTE_BINARY[(data >>> (32 - column * 8))&0xFF];
+    }
+  }
+
+  /**
+   * Cell renderer highlighting the instruction memory row the program counter points to.
+   */
+  private class ProgramCounterRenderer extends DefaultTableCellRenderer {
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                   boolean hasFocus, int row, int column) {
+      Component cell = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row,
+                                                           column);
+      if(!isSelected){
+        cell.setBackground(row == instructionMemoryModel.programCounterRow ?
+                           Color.GRAY :
+                           Color.DARK_GRAY);
+        cell.setForeground(Color.WHITE);
+      }
+      return cell;
+    }
+  }
+
+  /**
+   * Dashboard showing the execution statistics of the latest snapshot: instructions per second,
+   * total steps, opcode mix, branch taken ratio, memory read and write rates, and a sparkline of
+   * the recent throughput. Rates are computed from the difference between consecutive samples, so
+   * the dashboard costs the simulation thread nothing beyond the counters it already keeps.
+   */
+  private class PerformancePanel extends JPanel {
+    private final JLabel instructionsPerSecond = createValueLabel();
+    private final JLabel totalSteps = createValueLabel();
+    private final JLabel branchTakenRatio = createValueLabel();
+    private final JLabel readsPerSecond = createValueLabel();
+    private final JLabel writesPerSecond = createValueLabel();
+    private final JLabel[] opcodeMix = new JLabel[Simulator.OpcodeClass.values().length];
+    private final Sparkline sparkline = new Sparkline(120);
+    private SimulationController.Snapshot previous;
+    private long previousTime;
+
+    PerformancePanel() {
+      super(new BorderLayout());
+      setBackground(Color.DARK_GRAY);
+      JPanel values = new JPanel(new GridLayout(0, 2));
+      values.setBackground(Color.DARK_GRAY);
+      addRow(values, "Instructions/s", instructionsPerSecond);
+      addRow(values, "Total steps", totalSteps);
+      addRow(values, "Branches taken", branchTakenRatio);
+      addRow(values, "Reads/s", readsPerSecond);
+      addRow(values, "Writes/s", writesPerSecond);
+      for(Simulator.OpcodeClass opcodeClass : Simulator.OpcodeClass.values()){
+        opcodeMix[opcodeClass.ordinal()] = createValueLabel();
+        addRow(values, opcodeClass.name().toLowerCase(), opcodeMix[opcodeClass.ordinal()]);
+      }
+      add(values, BorderLayout.NORTH);
+      add(sparkline, BorderLayout.CENTER);
+    }
+
+    private JLabel createValueLabel() {
+      JLabel label = new JLabel("-");
+      label.setFont(TEXT_FONT);
+      label.setForeground(Color.WHITE);
+      return label;
+    }
+
+    private void addRow(JPanel values, String name, JLabel value) {
+      JLabel label = createValueLabel();
+      label.setText(name);
+      values.add(label);
+      values.add(value);
+    }
+
+    /**
+     * Updates the dashboard from a snapshot. A snapshot with fewer instructions than the previous
+     * one, or one of a different simulator, starts a new rate history.
+     *
+     * @param snapshot The latest snapshot.
+     */
+    void sample(SimulationController.Snapshot snapshot) {
+      long now = System.nanoTime();
+      if(previous != null && snapshot.instructionsExecuted() < previous.instructionsExecuted()){
+        previous = null;
+        sparkline.clear();
+      }
+      if(previous != null){
+        double seconds = (now - previousTime) / 1e9;
+        double instructions = (snapshot.instructionsExecuted() - previous.instructionsExecuted());
+        instructionsPerSecond.setText(formatRate(instructions / seconds));
+        readsPerSecond.setText(formatRate(delta(snapshot, Simulator.OpcodeClass.LOAD) / seconds));
+        writesPerSecond.setText(formatRate(delta(snapshot, Simulator.OpcodeClass.STORE)
+                                           / seconds));
+        sparkline.add(instructions / seconds);
+      }
+      previous = snapshot;
+      previousTime = now;
+
+      long[] counts = snapshot.opcodeClassCounts();
+      long total = snapshot.instructionsExecuted();
+      totalSteps.setText(String.format("%,d", total));
+      for(int i = 0; i < counts.length; i++){
+        opcodeMix[i].setText(total == 0 ? "-" : String.format("%.1f%%", 100.0 * counts[i] / total));
+      }
+      long branches = counts[Simulator.OpcodeClass.BRANCH.ordinal()];
+      branchTakenRatio.setText(branches == 0 ? "-" : String.format("%.1f%%", 100.0 *
+                                                                   snapshot.branchesTaken() /
+                                                                   branches));
+    }
+
+    private long delta(SimulationController.Snapshot snapshot, Simulator.OpcodeClass opcodeClass) {
+      return snapshot.opcodeClassCounts()[opcodeClass.ordinal()] -
+             previous.opcodeClassCounts()[opcodeClass.ordinal()];
+    }
+
+    private static String formatRate(double rate) {
+      if(rate >= 1e9) return String.format("%.2f G", rate / 1e9);
+      if(rate >= 1e6) return String.format("%.2f M", rate / 1e6);
+      if(rate >= 1e3) return String.format("%.2f k", rate / 1e3);
+      return String.format("%.0f", rate);
+    }
+  }
+
+  /**
+   * A small line chart of the most recent values of a series, scaled to its maximum. The values
+   * are kept in a ring buffer.
+   */
+  private static class Sparkline extends JComponent {
+    private final double[] values;
+    private int start, count;
+
+    Sparkline(int capacity) {
+      this.values = new double[capacity];
+      setPreferredSize(new Dimension(capacity, 60));
+    }
+
+    void add(double value) {
+      values[(start + count) % values.length] = value;
+      if(count < values.length){
+        count++;
+      } else {
+        start = (start + 1) % values.length;
+      }
+      repaint();
+    }
+
+    void clear() {
+      start = count = 0;
+      repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+      int width = getWidth(), height = getHeight() - 4;
+      g.setColor(Color.DARK_GRAY);
+      g.fillRect(0, 0, getWidth(), getHeight());
+      if(count < 2) return;
+      double max = 0;
+      for(int i = 0; i < count; i++){
+        max = Math.max(max, values[(start + i) % values.length]);
+      }
+      int[] x = new int[count], y = new int[count];
+      for(int i = 0; i < count; i++){
+        x[i] = (int) ((long) i * (width - 1) / (values.length - 1));
+        double value = values[(start + i) % values.length];
+        y[i] = 2 + height - (max == 0 ? 0 : (int) (value / max * height));
+      }
+      Graphics2D g2 = (Graphics2D) g.create();
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2.setColor(Color.GREEN);
+      g2.drawPolyline(x, y, count);
+      g2.dispose();
+    }
+  }
+
+  /**
+   * Event listener for the Assemble button. Initializes a simulator with an instruction memory
+   * sized to the program and the chosen data memory size, and updates all displays.
    */
   private class AssembleListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
       String assemblyCode = assemblyInput.getText();
       try {
-        simulator = new Simulator(assemblyCode);
+        int dataMemorySize = (Integer) dataMemorySpinner.getValue() * 1024;
+        Simulator assembled = Simulator.forProgram(assemblyCode, dataMemorySize);
+        runListener.stop();
+        simulator = assembled;
+        disassembler = new Disassembler(simulator);
+        controller = new SimulationController(simulator,
+                                              AssemblySimulatorGUI.this::scheduleRefresh);
+        // Stop endless loops with a diagnostic; slow runs are the user's to stop
+        controller.setWatchdog(new Watchdog(Long.MAX_VALUE, Long.MAX_VALUE,
+                                            WATCHDOG_CHECK_INTERVAL));
+        if(simulatorMetrics != null) simulatorMetrics.unregister();
+        simulatorMetrics = SimulatorMetrics.register(controller);
+        reloadMemoryTables();
         updateMachineCode(displayInHex);
-        updateInstructionMemory();
-        updateRegisterFile();
-        updateDataMemory();
+        refreshDisplays();
       } catch (Assembler.AssemblerException ex) {
         JOptionPane.showMessageDialog(null,
                                     ex.getMessage(),
@@ -479,11 +850,10 @@ public class AssemblySimulatorGUI {
    */
   private class StepListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
-      if(simulator != null){
+      if(simulator != null && !controller.isRunning()){
         simulator.step();
-        updateInstructionMemory();
-        updateRegisterFile();
-        updateDataMemory();
+        controller.publish();
+        refreshDisplays();
         if(simulator.isFinished()){
           JOptionPane.showMessageDialog(null, "Program Finished", "Finished",
                                         JOptionPane.INFORMATION_MESSAGE);
@@ -493,53 +863,54 @@ public class AssemblySimulatorGUI {
   }
 
   /**
-   * Event listener for the Run button. Toggles between running and stopping the simulation.
+   * Event listener for the Run button. Toggles between running and stopping the simulation. The
+   * simulation runs on the controller's thread, and the displays follow its snapshots.
    */
   private class RunListener implements ActionListener {
-    private SwingWorker<Void, Void> worker;
-    private boolean running = false;
+    private JButton runButton; // Non-null while a run started from this button is shown
 
     public void actionPerformed(ActionEvent e) {
-      JButton sourceButton = (JButton) e.getSource();
-
-      if(!running){
-        running = true;
-        sourceButton.setText("Stop");
-
-        worker = new SwingWorker<>() {
-          @Override
-          protected Void doInBackground() throws Exception {
-            while(!simulator.isFinished() && running){
-              simulator.step();
-              SwingUtilities.invokeLater(()->{
-                updateInstructionMemory();
-                updateRegisterFile();
-                updateDataMemory();
-              });
-              int clockRate = (int) clockRateSpinner.getValue();
-              Thread.sleep(clockRate);
-            }
-            return null;
-          }
-
-          @Override
-          protected void done() {
-            if(!running) return;
-            SwingUtilities.invokeLater(()->{
-              JOptionPane.showMessageDialog(null, "Program Finished", "Finished",
-                                            JOptionPane.INFORMATION_MESSAGE);
-              sourceButton.setText("Run");
-              running = false;
-            });
-          }
-        };
-
-        worker.execute();
+      if(simulator == null) return;
+      if(runButton == null){
+        runButton = (JButton) e.getSource();
+        runButton.setText("Stop");
+        controller.start(()->((Number) clockRateSpinner.getValue()).longValue());
       } else {
-        running = false;
-        sourceButton.setText("Run");
+        stop();
+      }
+    }
+
+    /**
+     * Stops a run in progress, e.g. on Stop or before the simulator is replaced.
+     */
+    void stop() {
+      if(controller != null) controller.stop();
+      if(runButton != null){
+        runButton.setText("Run");
+        runButton = null;
+      }
+      if(simulator != null){
+        controller.publish();
+        refreshDisplays();
+      }
+    }
 
-        if(worker != null) worker.cancel(true);
+    /**
+     * Resets the button and reports the outcome once the run has ended by itself. A snapshot
+     * older than the controller's latest is ignored, since the refresh of the final one follows.
+     *
+     * @param snapshot The snapshot just displayed.
+     */
+    void checkStopped(SimulationController.Snapshot snapshot) {
+      if(runButton == null || controller.isRunning() || snapshot != controller.snapshot()) return;
+      runButton.setText("Run");
+      runButton = null;
+      if(snapshot.fault() != null){
+        JOptionPane.showMessageDialog(null, snapshot.fault(), "Execution Error",
+                                      JOptionPane.ERROR_MESSAGE);
+      } else if(snapshot.finished()){
+        JOptionPane.showMessageDialog(null, "Program Finished", "Finished",
+                                      JOptionPane.INFORMATION_MESSAGE);
       }
     }
   }
@@ -550,15 +921,19 @@ public class AssemblySimulatorGUI {
   private class ResetListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
       if(simulator != null){
+        runListener.stop();
         simulator.reset();
+        controller.publish();
         updateMachineCode(displayInHex);
-        updateInstructionMemory();
-        updateRegisterFile();
-        updateDataMemory();
+        refreshDisplays();
       }
     }
   }
 
+  /**
+   * Event listener for the Load File button. Lets the user pick a file and loads it into the
+   * assembly input area in the background.
+   */
   private class LoadListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
       FileDialog fileDialog = new FileDialog((Frame) null, "Load Assembly File", FileDialog.LOAD);
@@ -570,18 +945,88 @@ public class AssemblySimulatorGUI {
       String selectedDirectory = fileDialog.getDirectory();
 
       if(selectedFile != null && selectedDirectory != null){
-        File file = new File(selectedDirectory, selectedFile);
-        try(BufferedReader reader = new BufferedReader(new FileReader(file))){
-          assemblyInput.setText("");
-          String line;
-          while((line = reader.readLine()) != null){
-            assemblyInput.append(line + "\n");
+        JButton loadFileButton = (JButton) e.getSource();
+        FileLoader loader = new FileLoader(new File(selectedDirectory, selectedFile).toPath(),
+                                           loadFileButton);
+        loader.addPropertyChangeListener(event->{
+          if("progress".equals(event.getPropertyName())){
+            loadProgressBar.setValue((Integer) event.getNewValue());
           }
-        } catch(IOException ioException){
-          JOptionPane.showMessageDialog(null,
-                                        "Error while reading file: " + ioException.getMessage(),
-                                        "Error", JOptionPane.ERROR_MESSAGE);
+        });
+
+        loadFileButton.setEnabled(false);
+        loadProgressBar.setValue(0);
+        loadProgressBar.setVisible(true);
+        loader.execute();
+      }
+    }
+  }
+
+  /**
+   * Background task loading an assembly file. The file is memory-mapped and decoded in chunks off
+   * the event dispatch thread into a detached document, which then replaces the input area's
+   * document in a single operation so the text area is laid out only once.
+   */
+  private class FileLoader extends SwingWorker<Document, Void> {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private final Path path;
+    private final JButton loadFileButton;
+
+    FileLoader(Path path, JButton loadFileButton) {
+      this.path = path;
+      this.loadFileButton = loadFileButton;
+    }
+
+    @Override
+    protected Document doInBackground() throws IOException, BadLocationException {
+      CharBuffer text;
+      try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+        long size = channel.size();
+        if(size > Integer.MAX_VALUE){
+          throw new IOException("File is too large: " + size + " bytes");
         }
+
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                       .onMalformedInput(CodingErrorAction.REPLACE)
+                                                       .onUnmappableCharacter(
+                                                               CodingErrorAction.REPLACE);
+        // UTF-8 never decodes to more chars than bytes
+        text = CharBuffer.allocate((int) size);
+        int limit = 0;
+        do{
+          // Widen the window one chunk at a time; a split character stays in the buffer
+          limit = (int) Math.min(size, (long) limit + CHUNK_SIZE);
+          bytes.limit(limit);
+          decoder.decode(bytes, text, limit == size);
+          setProgress(size == 0 ? 100 : (int) (limit * 100L / size));
+        } while(limit < size);
+        decoder.flush(text);
+      }
+      text.flip();
+
+      String content = text.toString();
+      if(content.indexOf('\r') >= 0){
+        content = content.replace("\r\n", "\n").replace('\r', '\n');
+      }
+      Document document = new PlainDocument();
+      document.insertString(0, content, null);
+      return document;
+    }
+
+    @Override
+    protected void done() {
+      loadProgressBar.setVisible(false);
+      loadFileButton.setEnabled(true);
+      try{
+        assemblyInput.setDocument(get());
+        assemblyInput.setCaretPosition(0);
+      } catch(ExecutionException ex){
+        JOptionPane.showMessageDialog(null,
+                                      "Error while reading file: " + ex.getCause().getMessage(),
+                                      "Error", JOptionPane.ERROR_MESSAGE);
+      } catch(InterruptedException ex){
+        Thread.currentThread().interrupt();
       }
     }
   }
@@ -0,0 +1,184 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sampling profiler for the guest call stack. The simulator reports every {@code jal} as a call and
+ * every {@code jr $ra} as a return, which moves a cursor through a call tree. Every
+ * {@code interval} instructions the node under the cursor receives a sample, so sampling costs a
+ * counter decrement per dispatch of the simulator's decoded run loop, however many instructions
+ * the dispatch retires, and nothing proportional to the stack depth.
+ * <p>
+ * Results are written in the collapsed-stack format read by flame graph tools, one line per stack:
+ * {@code main;outer;inner 42}. Functions are named after the label at their entry address.
+ */
+public class CallStackProfiler {
+  private static final int ENTRY_ADDRESS = 0x00400000;
+
+  /**
+   * A node of the call tree: one function reached through one particular chain of callers.
+   */
+  private static class Frame {
+    private final int address;
+    private final Frame parent;
+    private final Map<Integer, Frame> children = new HashMap<>();
+    private long samples;
+
+    Frame(int address, Frame parent) {
+      this.address = address;
+      this.parent = parent;
+    }
+  }
+
+  private final Map<Integer, String> functionNames = new HashMap<>();
+  private final int interval;
+  private final Frame root = new Frame(ENTRY_ADDRESS, null);
+  private Frame current = root;
+  private int[] returnAddresses = new int[16];
+  private int depth;
+  private long countdown;
+
+  /**
+   * Creates a profiler.
+   *
+   * @param labels The symbol table of the profiled program, see {@link Simulator#getLabels()}.
+   * @param interval The number of instructions between samples. 1 counts every instruction.
+   */
+  public CallStackProfiler(Map<String, Integer> labels, int interval) {
+    if(interval <= 0){
+      throw new IllegalArgumentException("Sampling interval must be positive");
+    }
+    // The first label at an address names the function starting there
+    for(Map.Entry<String, Integer> label : labels.entrySet()){
+      functionNames.putIfAbsent(label.getValue(), label.getKey());
+    }
+    functionNames.putIfAbsent(ENTRY_ADDRESS, "main");
+    this.interval = interval;
+    this.countdown = interval;
+  }
+
+  /**
+   * Counts executed instructions, taking a sample of the current stack every {@code interval}
+   * instructions. The instructions must all have executed in the current function, e.g. one
+   * instruction, a superinstruction or a fast-forwarded loop.
+   *
+   * @param instructions The number of instructions executed.
+   */
+  void sample(long instructions) {
+    countdown -= instructions;
+    if(countdown <= 0){
+      long overshoot = -countdown;
+      current.samples += 1 + overshoot / interval;
+      countdown = interval - overshoot % interval;
+    }
+  }
+
+  /**
+   * Records a call.
+   *
+   * @param target The entry address of the called function.
+   * @param returnAddress The address the call will return to.
+   */
+  void enterFunction(int target, int returnAddress) {
+    if(depth == returnAddresses.length){
+      returnAddresses = Arrays.copyOf(returnAddresses, depth * 2);
+    }
+    returnAddresses[depth++] = returnAddress;
+    Frame caller = current;
+    current = caller.children.computeIfAbsent(target, address->new Frame(address, caller));
+  }
+
+  /**
+   * Records a return. Unwinds to the innermost frame expecting the given return address, or pops
+   * a single frame if no frame expects it.
+   *
+   * @param returnAddress The address being returned to.
+   */
+  void exitFunction(int returnAddress) {
+    int frames = 1;
+    for(int i = depth - 1; i >= 0; i--){
+      if(returnAddresses[i] == returnAddress){
+        frames = depth - i;
+        break;
+      }
+    }
+    for(int i = 0; i < frames && depth > 0; i++){
+      depth--;
+      current = current.parent;
+    }
+  }
+
+  /**
+   * Moves the cursor back to the entry function, e.g. when the simulator is reset. Samples taken
+   * so far are kept.
+   */
+  void resetStack() {
+    current = root;
+    depth = 0;
+    countdown = interval;
+  }
+
+  /**
+   * Writes the samples in collapsed-stack format, one line per distinct stack with samples.
+   *
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeCollapsed(Appendable out) throws IOException {
+    List<Frame> stack = new ArrayList<>();
+    writeCollapsed(root, stack, out);
+  }
+
+  private void writeCollapsed(Frame frame, List<Frame> stack, Appendable out) throws IOException {
+    stack.add(frame);
+    if(frame.samples > 0){
+      for(int i = 0; i < stack.size(); i++){
+        if(i > 0) out.append(';');
+        out.append(nameOf(stack.get(i).address));
+      }
+      out.append(' ').append(String.valueOf(frame.samples)).append('\n');
+    }
+    for(Frame child : frame.children.values()){
+      writeCollapsed(child, stack, out);
+    }
+    stack.remove(stack.size() - 1);
+  }
+
+  /**
+   * Computes the inclusive samples per function: samples taken while the function was anywhere on
+   * the stack. Recursive activations are counted once per sample.
+   *
+   * @return A map of function names to inclusive sample counts.
+   */
+  public Map<String, Long> getInclusiveSamples() {
+    Map<String, Long> inclusive = new LinkedHashMap<>();
+    List<Frame> pending = new ArrayList<>(List.of(root));
+    while(!pending.isEmpty()){
+      Frame frame = pending.remove(pending.size() - 1);
+      pending.addAll(frame.children.values());
+      if(frame.samples == 0) continue;
+
+      Set<String> onStack = new HashSet<>();
+      for(Frame f = frame; f != null; f = f.parent){
+        if(onStack.add(nameOf(f.address))){
+          inclusive.merge(nameOf(f.address), frame.samples, Long::sum);
+        }
+      }
+    }
+    return inclusive;
+  }
+
+  private String nameOf(int address) {
+    String name = functionNames.get(address);
+    return name != null ? name : String.format("0x%08X", address);
+  }
+}
@@ -0,0 +1,227 @@
+package sim;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Instruction and branch coverage of a program, for finding the code paths a set of inputs leaves
+ * untested. Attach it with {@link Simulator#setCoverage(Coverage)}; it then accumulates over every
+ * run and reset of that simulator.
+ * <p>
+ * Coverage is kept in bit sets indexed by instruction: one for executed instructions and one each
+ * for the taken and not-taken outcomes of {@code beq} and {@code bne}. The simulator records
+ * coverage on its decoded fast path as well, where a fast-forwarded loop marks its whole body at
+ * once, so coverage costs little enough to leave on in every batch run.
+ * <p>
+ * Reports map instructions back to source lines, either annotated text or LCOV tracefiles for
+ * tools such as {@code genhtml}.
+ */
+public class Coverage {
+  private final int instructionCount;
+  private final int[] sourceLines;
+  private final BitSet branches = new BitSet();
+  private final BitSet executed = new BitSet();
+  private final BitSet taken = new BitSet();
+  private final BitSet notTaken = new BitSet();
+
+  /**
+   * Creates empty coverage for the program loaded in a simulator.
+   *
+   * @param simulator The simulator to cover. Source lines are only known if it assembled the
+   * program itself; otherwise reports use instruction numbers instead.
+   */
+  public Coverage(Simulator simulator) {
+    this.instructionCount = simulator.getInstructionMemorySize();
+    this.sourceLines = simulator.getSourceLines();
+    for(int i = 0; i < instructionCount; i++){
+      String opcode = simulator.getInstruction(0x00400000 + i * 4).substring(0, 6);
+      if(opcode.equals("000100") || opcode.equals("000101")){
+        branches.set(i);
+      }
+    }
+  }
+
+  /**
+   * Records an executed instruction.
+   */
+  void executed(int index) {
+    executed.set(index);
+  }
+
+  /**
+   * Records an executed conditional branch and its outcome.
+   */
+  void branch(int index, boolean branchTaken) {
+    executed.set(index);
+    (branchTaken ? taken : notTaken).set(index);
+  }
+
+  /**
+   * Records a fast-forwarded loop: every instruction of the body ran, the closing branch was taken
+   * on every iteration but the last, and the last outcome is given.
+   */
+  void loop(int head, int branch, long iterations, boolean lastTaken) {
+    executed.set(head, branch + 1);
+    if(iterations > 1 || lastTaken){
+      taken.set(branch);
+    }
+    if(!lastTaken){
+      notTaken.set(branch);
+    }
+  }
+
+  /**
+   * Retrieves the number of instructions in the program.
+   *
+   * @return The instruction count.
+   */
+  public int getInstructionCount() {
+    return instructionCount;
+  }
+
+  /**
+   * Retrieves the number of distinct instructions executed.
+   *
+   * @return The covered instruction count.
+   */
+  public int getExecutedCount() {
+    return executed.cardinality();
+  }
+
+  /**
+   * Retrieves the number of branch outcomes, two per conditional branch.
+   *
+   * @return The branch outcome count.
+   */
+  public int getBranchOutcomeCount() {
+    return 2 * branches.cardinality();
+  }
+
+  /**
+   * Retrieves the number of branch outcomes observed.
+   *
+   * @return The covered branch outcome count.
+   */
+  public int getCoveredBranchOutcomeCount() {
+    return taken.cardinality() + notTaken.cardinality();
+  }
+
+  /**
+   * Checks whether an instruction was executed.
+   *
+   * @param index The instruction index, 0 for the first instruction.
+   *
+   * @return True if it was executed at least once.
+   */
+  public boolean isExecuted(int index) {
+    return executed.get(index);
+  }
+
+  /**
+   * Checks whether a conditional branch was seen taken.
+   *
+   * @param index The instruction index.
+   *
+   * @return True if the branch was taken at least once.
+   */
+  public boolean isTaken(int index) {
+    return taken.get(index);
+  }
+
+  /**
+   * Checks whether a conditional branch was seen falling through.
+   *
+   * @param index The instruction index.
+   *
+   * @return True if the branch was not taken at least once.
+   */
+  public boolean isNotTaken(int index) {
+    return notTaken.get(index);
+  }
+
+  /**
+   * Writes the source annotated with coverage. Each instruction line is prefixed with {@code +} if
+   * it was executed or {@code -} if not; branches add {@code T} and {@code N} for the outcomes
+   * observed. A summary line follows.
+   *
+   * @param out The destination.
+   * @param source The assembly source the simulator was created from.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeReport(Appendable out, String source) throws IOException {
+    String[] lines = source.split("\n", -1);
+    String[] markers = new String[lines.length];
+    for(int i = 0; i < instructionCount; i++){
+      int line = sourceLine(i);
+      if(line <= lines.length){
+        markers[line - 1] = marker(i);
+      }
+    }
+    for(int i = 0; i < lines.length; i++){
+      if(i == lines.length - 1 && lines[i].isEmpty()) break;
+      out.append(String.format("%5d %-4s%s%n", i + 1, markers[i] == null ? "" : markers[i],
+                               lines[i]));
+    }
+    out.append(String.format("Instructions: %d/%d (%s), branch outcomes: %d/%d (%s)%n",
+                             getExecutedCount(), instructionCount,
+                             percentage(getExecutedCount(), instructionCount),
+                             getCoveredBranchOutcomeCount(), getBranchOutcomeCount(),
+                             percentage(getCoveredBranchOutcomeCount(),
+                                        getBranchOutcomeCount())));
+  }
+
+  /**
+   * Writes one LCOV tracefile record for the program, with line hits as 0 or 1 and both outcomes
+   * of every branch.
+   *
+   * @param out The destination.
+   * @param sourceFile The path of the source file, as reported in the record.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeLcov(Appendable out, String sourceFile) throws IOException {
+    out.append("TN:\n").append("SF:").append(sourceFile).append('\n');
+    int linesFound = 0, linesHit = 0;
+    int previousLine = -1;
+    for(int i = 0; i < instructionCount; i++){
+      int line = sourceLine(i);
+      if(line == previousLine) continue;
+      previousLine = line;
+      linesFound++;
+      if(executed.get(i)) linesHit++;
+      out.append("DA:").append(String.valueOf(line)).append(',')
+         .append(executed.get(i) ? "1" : "0").append('\n');
+    }
+    for(int i = branches.nextSetBit(0); i >= 0; i = branches.nextSetBit(i + 1)){
+      String prefix = "BRDA:" + sourceLine(i) + ",0,";
+      out.append(prefix).append("0,").append(branchHits(i, taken)).append('\n');
+      out.append(prefix).append("1,").append(branchHits(i, notTaken)).append('\n');
+    }
+    out.append("BRF:").append(String.valueOf(getBranchOutcomeCount())).append('\n');
+    out.append("BRH:").append(String.valueOf(getCoveredBranchOutcomeCount())).append('\n');
+    out.append("LF:").append(String.valueOf(linesFound)).append('\n');
+    out.append("LH:").append(String.valueOf(linesHit)).append('\n');
+    out.append("end_of_record\n");
+  }
+
+  private int sourceLine(int index) {
+    return sourceLines != null ? sourceLines[index] : index + 1;
+  }
+
+  private String marker(int index) {
+    StringBuilder marker = new StringBuilder(executed.get(index) ? "+" : "-");
+    if(taken.get(index)) marker.append('T');
+    if(notTaken.get(index)) marker.append('N');
+    return marker.toString();
+  }
+
+  private String branchHits(int index, BitSet outcome) {
+    if(!executed.get(index)) return "-"; // LCOV: the branch was never evaluated
+    return outcome.get(index) ? "1" : "0";
+  }
+
+  private static String percentage(int covered, int total) {
+    return total == 0 ? "n/a" : String.format("%.1f%%", 100.0 * covered / total);
+  }
+}
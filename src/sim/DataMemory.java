@@ -1,21 +1,55 @@
 package sim;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Represents the data memory of a MIPS simulator. Provides methods to load and store 32-bit values,
- * as well as retrieve the memory's current state.
+ * Represents the data memory of a MIPS simulator. Provides methods to load and store 32-bit,
+ * 16-bit and 8-bit values, as well as retrieve the memory's current state.
+ * <p>
+ * The memory is a big-endian byte array ending at byte 0xFFFFFFFF. The stack grows down from there,
+ * so a load or store names the highest byte it accesses: the word at the base address 0xFFFFFFFF
+ * occupies bytes 0xFFFFFFFC to 0xFFFFFFFF, the word at 0xFFFFFFFB the four below, and a halfword
+ * at an odd address that byte and the one below. No access wraps around to address 0. As in
+ * program memory, see {@link #checkAlignment(int, int, int)}, the bytes of a word or halfword must
+ * start at a multiple of its width, so words are at addresses {@code 0xFFFFFFFF - 4i} and
+ * halfwords at odd addresses; misaligned accesses raise an {@link AlignmentException}. Ranges of
+ * bytes are named by their lowest byte. Since the array is a plain memory image, it can be copied
+ * to and from files without conversion.
+ * <p>
+ * Writes mark the 256-byte pages they touch as dirty, so that a {@link Watchdog} hashing the
+ * memory periodically only hashes the pages written since its last check.
  */
 public class DataMemory {
+  /**
+   * Raised for a word or halfword access that is not naturally aligned.
+   */
+  public static class AlignmentException extends RuntimeException {
+    public AlignmentException(String message) {
+      super(message);
+    }
+  }
+
   private static final int BASE_ADDRESS = 0xFFFFFFFF;
-  private final int[] memory;
+  private static final int PAGE_SHIFT = 8; // 256-byte pages for dirty tracking
+  private static final VarHandle WORD =
+          MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle HALF =
+          MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+
+  private final byte[] memory;
+  private final int lowestAddress; // Address of memory[0]
+  private final long[] dirtyPages; // One bit per page, set by every write
 
   /**
-   * Initializes the data memory with a default size of 128 words (512 bytes).
+   * Initializes the data memory with a default size of 128 bytes (32 words).
    */
   public DataMemory() {
-    this(128); // Default size: 128 words
+    this(128); // Default size: 128 bytes
   }
 
   /**
@@ -30,7 +64,9 @@ public class DataMemory {
     if(size > 1048576){
       throw new IllegalArgumentException("Memory size must not exceed 1 MB");
     }
-    this.memory = new int[size / 4];
+    this.memory = new byte[size];
+    this.lowestAddress = BASE_ADDRESS - size + 1;
+    this.dirtyPages = new long[(pageCount() + 63) >>> 6];
   }
 
   /**
@@ -41,14 +77,10 @@ public class DataMemory {
    * @return The 32-bit value stored at the specified address.
    *
    * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws AlignmentException If the address is not word-aligned.
    */
   public int load(int address) {
-    int index = convertAddressToIndex(address);
-    if(index < 0 || index >= memory.length){
-      throw new IndexOutOfBoundsException(
-              "Invalid memory address: " + Integer.toHexString(address));
-    }
-    return memory[index];
+    return (int) WORD.get(memory, convertAddressToOffset(address, 4));
   }
 
   /**
@@ -58,31 +90,237 @@ public class DataMemory {
    * @param value The 32-bit value to store.
    *
    * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws AlignmentException If the address is not word-aligned.
    */
   public void store(int address, int value) {
-    int index = convertAddressToIndex(address);
-    if(index < 0 || index >= memory.length){
+    int offset = convertAddressToOffset(address, 4);
+    WORD.set(memory, offset, value);
+    dirtyPages[offset >>> (PAGE_SHIFT + 6)] |= 1L << (offset >>> PAGE_SHIFT);
+  }
+
+  /**
+   * Loads a sign-extended 16-bit value from the specified memory address.
+   *
+   * @param address The memory address to load from.
+   *
+   * @return The halfword stored at the specified address.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws AlignmentException If the address is not halfword-aligned.
+   */
+  public int loadHalf(int address) {
+    return (short) HALF.get(memory, convertAddressToOffset(address, 2));
+  }
+
+  /**
+   * Stores the low 16 bits of a value at the specified memory address.
+   *
+   * @param address The memory address to store the value at.
+   * @param value The value to store.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws AlignmentException If the address is not halfword-aligned.
+   */
+  public void storeHalf(int address, int value) {
+    int offset = convertAddressToOffset(address, 2);
+    HALF.set(memory, offset, (short) value);
+    dirtyPages[offset >>> (PAGE_SHIFT + 6)] |= 1L << (offset >>> PAGE_SHIFT);
+  }
+
+  /**
+   * Loads a sign-extended 8-bit value from the specified memory address.
+   *
+   * @param address The memory address to load from.
+   *
+   * @return The byte stored at the specified address.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   */
+  public int loadByte(int address) {
+    return memory[convertAddressToOffset(address, 1)];
+  }
+
+  /**
+   * Stores the low 8 bits of a value at the specified memory address.
+   *
+   * @param address The memory address to store the value at.
+   * @param value The value to store.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   */
+  public void storeByte(int address, int value) {
+    int offset = convertAddressToOffset(address, 1);
+    memory[offset] = (byte) value;
+    dirtyPages[offset >>> (PAGE_SHIFT + 6)] |= 1L << (offset >>> PAGE_SHIFT);
+  }
+
+  /**
+   * Copies bytes into the memory, e.g. a dataset read from a file. The bytes fill ascending
+   * addresses, so a big-endian file of words lands as words at aligned addresses.
+   *
+   * @param address The address of the first byte.
+   * @param source The bytes to copy.
+   * @param offset The index of the first byte in {@code source}.
+   * @param length The number of bytes to copy.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within the memory.
+   */
+  public void storeBytes(int address, byte[] source, int offset, int length) {
+    int start = convertRangeToOffset(address, length);
+    System.arraycopy(source, offset, memory, start, length);
+    markDirty(start, length);
+  }
+
+  /**
+   * Copies bytes out of the memory, e.g. to write them to a file.
+   *
+   * @param address The address of the first byte.
+   * @param destination The array to copy into.
+   * @param offset The index in {@code destination} of the first byte copied.
+   * @param length The number of bytes to copy.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within the memory.
+   */
+  public void loadBytes(int address, byte[] destination, int offset, int length) {
+    System.arraycopy(memory, convertRangeToOffset(address, length), destination, offset, length);
+  }
+
+  /**
+   * Wraps a range of the memory in a big-endian buffer that reads and writes the memory itself,
+   * so file channels and int views can transfer data without intermediate copies.
+   *
+   * @param address The address of the first byte.
+   * @param length The number of bytes.
+   *
+   * @return A buffer positioned at the first byte, with the limit after the last.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within the memory.
+   */
+  public ByteBuffer buffer(int address, int length) {
+    int offset = convertRangeToOffset(address, length);
+    markDirty(offset, length); // The caller may write through the buffer at any time
+    return ByteBuffer.wrap(memory, offset, length).slice();
+  }
+
+  /**
+   * Retrieves the address of the lowest byte of the memory. It is a multiple of 4; the lowest word
+   * is named by the address 3 above it.
+   *
+   * @return The lowest address.
+   */
+  public int getLowestAddress() {
+    return lowestAddress;
+  }
+
+  /**
+   * Retrieves the size of the data memory.
+   *
+   * @return The number of 32-bit words in the memory.
+   */
+  public int size() {
+    return memory.length / 4;
+  }
+
+  /**
+   * Converts a memory address to an offset in the byte array, checking range and alignment.
+   *
+   * @param address The memory address to convert, that of the highest byte accessed.
+   * @param width The access width in bytes: 1, 2 or 4.
+   *
+   * @return The offset of the lowest byte accessed.
+   */
+  private int convertAddressToOffset(int address, int width) {
+    // Unsigned, so that low addresses do not wrap around into the top of the memory
+    long offset = Integer.toUnsignedLong(address) - (width - 1)
+                  - Integer.toUnsignedLong(lowestAddress);
+    if(offset < 0 || offset > memory.length - width){
       throw new IndexOutOfBoundsException(
               "Invalid memory address: " + Integer.toHexString(address));
     }
-    memory[index] = value;
+    checkAlignment(address - (width - 1), width, address);
+    return (int) offset;
+  }
+
+  /**
+   * Checks the alignment rule shared by data and program memory: the bytes of a halfword or word
+   * access must start at a multiple of its width.
+   *
+   * @param lowestByte The address of the lowest byte accessed.
+   * @param width The access width in bytes: 1, 2 or 4.
+   * @param address The address the program gave, for the message.
+   *
+   * @throws AlignmentException If the access is misaligned.
+   */
+  static void checkAlignment(int lowestByte, int width, int address) {
+    if((lowestByte&(width - 1)) != 0){
+      throw new AlignmentException(
+              "Unaligned " + width + "-byte access at address: " + Integer.toHexString(address));
+    }
+  }
+
+  /**
+   * Converts a range of addresses to an offset in the byte array, checking that it lies within the
+   * memory.
+   *
+   * @param address The address of the first byte.
+   * @param length The number of bytes.
+   *
+   * @return The offset of the first byte.
+   */
+  private int convertRangeToOffset(int address, int length) {
+    long offset = Integer.toUnsignedLong(address) - Integer.toUnsignedLong(lowestAddress);
+    if(length < 0 || offset < 0 || offset > memory.length - length){
+      throw new IndexOutOfBoundsException("Invalid memory range: " + Integer.toHexString(address)
+                                          + " + " + length + " bytes");
+    }
+    return (int) offset;
+  }
+
+  private void markDirty(int offset, int length) {
+    for(int page = offset >>> PAGE_SHIFT; page << PAGE_SHIFT < offset + length; page++){
+      dirtyPages[page >>> 6] |= 1L << page;
+    }
+  }
+
+  /**
+   * Retrieves the number of pages tracked for writes.
+   *
+   * @return The number of 256-byte pages, the last one possibly shorter.
+   */
+  int pageCount() {
+    return (memory.length + (1 << PAGE_SHIFT) - 1) >>> PAGE_SHIFT;
+  }
+
+  /**
+   * Retrieves the dirty page bits, one per page in {@code long}s of 64. The array is live: writes
+   * set bits, and the caller clears the bits of the pages it has seen.
+   *
+   * @return The dirty page bit set.
+   */
+  long[] dirtyPages() {
+    return dirtyPages;
   }
 
   /**
-   * Converts a memory address to an index in the memory array.
+   * Hashes the contents of one page.
    *
-   * @param address The memory address to convert.
+   * @param page The page index.
    *
-   * @return The corresponding index in the memory array.
+   * @return A 64-bit hash of the page's words.
    */
-  private static int convertAddressToIndex(int address) {
-    return (BASE_ADDRESS - address) / 4;
+  long hashPage(int page) {
+    int from = page << PAGE_SHIFT, to = Math.min(memory.length, from + (1 << PAGE_SHIFT));
+    long hash = page;
+    for(int offset = from; offset < to; offset += 4){
+      hash = (hash + (int) WORD.get(memory, offset)) * 0x9E3779B97F4A7C15L;
+    }
+    return hash;
   }
 
   /**
-   * Converts an index in the memory array to a memory address.
+   * Converts an index in the word view to a memory address.
    *
-   * @param index The index in the memory array.
+   * @param index The index of the word, 0 at the base address.
    *
    * @return The corresponding memory address.
    */
@@ -90,6 +328,20 @@ public class DataMemory {
     return BASE_ADDRESS - (index * 4);
   }
 
+  /**
+   * Retrieves a copy of the raw memory words. Index 0 holds the word at the base address, each
+   * following index the word 4 bytes below it.
+   *
+   * @return A new array holding every word of the memory.
+   */
+  public int[] getMemoryValues() {
+    int[] words = new int[size()];
+    for(int i = 0; i < words.length; i++){
+      words[i] = (int) WORD.get(memory, memory.length - 4 - 4 * i);
+    }
+    return words;
+  }
+
   /**
    * Retrieves the current state of the memory, showing only non-empty addresses.
    *
@@ -98,10 +350,11 @@ public class DataMemory {
   public String[][] getMemoryState() {
     List<String[]> stateList = new ArrayList<>();
 
-    for(int i = 0; i < memory.length; i++){
-      if(memory[i] != 0){
+    int[] words = getMemoryValues();
+    for(int i = 0; i < words.length; i++){
+      if(words[i] != 0){
         String address = String.format("0x%08X", convertIndexToAddress(i));
-        String value = String.valueOf(memory[i]);
+        String value = String.valueOf(words[i]);
         stateList.add(new String[]{address, value});
       }
     }
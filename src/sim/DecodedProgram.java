@@ -0,0 +1,429 @@
+package sim;
+
+/**
+ * Pre-decoded form of a program in instruction memory, used by {@link Simulator#run(long)}. Each
+ * instruction is decoded once into an operation number and integer operand fields, so the run loop
+ * dispatches on an {@code int} instead of parsing binary strings on every step.
+ * <p>
+ * A second pass fuses frequent adjacent pairs into superinstructions, e.g. {@code add} followed by
+ * {@code bne} at the tail of a loop. The fused operation is stored at the index of the first
+ * instruction; entering the program at the second instruction still dispatches its own operation,
+ * so branches into the middle of a pair behave as before.
+ * <p>
+ * A third pass records short loops whose body only computes registers, see {@link Loop}.
+ * <p>
+ * When the program overwrites one of its own instructions, {@link #invalidate(int, int)} decodes
+ * just that instruction again and repairs the superinstructions and loops it belongs to; the rest
+ * of the program stays decoded.
+ */
+final class DecodedProgram {
+  // Single instructions
+  static final int ADD = 0, SUB = 1, AND = 2, OR = 3, SLT = 4, SLL = 5, SRL = 6, JR = 7;
+  static final int ADDI = 8, LW = 9, SW = 10, BEQ = 11, BNE = 12, J = 13, JAL = 14;
+  static final int UNSUPPORTED = 15;
+
+  // Superinstructions
+  static final int ADD_BNE = 16, SUB_BNE = 17, ADDI_BNE = 18, ADDI_BEQ = 19;
+  static final int SLT_BEQ = 20, SLT_BNE = 21, SW_SW = 22, LW_LW = 23;
+
+  /**
+   * Operation to dispatch at each index, a superinstruction where one was formed.
+   */
+  final int[] fusedOps;
+
+  /**
+   * Operation of the single instruction at each index.
+   */
+  final int[] ops;
+
+  final int[] rs, rt, rd, shamt;
+
+  /**
+   * Sign-extended immediate for I-type instructions, target field for J-type instructions.
+   */
+  final int[] immediate;
+
+  /**
+   * Fast-forwardable loop starting at each index, or null.
+   */
+  final Loop[] loops;
+
+  private int fusedCount;
+
+  /**
+   * Decodes every instruction of the given memory and forms superinstructions.
+   *
+   * @param instructionMemory The program to decode.
+   */
+  DecodedProgram(InstructionMemory instructionMemory) {
+    int size = instructionMemory.size();
+    ops = new int[size];
+    rs = new int[size];
+    rt = new int[size];
+    rd = new int[size];
+    shamt = new int[size];
+    immediate = new int[size];
+
+    for(int i = 0; i < size; i++){
+      decode(i, (int) Long.parseLong(instructionMemory.load(0x00400000 + i * 4), 2));
+    }
+
+    fusedOps = ops.clone();
+    for(int i = 0; i + 1 < size; i++){
+      int fused = fuse(ops[i], ops[i + 1]);
+      if(fused != UNSUPPORTED){
+        fusedOps[i] = fused;
+        fusedCount++;
+      }
+    }
+
+    loops = new Loop[size];
+    for(int branch = 0; branch < size; branch++){
+      if((ops[branch] == BNE || ops[branch] == BEQ) && immediate[branch] < 0){
+        int head = branch + 1 + immediate[branch];
+        if(head >= 0 && head < branch && loops[head] == null && isRegisterBlock(head, branch)){
+          loops[head] = new Loop(this, head, branch);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes an overwritten instruction again. The superinstructions formed with its neighbours
+   * are fused again, loops containing it are dropped, and loops it now completes are recorded.
+   * Every loop containing the instruction has a body of register instructions from its head up to
+   * the instruction, so only that block before and after it is scanned.
+   *
+   * @param index The index of the instruction.
+   * @param word The new instruction word.
+   */
+  void invalidate(int index, int word) {
+    for(int head = index; head >= 0 && (head == index || isRegisterInstruction(head)); head--){
+      if(loops[head] != null && loops[head].branch >= index){
+        loops[head] = null;
+      }
+    }
+
+    decode(index, word);
+    for(int i = Math.max(0, index - 1); i <= index; i++){
+      int fused = i + 1 < ops.length ? fuse(ops[i], ops[i + 1]) : UNSUPPORTED;
+      fusedCount += (fused != UNSUPPORTED ? 1 : 0) - (fusedOps[i] >= ADD_BNE ? 1 : 0);
+      fusedOps[i] = fused != UNSUPPORTED ? fused : ops[i];
+    }
+
+    for(int branch = index; branch < ops.length; branch++){
+      if((ops[branch] == BNE || ops[branch] == BEQ) && immediate[branch] < 0){
+        int head = branch + 1 + immediate[branch];
+        if(head >= 0 && head <= index && head < branch && loops[head] == null &&
+           isRegisterBlock(head, branch)){
+          loops[head] = new Loop(this, head, branch);
+        }
+      }
+      if(!isRegisterInstruction(branch)) break;
+    }
+  }
+
+  private void decode(int index, int word) {
+    int opcode = word >>> 26;
+    rs[index] = (word >>> 21)&0x1F;
+    rt[index] = (word >>> 16)&0x1F;
+    rd[index] = (word >>> 11)&0x1F;
+    shamt[index] = (word >>> 6)&0x1F;
+
+    switch(opcode){
+      case 0b000000 -> ops[index] = switch(word&0x3F){
+        case 32 -> ADD;
+        case 34 -> SUB;
+        case 36 -> AND;
+        case 37 -> OR;
+        case 42 -> SLT;
+        case 0 -> SLL;
+        case 2 -> SRL;
+        case 8 -> JR;
+        default -> UNSUPPORTED;
+      };
+      case 0b001000, 0b100011, 0b101011, 0b000100, 0b000101 -> {
+        immediate[index] = (short) word; // Sign-extend the low 16 bits
+        ops[index] = switch(opcode){
+          case 0b001000 -> ADDI;
+          case 0b100011 -> LW;
+          case 0b101011 -> SW;
+          case 0b000100 -> BEQ;
+          default -> BNE;
+        };
+      }
+      case 0b000010, 0b000011 -> {
+        immediate[index] = word&0x03FFFFFF;
+        ops[index] = opcode == 0b000010 ? J : JAL;
+      }
+      default -> ops[index] = UNSUPPORTED;
+    }
+  }
+
+  private static int fuse(int first, int second) {
+    if(second == BNE){
+      return switch(first){
+        case ADD -> ADD_BNE;
+        case SUB -> SUB_BNE;
+        case ADDI -> ADDI_BNE;
+        case SLT -> SLT_BNE;
+        default -> UNSUPPORTED;
+      };
+    }
+    if(second == BEQ){
+      return switch(first){
+        case ADDI -> ADDI_BEQ;
+        case SLT -> SLT_BEQ;
+        default -> UNSUPPORTED;
+      };
+    }
+    if(first == SW && second == SW) return SW_SW;
+    if(first == LW && second == LW) return LW_LW;
+    return UNSUPPORTED;
+  }
+
+  /**
+   * Checks whether the given instructions only compute registers other than $zero, so they can
+   * neither fault nor leave the block.
+   */
+  private boolean isRegisterBlock(int from, int to) {
+    for(int i = from; i < to; i++){
+      if(!isRegisterInstruction(i)) return false;
+    }
+    return true;
+  }
+
+  private boolean isRegisterInstruction(int index) {
+    return (ops[index] <= SRL || ops[index] == ADDI) && destination(index) != 0;
+  }
+
+  private int destination(int index) {
+    return ops[index] == ADDI ? rt[index] : rd[index];
+  }
+
+  int size() {
+    return ops.length;
+  }
+
+  /**
+   * Retrieves the number of superinstructions formed.
+   *
+   * @return The number of fused instruction pairs.
+   */
+  int getFusedCount() {
+    return fusedCount;
+  }
+
+  /**
+   * A loop whose body is a single block of register arithmetic closed by a backward {@code bne} or
+   * {@code beq}, e.g. {@code sub $t0, $t0, $s0; bne $t0, $t1, loop}. Such a loop touches neither
+   * memory nor control flow outside itself, so {@link Simulator#run(long)} executes whole
+   * iterations at once.
+   * <p>
+   * If every register the body writes is written once, either from loop-invariant registers or by
+   * adding a loop-invariant amount to itself, and the branch compares one of these induction
+   * variables with a register the body does not write, the trip count follows from a linear
+   * congruence modulo 2^32 and the exit state is computed in closed form. Other bodies run in a
+   * tight inner loop without per-instruction bookkeeping.
+   */
+  static final class Loop {
+    /**
+     * Indices of the first body instruction and of the backward branch.
+     */
+    final int head, branch;
+
+    /**
+     * Instructions executed per iteration, including the branch.
+     */
+    final int length;
+
+    /**
+     * Instructions per iteration by {@link Simulator.OpcodeClass} ordinal.
+     */
+    final int[] classCounts = new int[Simulator.OpcodeClass.values().length];
+
+    private final DecodedProgram program;
+    private final boolean[] affine;
+    private final boolean closedForm;
+    private final int inductionIndex, inductionRegister, boundRegister;
+
+    private Loop(DecodedProgram program, int head, int branch) {
+      this.program = program;
+      this.head = head;
+      this.branch = branch;
+      this.length = branch - head + 1;
+
+      boolean[] written = new boolean[32];
+      boolean writtenOnce = true;
+      for(int i = head; i < branch; i++){
+        int destination = program.destination(i);
+        writtenOnce &= !written[destination];
+        written[destination] = true;
+        classCounts[opcodeClass(program.ops[i]).ordinal()]++;
+      }
+      classCounts[Simulator.OpcodeClass.BRANCH.ordinal()]++;
+
+      boolean solvable = writtenOnce;
+      affine = new boolean[length - 1];
+      int induction = -1;
+      for(int i = head; i < branch; i++){
+        affine[i - head] = isAffine(i, written);
+        solvable &= affine[i - head] || isInvariant(i, written);
+        if(affine[i - head] && (program.destination(i) == program.rs[branch]
+                                || program.destination(i) == program.rt[branch])){
+          induction = i;
+        }
+      }
+
+      int left = program.rs[branch], right = program.rt[branch];
+      inductionIndex = induction;
+      inductionRegister = induction < 0 ? -1 : program.destination(induction);
+      boundRegister = inductionRegister == left ? right : left;
+      closedForm = solvable && induction >= 0 && !written[boundRegister];
+    }
+
+    private static Simulator.OpcodeClass opcodeClass(int op) {
+      return switch(op){
+        case AND, OR -> Simulator.OpcodeClass.LOGICAL;
+        case SLL, SRL -> Simulator.OpcodeClass.SHIFT;
+        default -> Simulator.OpcodeClass.ARITHMETIC;
+      };
+    }
+
+    /**
+     * Checks whether an instruction adds a loop-invariant amount to its own destination.
+     */
+    private boolean isAffine(int i, boolean[] written) {
+      int rs = program.rs[i], rt = program.rt[i], rd = program.rd[i];
+      return switch(program.ops[i]){
+        case ADDI -> rs == rt;
+        case ADD -> (rs == rd && !written[rt]) || (rt == rd && !written[rs]);
+        case SUB -> rs == rd && !written[rt];
+        default -> false;
+      };
+    }
+
+    /**
+     * Checks whether an instruction only reads registers the body does not write.
+     */
+    private boolean isInvariant(int i, boolean[] written) {
+      return switch(program.ops[i]){
+        case ADDI -> !written[program.rs[i]];
+        case SLL, SRL -> !written[program.rt[i]];
+        default -> !written[program.rs[i]] && !written[program.rt[i]];
+      };
+    }
+
+    /**
+     * Executes up to {@code maxIterations} whole iterations, stopping after the iteration whose
+     * branch falls through.
+     *
+     * @param registers The register values, updated in place.
+     * @param maxIterations The maximum number of iterations to execute.
+     *
+     * @return The number of iterations executed.
+     */
+    long run(int[] registers, long maxIterations) {
+      if(maxIterations <= 0) return 0;
+
+      if(closedForm){
+        long iterations = Math.min(tripCount(registers), maxIterations);
+        for(int i = head; i < branch; i++){
+          if(affine[i - head]){
+            registers[program.destination(i)] += (int) (iterations * stride(i, registers));
+          } else {
+            execute(i, registers);
+          }
+        }
+        return iterations;
+      }
+
+      long iterations = 0;
+      do{
+        for(int i = head; i < branch; i++){
+          execute(i, registers);
+        }
+        iterations++;
+      } while(iterations < maxIterations && isTaken(registers));
+      return iterations;
+    }
+
+    /**
+     * Checks whether the backward branch is taken for the given register values.
+     *
+     * @param registers The register values after the loop body.
+     *
+     * @return Whether the loop continues.
+     */
+    boolean isTaken(int[] registers) {
+      boolean equal = registers[program.rs[branch]] == registers[program.rt[branch]];
+      return program.ops[branch] == BEQ ? equal : !equal;
+    }
+
+    /**
+     * Computes the number of iterations until the branch falls through, solving
+     * {@code start + k * stride == bound} modulo 2^32 for the smallest {@code k >= 1}.
+     *
+     * @return The trip count, or {@link Long#MAX_VALUE} if the loop never exits.
+     */
+    private long tripCount(int[] registers) {
+      int start = registers[inductionRegister];
+      int bound = registers[boundRegister];
+      int stride = stride(inductionIndex, registers);
+
+      if(program.ops[branch] == BEQ){
+        if(start + stride != bound) return 1;
+        return stride != 0 ? 2 : Long.MAX_VALUE;
+      }
+
+      int distance = bound - start;
+      if(stride == 0){
+        return distance == 0 ? 1 : Long.MAX_VALUE;
+      }
+      int shift = Integer.numberOfTrailingZeros(stride);
+      if((distance&((1 << shift) - 1)) != 0){
+        return Long.MAX_VALUE; // The induction variable never hits the bound
+      }
+      long modulus = 1L << (32 - shift);
+      long trips = ((distance >> shift) * inverse(stride >> shift))&(modulus - 1);
+      return trips == 0 ? modulus : trips;
+    }
+
+    /**
+     * Computes the amount an affine instruction adds to its destination per iteration.
+     */
+    private int stride(int i, int[] registers) {
+      return switch(program.ops[i]){
+        case ADDI -> program.immediate[i];
+        case SUB -> -registers[program.rt[i]];
+        default -> program.rs[i] == program.rd[i] ? registers[program.rt[i]]
+                                                  : registers[program.rs[i]];
+      };
+    }
+
+    /**
+     * Computes the multiplicative inverse of an odd number modulo 2^32 by Newton iteration.
+     */
+    private static int inverse(int odd) {
+      int inverse = odd; // Correct to 3 bits, each iteration doubles the correct bits
+      for(int i = 0; i < 4; i++){
+        inverse *= 2 - odd * inverse;
+      }
+      return inverse;
+    }
+
+    private void execute(int i, int[] registers) {
+      int rs = registers[program.rs[i]], rt = registers[program.rt[i]];
+      registers[program.destination(i)] = switch(program.ops[i]){
+        case ADD -> rs + rt;
+        case SUB -> rs - rt;
+        case AND -> rs&rt;
+        case OR -> rs|rt;
+        case SLT -> rs < rt ? 1 : 0;
+        case SLL -> rt << program.shamt[i];
+        case SRL -> rt >>> program.shamt[i];
+        default -> rs + program.immediate[i];
+      };
+    }
+  }
+}
@@ -0,0 +1,523 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Differential verification harness. Runs programs through the reference {@link Simulator#step()}
+ * path and a candidate {@link ExecutionEngine} side by side, comparing the program counter,
+ * register file and data memory at every checkpoint. When the two disagree, the program is replayed
+ * in lockstep to report the first instruction whose result differs.
+ */
+public class DifferentialHarness {
+  /**
+   * Engines that can be selected by name from the command line.
+   */
+  private static final Map<String, ExecutionEngine.Factory> ENGINES = new LinkedHashMap<>();
+
+  static{
+    ENGINES.put("fused", Simulator::forProgram);
+    ENGINES.put("decoded", (source, dataMemorySize)->{
+      Simulator simulator = Simulator.forProgram(source, dataMemorySize);
+      simulator.setSuperinstructionsEnabled(false);
+      simulator.setLoopFastForwardEnabled(false);
+      return simulator;
+    });
+  }
+
+  private final ExecutionEngine.Factory candidate;
+  private final long maxSteps;
+  private final int checkpointInterval;
+  private final int dataMemorySize;
+
+  /**
+   * A named assembly program to be checked.
+   *
+   * @param name A name identifying the program in reports (file name or seed).
+   * @param source The assembly source.
+   */
+  public record Program(String name, String source) {}
+
+  /**
+   * Describes the first point at which the candidate engine disagreed with the reference.
+   *
+   * @param program The name of the program.
+   * @param step The number of instructions executed before the divergent one, or -1 if the
+   * program could not be set up.
+   * @param programCounter The reference program counter before the divergent instruction.
+   * @param instruction The binary form of the divergent instruction, or null if unknown.
+   * @param detail A description of the first difference found.
+   */
+  public record Divergence(String program, long step, int programCounter, String instruction,
+                           String detail) {
+    @Override
+    public String toString() {
+      if(step < 0){
+        return program + ": " + detail;
+      }
+      return String.format("%s: step %d, PC = 0x%08X, instruction %s: %s", program, step,
+                           programCounter, instruction == null ? "-" : instruction + " (" +
+                           Disassembler.disassemble(instruction, programCounter, Map.of()) + ")",
+                           detail);
+    }
+  }
+
+  /**
+   * Creates a harness comparing the given engine against the reference simulator.
+   *
+   * @param candidate Factory for the engine under test.
+   * @param maxSteps The maximum number of steps to execute per program.
+   * @param checkpointInterval The number of steps between state comparisons. 1 compares after
+   * every instruction.
+   * @param dataMemorySize The data memory size in bytes of both engines. Instruction memory is
+   * sized to each program.
+   */
+  public DifferentialHarness(ExecutionEngine.Factory candidate, long maxSteps,
+                             int checkpointInterval, int dataMemorySize) {
+    if(maxSteps <= 0 || checkpointInterval <= 0){
+      throw new IllegalArgumentException("Step budget and checkpoint interval must be positive");
+    }
+    this.candidate = candidate;
+    this.maxSteps = maxSteps;
+    this.checkpointInterval = checkpointInterval;
+    this.dataMemorySize = dataMemorySize;
+  }
+
+  /**
+   * Runs a single program through both engines.
+   *
+   * @param program The program to check.
+   *
+   * @return The first divergence, or null if both engines agreed throughout.
+   *
+   * @throws Assembler.AssemblerException If the program cannot be assembled.
+   */
+  public Divergence check(Program program) throws Assembler.AssemblerException {
+    Simulator reference = Simulator.forProgram(program.source(), dataMemorySize);
+    ExecutionEngine engine = candidate.create(program.source(), dataMemorySize);
+
+    long executed = 0;
+    while(executed < maxSteps && !reference.isFinished()){
+      long chunk = Math.min(checkpointInterval, maxSteps - executed);
+      Outcome outcome = advance(reference, engine, chunk);
+      if(outcome.difference() != null){
+        return locate(program, executed + chunk, outcome.difference());
+      }
+      if(outcome.faulted()){
+        return null; // Both engines faulted identically
+      }
+      executed += outcome.steps();
+    }
+    return null;
+  }
+
+  /**
+   * Result of advancing both engines to the next checkpoint.
+   *
+   * @param difference The first difference found, or null if the states match.
+   * @param steps The number of steps the reference executed.
+   * @param faulted Whether the reference raised an exception.
+   */
+  private record Outcome(String difference, long steps, boolean faulted) {}
+
+  /**
+   * Advances the reference by up to {@code steps} single steps and the candidate by one
+   * {@link ExecutionEngine#run(long)} call, then compares them.
+   */
+  private static Outcome advance(Simulator reference, ExecutionEngine engine, long steps) {
+    String referenceFault = null, candidateFault = null;
+    long referenceSteps = 0, candidateSteps = 0;
+
+    try{
+      while(referenceSteps < steps && !reference.isFinished()){
+        reference.step();
+        referenceSteps++;
+      }
+    } catch(RuntimeException e){
+      referenceFault = describe(e);
+    }
+    try{
+      candidateSteps = engine.run(steps);
+    } catch(RuntimeException e){
+      candidateFault = describe(e);
+    }
+
+    String difference = compare(reference, engine, referenceFault, candidateFault);
+    if(difference == null && referenceFault == null && candidateSteps != referenceSteps){
+      difference = "executed " + candidateSteps + " steps, expected " + referenceSteps;
+    }
+    return new Outcome(difference, referenceSteps, referenceFault != null);
+  }
+
+  /**
+   * Finds the first divergent instruction of a program that diverged at a checkpoint. The program
+   * is first replayed in lockstep. Engines that only diverge when executing several steps per call,
+   * e.g. inside a superinstruction, are then bisected for the shortest single run that diverges.
+   *
+   * @param program The program to replay.
+   * @param limit The step count of the checkpoint at which the divergence was observed.
+   * @param checkpointDifference The difference observed at that checkpoint.
+   *
+   * @return The first divergence.
+   *
+   * @throws Assembler.AssemblerException If the program cannot be assembled.
+   */
+  private Divergence locate(Program program, long limit, String checkpointDifference)
+          throws Assembler.AssemblerException {
+    Simulator reference = Simulator.forProgram(program.source(), dataMemorySize);
+    ExecutionEngine engine = candidate.create(program.source(), dataMemorySize);
+
+    for(long step = 0; step < limit && !reference.isFinished(); step++){
+      int programCounter = reference.getProgramCounter();
+      String instruction = instructionAt(reference, programCounter);
+      Outcome outcome = advance(reference, engine, 1);
+      if(outcome.difference() != null){
+        return new Divergence(program.name(), step, programCounter, instruction,
+                              outcome.difference());
+      }
+      if(outcome.faulted()) break;
+    }
+
+    if(differenceAfter(program, limit) == null){
+      return new Divergence(program.name(), limit, reference.getProgramCounter(), null,
+                            checkpointDifference + " (not reproducible)");
+    }
+    long good = 0, bad = limit;
+    while(bad - good > 1){
+      long middle = (good + bad) >>> 1;
+      if(differenceAfter(program, middle) != null){
+        bad = middle;
+      } else {
+        good = middle;
+      }
+    }
+
+    Simulator before = Simulator.forProgram(program.source(), dataMemorySize);
+    try{
+      for(long step = 0; step < bad - 1; step++){
+        before.step();
+      }
+    } catch(RuntimeException e){
+      // The divergent instruction is the faulting one
+    }
+    return new Divergence(program.name(), bad - 1, before.getProgramCounter(),
+                          instructionAt(before, before.getProgramCounter()),
+                          differenceAfter(program, bad) + " (in a single run of " + bad
+                          + " steps)");
+  }
+
+  /**
+   * Runs fresh engines for the given number of steps, the candidate in a single call.
+   *
+   * @return The difference after that many steps, or null if the states match.
+   */
+  private String differenceAfter(Program program, long steps)
+          throws Assembler.AssemblerException {
+    return advance(Simulator.forProgram(program.source(), dataMemorySize),
+                   candidate.create(program.source(), dataMemorySize), steps).difference();
+  }
+
+  /**
+   * Compares the architectural state of both engines.
+   *
+   * @return A description of the first difference, or null if the states match.
+   */
+  private static String compare(Simulator reference, ExecutionEngine engine,
+                                String referenceFault, String candidateFault) {
+    if(referenceFault != null || candidateFault != null){
+      if(referenceFault == null || !referenceFault.equals(candidateFault)){
+        return "fault " + candidateFault + ", expected " + referenceFault;
+      }
+      return null;
+    }
+    if(reference.isFinished() != engine.isFinished()){
+      return "finished = " + engine.isFinished() + ", expected " + reference.isFinished();
+    }
+    if(reference.getProgramCounter() != engine.getProgramCounter()){
+      return String.format("PC = 0x%08X, expected 0x%08X", engine.getProgramCounter(),
+                           reference.getProgramCounter());
+    }
+
+    int[] expectedRegisters = reference.getRegisterValues();
+    int[] actualRegisters = engine.getRegisterValues();
+    for(int i = 0; i < expectedRegisters.length; i++){
+      if(expectedRegisters[i] != actualRegisters[i]){
+        return String.format("register %s = %d, expected %d", reference.getRegisterState()[i][0],
+                             actualRegisters[i], expectedRegisters[i]);
+      }
+    }
+
+    int[] expectedMemory = reference.getDataMemoryValues();
+    int[] actualMemory = engine.getDataMemoryValues();
+    if(expectedMemory.length != actualMemory.length){
+      return "data memory has " + actualMemory.length + " words, expected "
+             + expectedMemory.length;
+    }
+    for(int i = 0; i < expectedMemory.length; i++){
+      if(expectedMemory[i] != actualMemory[i]){
+        return String.format("memory[0x%08X] = %d, expected %d", 0xFFFFFFFF - i * 4,
+                             actualMemory[i], expectedMemory[i]);
+      }
+    }
+    return null;
+  }
+
+  private static String instructionAt(Simulator simulator, int address) {
+    try{
+      return simulator.getInstruction(address);
+    } catch(IndexOutOfBoundsException e){
+      return null;
+    }
+  }
+
+  private static String describe(RuntimeException e) {
+    return e.getClass().getSimpleName() + "(" + e.getMessage() + ")";
+  }
+
+  /**
+   * Checks all given programs, spreading them over a pool of worker threads.
+   *
+   * @param programs The programs to check.
+   * @param threads The number of worker threads.
+   *
+   * @return The divergences found, in program order. Programs that fail to assemble or load are
+   * reported as divergences with a step of -1.
+   *
+   * @throws InterruptedException If interrupted while waiting for the workers.
+   */
+  public List<Divergence> checkAll(List<Program> programs, int threads)
+          throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try{
+      List<Callable<Divergence>> tasks = new ArrayList<>();
+      for(Program program : programs){
+        tasks.add(()->{
+          try{
+            return check(program);
+          } catch(Assembler.AssemblerException | IllegalArgumentException e){
+            return new Divergence(program.name(), -1, 0, null, "setup failed: " + e.getMessage());
+          }
+        });
+      }
+
+      List<Divergence> divergences = new ArrayList<>();
+      for(Future<Divergence> future : executor.invokeAll(tasks)){
+        Divergence divergence = future.get();
+        if(divergence != null){
+          divergences.add(divergence);
+        }
+      }
+      return divergences;
+    } catch(ExecutionException e){
+      throw new IllegalStateException("Harness worker failed", e.getCause());
+    } finally{
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads a program from an assembly file.
+   *
+   * @param path The file to read.
+   *
+   * @return The program, named after the file.
+   *
+   * @throws IOException If the file cannot be read.
+   */
+  public static Program loadProgram(Path path) throws IOException {
+    return new Program(path.getFileName().toString(), Files.readString(path));
+  }
+
+  /**
+   * Generates a random, terminating program from a seed. Programs mix arithmetic, logical and
+   * shift instructions with stack loads and stores, forward branches, counted loops and
+   * subroutine calls. The same seed always yields the same program.
+   *
+   * @param seed The random seed.
+   *
+   * @return The generated program, named after its seed.
+   */
+  public static Program randomProgram(long seed) {
+    return new Program("seed-" + seed, new RandomProgramBuilder(seed).build());
+  }
+
+  /**
+   * Builds random programs for {@link #randomProgram(long)}. Loop counters live in registers that
+   * no other generated instruction writes, and subroutines neither loop nor call, so every program
+   * terminates. Programs stay below the default instruction memory size.
+   */
+  private static class RandomProgramBuilder {
+    private static final String[] WRITABLE = {"$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6",
+                                              "$t7", "$t8", "$s0", "$s1", "$s2", "$s3", "$s4",
+                                              "$s5", "$s6"};
+    private static final String[] COUNTERS = {"$s7", "$t9"};
+    private static final String[] R_TYPE = {"add", "sub", "and", "or", "slt"};
+    private static final int MEMORY_WORDS = 32; // Default data memory size
+    private static final int MAX_INSTRUCTIONS = 22;
+
+    private final Random random;
+    private final StringBuilder source = new StringBuilder();
+    private final List<String> subroutines = new ArrayList<>();
+    private int labelCount, instructionCount;
+
+    RandomProgramBuilder(long seed) {
+      this.random = new Random(seed);
+    }
+
+    String build() {
+      int subroutineCount = random.nextInt(3);
+      for(int i = 0; i < subroutineCount; i++){
+        subroutines.add(newLabel("sub"));
+      }
+
+      block(6 + random.nextInt(16), 0, true);
+      if(!subroutines.isEmpty()){
+        String end = newLabel("end");
+        emit("j " + end);
+        for(String subroutine : subroutines){
+          source.append(subroutine).append(":\n");
+          block(1 + random.nextInt(4), COUNTERS.length, false);
+          emit("jr $ra");
+        }
+        source.append(end).append(":\n");
+      }
+      return source.toString();
+    }
+
+    private void block(int length, int depth, boolean mayCall) {
+      for(int i = 0; i < length && instructionCount < MAX_INSTRUCTIONS; i++){
+        int choice = random.nextInt(100);
+        if(choice < 8 && depth < COUNTERS.length){
+          loop(depth, mayCall);
+        } else if(choice < 16){
+          forwardBranch(depth, mayCall);
+        } else if(choice < 22 && mayCall && !subroutines.isEmpty()){
+          emit("jal " + pick(subroutines.toArray(new String[0])));
+        } else if(choice < 40){
+          memory();
+        } else {
+          arithmetic();
+        }
+      }
+    }
+
+    private void loop(int depth, boolean mayCall) {
+      String counter = COUNTERS[depth];
+      String label = newLabel("loop");
+      emit("addi " + counter + ", $zero, " + (1 + random.nextInt(8)));
+      source.append(label).append(":\n");
+      block(1 + random.nextInt(6), depth + 1, mayCall);
+      emit("addi " + counter + ", " + counter + ", -1");
+      emit("bne " + counter + ", $zero, " + label);
+    }
+
+    private void forwardBranch(int depth, boolean mayCall) {
+      String label = newLabel("skip");
+      emit((random.nextBoolean() ? "beq " : "bne ") + readable() + ", " + readable() + ", " + label);
+      block(1 + random.nextInt(4), Math.max(depth, COUNTERS.length), mayCall);
+      source.append(label).append(":\n");
+    }
+
+    private void memory() {
+      int offset = random.nextInt(MEMORY_WORDS) * 4;
+      String register = random.nextBoolean() ? pick(WRITABLE) : readable();
+      if(random.nextBoolean()){
+        emit("sw " + register + ", " + offset + "($sp)");
+      } else {
+        emit("lw " + pick(WRITABLE) + ", " + offset + "($sp)");
+      }
+    }
+
+    private void arithmetic() {
+      int choice = random.nextInt(10);
+      if(choice < 5){
+        emit(pick(R_TYPE) + " " + pick(WRITABLE) + ", " + readable() + ", " + readable());
+      } else if(choice < 7){
+        emit((random.nextBoolean() ? "sll " : "srl ") + pick(WRITABLE) + ", " + readable() + ", "
+             + random.nextInt(32));
+      } else {
+        int immediate = random.nextBoolean() ? random.nextInt(65536) - 32768 :
+                        random.nextInt(33) - 16;
+        emit("addi " + pick(WRITABLE) + ", " + readable() + ", " + immediate);
+      }
+    }
+
+    private void emit(String instruction) {
+      source.append(instruction).append('\n');
+      instructionCount++;
+    }
+
+    private String readable() {
+      int choice = random.nextInt(20);
+      if(choice == 0) return "$zero";
+      if(choice == 1) return "$sp";
+      if(choice == 2) return pick(COUNTERS);
+      return pick(WRITABLE);
+    }
+
+    private String pick(String[] options) {
+      return options[random.nextInt(options.length)];
+    }
+
+    private String newLabel(String prefix) {
+      return prefix + labelCount++;
+    }
+  }
+
+  /**
+   * Command-line entry point. Usage:
+   * {@code DifferentialHarness [--engine NAME] [--seeds N] [--steps N] [--checkpoint N]
+   * [--data-memory BYTES] [--threads N] [file.asm ...]}. Checks the given files plus {@code N} random programs and exits
+   * with status 1 if any divergence was found.
+   *
+   * @param args The command-line arguments.
+   *
+   * @throws Exception If a file cannot be read or the run is interrupted.
+   */
+  public static void main(String[] args) throws Exception {
+    String engineName = "fused";
+    long seeds = 1000, steps = 1_000_000;
+    int checkpoint = 1000, dataMemory = 4096, threads = Runtime.getRuntime().availableProcessors();
+    List<Program> programs = new ArrayList<>();
+
+    for(int i = 0; i < args.length; i++){
+      switch(args[i]){
+        case "--engine" -> engineName = args[++i];
+        case "--seeds" -> seeds = Long.parseLong(args[++i]);
+        case "--steps" -> steps = Long.parseLong(args[++i]);
+        case "--checkpoint" -> checkpoint = Integer.parseInt(args[++i]);
+        case "--data-memory" -> dataMemory = Integer.parseInt(args[++i]);
+        case "--threads" -> threads = Integer.parseInt(args[++i]);
+        default -> programs.add(loadProgram(Path.of(args[i])));
+      }
+    }
+
+    ExecutionEngine.Factory engine = ENGINES.get(engineName);
+    if(engine == null){
+      System.err.println("Unknown engine: " + engineName + ", available: " + ENGINES.keySet());
+      System.exit(2);
+    }
+    for(long seed = 0; seed < seeds; seed++){
+      programs.add(randomProgram(seed));
+    }
+
+    DifferentialHarness harness = new DifferentialHarness(engine, steps, checkpoint,
+                                                          dataMemory);
+    List<Divergence> divergences = harness.checkAll(programs, threads);
+    divergences.forEach(System.out::println);
+    System.out.printf("Checked %d programs against engine '%s' on %d threads: %d divergences%n",
+                      programs.size(), engineName, threads, divergences.size());
+    System.exit(divergences.isEmpty() ? 0 : 1);
+  }
+}
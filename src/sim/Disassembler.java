@@ -0,0 +1,250 @@
+package sim;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Turns machine words back into assembly, e.g. {@code add $t0, $t0, $t0} or
+ * {@code bne $t0, $t1, loop}, for execution traces, the GUI and debugging views.
+ * <p>
+ * Decoding is driven by tables indexed by opcode and function code, built once, so disassembling
+ * a word is a few array lookups and one string concatenation. An instance additionally caches the
+ * text of every instruction of a simulator's program by address, so annotating a trace of millions
+ * of retired instructions formats each distinct instruction once; an entry is formatted again
+ * when self-modifying code has overwritten its instruction. Branch and jump targets are
+ * shown as labels where the program defines one, and as addresses otherwise. Listings name the
+ * remaining targets inside the program with generated labels such as {@code L_00400010}, so they
+ * assemble back to the same words unless the program holds words that are not instructions or
+ * jumps outside itself.
+ */
+public class Disassembler {
+  private static final int BASE_ADDRESS = 0x00400000;
+  private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+  /**
+   * Operand layouts, one per instruction.
+   */
+  private enum Format {
+    REGISTERS,     // add rd, rs, rt
+    SHIFT,         // sll rd, rt, sa
+    JUMP_REGISTER, // jr rs
+    IMMEDIATE,     // addi rt, rs, imm
+    MEMORY,        // lw rt, imm(rs)
+    BRANCH,        // beq rs, rt, target
+    JUMP           // j target
+  }
+
+  private static final String[] OPCODE_NAMES = new String[64];
+  private static final Format[] OPCODE_FORMATS = new Format[64];
+  private static final String[] FUNCT_NAMES = new String[64];
+  private static final Format[] FUNCT_FORMATS = new Format[64];
+  private static final String[] REGISTER_NAMES = new String[32];
+
+  static {
+    opcode(0b001000, "addi", Format.IMMEDIATE);
+    opcode(0b100011, "lw", Format.MEMORY);
+    opcode(0b101011, "sw", Format.MEMORY);
+    opcode(0b100000, "lb", Format.MEMORY);
+    opcode(0b100001, "lh", Format.MEMORY);
+    opcode(0b100100, "lbu", Format.MEMORY);
+    opcode(0b100101, "lhu", Format.MEMORY);
+    opcode(0b101000, "sb", Format.MEMORY);
+    opcode(0b101001, "sh", Format.MEMORY);
+    opcode(0b000100, "beq", Format.BRANCH);
+    opcode(0b000101, "bne", Format.BRANCH);
+    opcode(0b000010, "j", Format.JUMP);
+    opcode(0b000011, "jal", Format.JUMP);
+    funct(0b100000, "add", Format.REGISTERS);
+    funct(0b100010, "sub", Format.REGISTERS);
+    funct(0b100100, "and", Format.REGISTERS);
+    funct(0b100101, "or", Format.REGISTERS);
+    funct(0b101010, "slt", Format.REGISTERS);
+    funct(0b000000, "sll", Format.SHIFT);
+    funct(0b000010, "srl", Format.SHIFT);
+    funct(0b001000, "jr", Format.JUMP_REGISTER);
+    for(int i = 0; i < 32; i++){
+      REGISTER_NAMES[i] = RegisterFile.registerName(i);
+    }
+  }
+
+  private static void opcode(int opcode, String name, Format format) {
+    OPCODE_NAMES[opcode] = name;
+    OPCODE_FORMATS[opcode] = format;
+  }
+
+  private static void funct(int funct, String name, Format format) {
+    FUNCT_NAMES[funct] = name;
+    FUNCT_FORMATS[funct] = format;
+  }
+
+  /**
+   * A cached disassembly, valid while instruction memory still holds the same instruction string.
+   */
+  private record Entry(String instruction, String text) {}
+
+  private final Simulator simulator;
+  private final Map<Integer, String> labels = new HashMap<>();
+  private final Entry[] cache;
+
+  /**
+   * Creates a disassembler for the program loaded in a simulator.
+   *
+   * @param simulator The simulator whose instruction memory and labels are used.
+   */
+  public Disassembler(Simulator simulator) {
+    this.simulator = simulator;
+    this.cache = new Entry[simulator.getInstructionMemorySize()];
+    simulator.getLabels().forEach((label, address)->labels.putIfAbsent(address, label));
+  }
+
+  /**
+   * Disassembles the instruction at an address of the simulator's program. The text is cached, so
+   * repeated calls for the same address only cost two array lookups. Safe to call from several
+   * threads; at worst two threads format the same instruction.
+   *
+   * @param address The instruction address.
+   *
+   * @return The instruction in assembly syntax.
+   *
+   * @throws IndexOutOfBoundsException If the address holds no instruction.
+   */
+  public String disassemble(int address) {
+    int index = (address - BASE_ADDRESS) >> 2;
+    if(index >= 0 && index < cache.length && (address&3) == 0){
+      String instruction = simulator.getInstruction(address);
+      Entry entry = cache[index];
+      if(entry == null || entry.instruction() != instruction){
+        entry = new Entry(instruction, disassemble(instruction, address, labels));
+        cache[index] = entry;
+      }
+      return entry.text();
+    }
+    throw new IndexOutOfBoundsException("Invalid instruction address: " +
+                                        Integer.toHexString(address));
+  }
+
+  /**
+   * Retrieves the label defined at an address.
+   *
+   * @param address The address.
+   *
+   * @return The first label defined there, or null if none.
+   */
+  public String labelAt(int address) {
+    return labels.get(address);
+  }
+
+  /**
+   * Writes the whole program as assembly source, with a label line before every labelled
+   * instruction. Branch and jump targets inside the program without a label get a generated one
+   * named after their address, e.g. {@code L_00400010}. The listing assembles back to the same
+   * machine code unless it contains {@code .word} lines or targets outside the program, which the
+   * assembler cannot express.
+   *
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeListing(Appendable out) throws IOException {
+    int[] words = new int[cache.length];
+    Map<Integer, String> listingLabels = new HashMap<>(labels);
+    for(int i = 0; i < words.length; i++){
+      int address = BASE_ADDRESS + i * 4;
+      words[i] = Integer.parseUnsignedInt(simulator.getInstruction(address), 2);
+      int target = target(words[i], address);
+      if(target != -1 && Integer.compareUnsigned(target - BASE_ADDRESS, words.length * 4) <= 0){
+        listingLabels.putIfAbsent(target, String.format("L_%08X", target));
+      }
+    }
+
+    for(int i = 0; i < words.length; i++){
+      int address = BASE_ADDRESS + i * 4;
+      String label = listingLabels.get(address);
+      if(label != null){
+        out.append(label).append(":\n");
+      }
+      out.append(disassemble(words[i], address, listingLabels)).append('\n');
+    }
+    String end = listingLabels.get(BASE_ADDRESS + words.length * 4);
+    if(end != null){
+      out.append(end).append(":\n");
+    }
+  }
+
+  /**
+   * Disassembles a binary instruction as stored in {@link InstructionMemory}.
+   *
+   * @param instruction The 32-character binary instruction.
+   * @param address The address of the instruction, for branch and jump targets.
+   * @param labels Labels by address, used for branch and jump targets; may be empty.
+   *
+   * @return The instruction in assembly syntax.
+   */
+  public static String disassemble(String instruction, int address, Map<Integer, String> labels) {
+    return disassemble(Integer.parseUnsignedInt(instruction, 2), address, labels);
+  }
+
+  /**
+   * Disassembles a machine word. Words that are not a supported instruction are shown as
+   * {@code .word 0x...}.
+   *
+   * @param word The machine word.
+   * @param address The address of the instruction, for branch and jump targets.
+   * @param labels Labels by address, used for branch and jump targets; may be empty.
+   *
+   * @return The instruction in assembly syntax.
+   */
+  public static String disassemble(int word, int address, Map<Integer, String> labels) {
+    int opcode = word >>> 26;
+    String name;
+    Format format;
+    if(opcode == 0){
+      name = FUNCT_NAMES[word&0x3F];
+      format = FUNCT_FORMATS[word&0x3F];
+    } else {
+      name = OPCODE_NAMES[opcode];
+      format = OPCODE_FORMATS[opcode];
+    }
+    if(name == null){
+      return String.format(".word 0x%08X", word);
+    }
+
+    String rs = REGISTER_NAMES[(word >>> 21)&0x1F];
+    String rt = REGISTER_NAMES[(word >>> 16)&0x1F];
+    String rd = REGISTER_NAMES[(word >>> 11)&0x1F];
+    int immediate = (short) word;
+    return switch(format){
+      case REGISTERS -> name + " " + rd + ", " + rs + ", " + rt;
+      case SHIFT -> name + " " + rd + ", " + rt + ", " + ((word >>> 6)&0x1F);
+      case JUMP_REGISTER -> name + " " + rs;
+      case IMMEDIATE -> name + " " + rt + ", " + rs + ", " + immediate;
+      case MEMORY -> name + " " + rt + ", " + immediate + "(" + rs + ")";
+      case BRANCH -> name + " " + rs + ", " + rt + ", " + target(target(word, address), labels);
+      case JUMP -> name + " " + target(target(word, address), labels);
+    };
+  }
+
+  /**
+   * Computes the target of a branch or jump.
+   *
+   * @param word The machine word.
+   * @param address The address of the instruction.
+   *
+   * @return The target address, or -1 if the word is not a branch or jump. Targets are word
+   * aligned, so -1 is never one.
+   */
+  private static int target(int word, int address) {
+    return switch(word >>> 26){
+      case 0b000100, 0b000101 -> address + 4 + (short) word * 4;
+      case 0b000010, 0b000011 -> (address&0xF0000000)|((word&0x03FFFFFF) << 2);
+      default -> -1;
+    };
+  }
+
+  private static String target(int address, Map<Integer, String> labels) {
+    String label = labels.get(address);
+    return label != null ? label : String.format("0x%08X", address);
+  }
+}
@@ -0,0 +1,69 @@
+package sim;
+
+/**
+ * Common view of anything that can execute an assembled MIPS program. The reference implementation
+ * is {@link Simulator}; faster engines implement the same contract so that
+ * {@link DifferentialHarness} can compare them against it.
+ */
+public interface ExecutionEngine {
+  /**
+   * Creates an engine for the given assembly source and data memory size.
+   */
+  @FunctionalInterface
+  interface Factory {
+    /**
+     * Assembles the given source and returns an engine ready to execute it.
+     *
+     * @param assemblyCode MIPS assembly code to be executed.
+     * @param dataMemorySize The data memory size in bytes.
+     *
+     * @return A new engine positioned at the first instruction, with an instruction memory large
+     * enough for the program.
+     *
+     * @throws Assembler.AssemblerException If the source cannot be assembled.
+     */
+    ExecutionEngine create(String assemblyCode, int dataMemorySize)
+            throws Assembler.AssemblerException;
+  }
+
+  /**
+   * Executes the next instruction, or marks the engine as finished when the program counter has
+   * run past the last instruction.
+   */
+  void step();
+
+  /**
+   * Executes up to {@code maxSteps} calls of {@link #step()}, stopping early once the program has
+   * finished. Engines that can execute several instructions at once override this method.
+   *
+   * @param maxSteps The maximum number of steps to execute.
+   *
+   * @return The number of steps actually executed.
+   */
+  default long run(long maxSteps) {
+    long steps = 0;
+    while(steps < maxSteps && !isFinished()){
+      step();
+      steps++;
+    }
+    return steps;
+  }
+
+  boolean isFinished();
+
+  int getProgramCounter();
+
+  /**
+   * Retrieves a copy of the register values, indexed by register number.
+   *
+   * @return A new array holding the 32 register values.
+   */
+  int[] getRegisterValues();
+
+  /**
+   * Retrieves a copy of the data memory words, in {@link DataMemory#getMemoryValues()} order.
+   *
+   * @return A new array holding every data memory word.
+   */
+  int[] getDataMemoryValues();
+}
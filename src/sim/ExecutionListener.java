@@ -0,0 +1,61 @@
+package sim;
+
+/**
+ * Observes the execution of a {@link Simulator}, for profilers, tracers, cache models and other
+ * analyses that would otherwise need their own copy of {@link Simulator#step()}. Listeners are
+ * attached with {@link Simulator#addExecutionListener(ExecutionListener)}.
+ * <p>
+ * For every instruction that completes, the simulator first reports what it did: the memory
+ * access of a load or store, the outcome of a branch and the register it wrote, in that order.
+ * Then it reports the retirement of the instruction itself. Instructions that fault report
+ * nothing. All callbacks take primitives, so nothing is allocated per instruction, and every
+ * method has an empty default so a listener only implements what it needs. While no listener is
+ * attached the simulator runs exactly as fast as before.
+ * <p>
+ * Callbacks run on the thread driving the simulator and must not modify it.
+ */
+public interface ExecutionListener {
+  /**
+   * Called after an instruction has completed.
+   *
+   * @param address The address of the instruction.
+   * @param instruction The instruction word.
+   * @param nextAddress The address of the next instruction to execute.
+   */
+  default void instructionRetired(int address, int instruction, int nextAddress) {}
+
+  /**
+   * Called after a load has read data memory.
+   *
+   * @param address The effective address.
+   * @param width The access width in bytes: 1, 2 or 4.
+   * @param value The value written to the target register.
+   */
+  default void memoryLoaded(int address, int width, int value) {}
+
+  /**
+   * Called after a store has written data memory.
+   *
+   * @param address The effective address.
+   * @param width The access width in bytes: 1, 2 or 4.
+   * @param value The value written, zero-extended from the access width.
+   */
+  default void memoryStored(int address, int width, int value) {}
+
+  /**
+   * Called after a conditional branch has been resolved.
+   *
+   * @param address The address of the branch.
+   * @param target The address the branch jumps to when taken.
+   * @param taken Whether the branch was taken.
+   */
+  default void branchResolved(int address, int target, boolean taken) {}
+
+  /**
+   * Called after an instruction has written a register.
+   *
+   * @param registerNumber The register written (1-31).
+   * @param value The new value.
+   */
+  default void registerWritten(int registerNumber, int value) {}
+}
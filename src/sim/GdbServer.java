@@ -0,0 +1,399 @@
+package sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stub for the GDB remote serial protocol, so that MIPS-capable debuggers can attach to a headless
+ * simulator: {@code set endian big}, then {@code target remote localhost:1234}. One debugger is
+ * served at a time.
+ * <p>
+ * Supported packets are {@code ?}, {@code g}/{@code G} and {@code p}/{@code P} for registers,
+ * {@code m}/{@code M} for memory, {@code s} and {@code c} to step and continue,
+ * {@code Z0}/{@code Z1} and {@code z0}/{@code z1} for breakpoints, {@code D} and {@code k}, plus the
+ * queries GDB needs to connect. Registers use the 38-register MIPS layout: $zero to $ra, then sr,
+ * lo, hi, bad, cause, which read as 0, and pc. Continuing uses {@link Simulator#run(long)}, so the
+ * program runs at full speed between stops; a Ctrl-C from the debugger is checked between chunks
+ * of {@value #CONTINUE_CHUNK} steps.
+ * <p>
+ * A malformed packet is answered with an error and never ends the session or the server: a bad
+ * checksum is rejected with {@code -}, memory reads are limited to what fits in one reply of the
+ * advertised packet size, and a connection failing unexpectedly only disconnects that debugger.
+ */
+public class GdbServer implements Closeable {
+  private static final int CONTINUE_CHUNK = 100_000;
+  private static final int PACKET_SIZE = 0x4000;
+  private static final int PROGRAM_COUNTER = 37;
+  private static final int REGISTER_COUNT = 38;
+  private static final int TEXT_BASE = 0x00400000;
+
+  private final Simulator simulator;
+  private ServerSocket serverSocket;
+  private volatile Socket client;
+  private boolean acknowledge;
+
+  /**
+   * Creates a server debugging the given simulator.
+   *
+   * @param simulator The simulator to drive. It must not be used by other threads while a
+   * debugger is attached.
+   */
+  public GdbServer(Simulator simulator) {
+    this.simulator = simulator;
+  }
+
+  /**
+   * Binds the server and starts accepting debuggers in the background.
+   *
+   * @param address The TCP address, normally on the loopback interface.
+   *
+   * @return The bound address, e.g. with the actual port if port 0 was requested.
+   *
+   * @throws IOException If the address cannot be bound.
+   */
+  public SocketAddress start(SocketAddress address) throws IOException {
+    serverSocket = new ServerSocket();
+    serverSocket.bind(address);
+    Thread.ofPlatform().name("gdb-server").start(this::acceptConnections);
+    return serverSocket.getLocalSocketAddress();
+  }
+
+  /**
+   * Stops accepting debuggers and disconnects the current one.
+   *
+   * @throws IOException If a socket cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if(serverSocket != null){
+      serverSocket.close();
+    }
+    Socket current = client;
+    if(current != null){
+      current.close();
+    }
+  }
+
+  private void acceptConnections() {
+    try{
+      while(true){
+        try(Socket socket = serverSocket.accept()){
+          client = socket;
+          socket.setTcpNoDelay(true);
+          serve(socket.getInputStream(), socket.getOutputStream());
+        } catch(SocketException e){
+          if(serverSocket.isClosed()) return;
+        } catch(RuntimeException e){
+          System.err.println("GDB connection failed: " + e);
+        }
+      }
+    } catch(IOException e){
+      if(!serverSocket.isClosed()){
+        System.err.println("GDB server stopped: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Answers packets until the debugger detaches, kills the program or disconnects.
+   */
+  private void serve(InputStream input, OutputStream out) throws IOException {
+    PushbackInputStream in = new PushbackInputStream(input);
+    acknowledge = true;
+    String packet;
+    while((packet = readPacket(in, out)) != null){
+      switch(packet){
+        case "D" -> {
+          writePacket(out, "OK");
+          return;
+        }
+        case "k" -> {
+          simulator.reset();
+          return;
+        }
+        case "QStartNoAckMode" -> {
+          writePacket(out, "OK");
+          acknowledge = false;
+        }
+        default -> writePacket(out, handle(packet, in));
+      }
+    }
+  }
+
+  /**
+   * Computes the reply to a packet.
+   *
+   * @param packet The packet data.
+   * @param in The debugger's input, polled for interrupts while continuing.
+   *
+   * @return The reply data, empty for unsupported packets.
+   */
+  private String handle(String packet, PushbackInputStream in) throws IOException {
+    if(packet.isEmpty()) return "";
+    String arguments = packet.substring(1);
+    try{
+      return switch(packet.charAt(0)){
+        case '?' -> "S05";
+        case 'g' -> readRegisters();
+        case 'G' -> writeRegisters(arguments);
+        case 'p' -> hex(readRegister(Integer.parseInt(arguments, 16)));
+        case 'P' -> {
+          String[] assignment = arguments.split("=");
+          writeRegister(Integer.parseInt(assignment[0], 16), parseHex(assignment[1]));
+          yield "OK";
+        }
+        case 'm' -> readMemory(arguments);
+        case 'M' -> writeMemory(arguments);
+        case 's' -> resume(arguments, true, in);
+        case 'c' -> resume(arguments, false, in);
+        case 'Z', 'z' -> breakpoint(packet.charAt(0) == 'Z', arguments);
+        case 'H', 'T' -> "OK";
+        case 'q' -> query(arguments);
+        default -> "";
+      };
+    } catch(IndexOutOfBoundsException | IllegalArgumentException e){
+      return "E01";
+    }
+  }
+
+  private String query(String query) {
+    if(query.startsWith("Supported")){
+      return "PacketSize=" + Integer.toHexString(PACKET_SIZE) + ";QStartNoAckMode+";
+    }
+    return switch(query){
+      case "Attached" -> "1";
+      case "C" -> "QC1";
+      case "fThreadInfo" -> "m1";
+      case "sThreadInfo" -> "l";
+      default -> "";
+    };
+  }
+
+  private String readRegisters() {
+    StringBuilder registers = new StringBuilder(REGISTER_COUNT * 8);
+    for(int value : simulator.getRegisterValues()){
+      registers.append(hex(value));
+    }
+    for(int i = 32; i < REGISTER_COUNT; i++){
+      registers.append(hex(readRegister(i)));
+    }
+    return registers.toString();
+  }
+
+  private String writeRegisters(String values) {
+    for(int i = 0; i < REGISTER_COUNT && (i + 1) * 8 <= values.length(); i++){
+      writeRegister(i, parseHex(values.substring(i * 8, (i + 1) * 8)));
+    }
+    return "OK";
+  }
+
+  private int readRegister(int register) {
+    if(register < 32) return simulator.getRegisterValues()[register];
+    if(register == PROGRAM_COUNTER) return simulator.getProgramCounter();
+    if(register < REGISTER_COUNT) return 0;
+    throw new IllegalArgumentException("Unknown register " + register);
+  }
+
+  private void writeRegister(int register, int value) {
+    if(register > 0 && register < 32){
+      simulator.writeRegister(register, value);
+    } else if(register == PROGRAM_COUNTER){
+      simulator.setProgramCounter(value);
+    }
+    // $zero and the coprocessor registers are read-only
+  }
+
+  /**
+   * Reads {@code m addr,length}. Stops at the first unmapped byte, failing only if that is the
+   * first one. Longer reads than fit in one packet are cut short, which GDB handles by reading
+   * the rest separately.
+   */
+  private String readMemory(String arguments) {
+    String[] range = arguments.split(",");
+    int address = parseHex(range[0]);
+    int length = Math.min(Integer.parseInt(range[1], 16), PACKET_SIZE / 2);
+    StringBuilder bytes = new StringBuilder(length * 2);
+    for(int i = 0; i < length; i++){
+      int value = readByte(address + i);
+      if(value < 0) break;
+      bytes.append(Character.forDigit(value >>> 4, 16)).append(Character.forDigit(value&0xF, 16));
+    }
+    return bytes.isEmpty() && length > 0 ? "E01" : bytes.toString();
+  }
+
+  /**
+   * Writes {@code M addr,length:bytes} to data memory.
+   */
+  private String writeMemory(String arguments) {
+    int colon = arguments.indexOf(':');
+    String[] range = arguments.substring(0, colon).split(",");
+    int address = parseHex(range[0]);
+    int length = Integer.parseInt(range[1], 16);
+    String bytes = arguments.substring(colon + 1);
+    for(int i = 0; i < length; i++){
+      simulator.storeByte(address + i, Integer.parseInt(bytes.substring(i * 2, i * 2 + 2), 16));
+    }
+    return "OK";
+  }
+
+  /**
+   * Reads a byte of instruction or data memory. Both are big-endian.
+   *
+   * @return The byte, or -1 if the address is not mapped.
+   */
+  private int readByte(int address) {
+    if(address - TEXT_BASE >= 0 && address - TEXT_BASE < simulator.getInstructionMemorySize() * 4){
+      int word = Integer.parseUnsignedInt(simulator.getInstruction(address&~3), 2);
+      return (word >>> (24 - 8 * (address&3)))&0xFF;
+    }
+    try{
+      return simulator.loadByte(address)&0xFF;
+    } catch(IndexOutOfBoundsException e){
+      return -1;
+    }
+  }
+
+  /**
+   * Steps or continues, optionally from a new address, until a breakpoint, the end of the
+   * program, a fault or an interrupt from the debugger.
+   *
+   * @return The stop reply.
+   */
+  private String resume(String address, boolean step, PushbackInputStream in)
+          throws IOException {
+    if(!address.isEmpty()){
+      simulator.setProgramCounter(parseHex(address));
+    }
+    try{
+      if(step){
+        simulator.step();
+        return simulator.isFinished() ? "W00" : "S05";
+      }
+      while(true){
+        simulator.run(CONTINUE_CHUNK);
+        if(simulator.isFinished()) return "W00";
+        if(simulator.hasBreakpoint(simulator.getProgramCounter())) return "S05";
+        if(in.available() > 0){
+          int c = in.read();
+          if(c == 0x03) return "S02";
+          in.unread(c); // Not an interrupt, left for the next packet
+        }
+      }
+    } catch(RuntimeException e){
+      return "S0B"; // Report faults as SIGSEGV, stopped at the faulting instruction
+    }
+  }
+
+  private String breakpoint(boolean insert, String arguments) {
+    String[] fields = arguments.split(",");
+    if(!fields[0].equals("0") && !fields[0].equals("1")){
+      return ""; // Watchpoints are not supported
+    }
+    int address = parseHex(fields[1]);
+    if(insert){
+      simulator.addBreakpoint(address);
+    } else {
+      simulator.removeBreakpoint(address);
+    }
+    return "OK";
+  }
+
+  /**
+   * Reads the next packet, acknowledging it, and skips acknowledgements and stray interrupts.
+   *
+   * @return The unescaped packet data, or null if the debugger disconnected.
+   */
+  private String readPacket(InputStream in, OutputStream out) throws IOException {
+    while(true){
+      int c = in.read();
+      if(c < 0) return null;
+      if(c != '$') continue;
+
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      int checksum = 0;
+      while((c = in.read()) != '#'){
+        if(c < 0) return null;
+        checksum += c;
+        if(c == '}'){
+          c = in.read();
+          checksum += c;
+          c ^= 0x20;
+        }
+        data.write(c);
+      }
+      int high = in.read(), low = in.read();
+      if(low < 0) return null;
+      // A non-hex digit is -1, which makes the received checksum negative and never valid
+      int received = Character.digit(high, 16) << 4|Character.digit(low, 16);
+      boolean valid = received == (checksum&0xFF);
+      if(acknowledge){
+        out.write(valid ? '+' : '-');
+        out.flush();
+      }
+      if(valid) return data.toString(StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  private void writePacket(OutputStream out, String data) throws IOException {
+    int checksum = 0;
+    for(int i = 0; i < data.length(); i++){
+      checksum += data.charAt(i);
+    }
+    String packet = "$" + data + "#" + String.format("%02x", checksum&0xFF);
+    out.write(packet.getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  private static String hex(int value) {
+    return String.format("%08x", value);
+  }
+
+  private static int parseHex(String text) {
+    return Integer.parseUnsignedInt(text, 16);
+  }
+
+  /**
+   * Command-line entry point. Usage: {@code GdbServer file.asm [--port N] [--data-memory N]}.
+   * Serves the program on the loopback interface, port 1234 by default, until the process is
+   * stopped. Instruction memory is sized to the program and data memory holds 4096 bytes unless
+   * given.
+   *
+   * @param args The command-line arguments.
+   *
+   * @throws Exception If the program cannot be read or assembled, or the port cannot be bound.
+   */
+  public static void main(String[] args) throws Exception {
+    Path source = null;
+    int port = 1234;
+    int dataMemory = 4096;
+    for(int i = 0; i < args.length; i++){
+      switch(args[i]){
+        case "--port" -> port = Integer.parseInt(args[++i]);
+        case "--data-memory" -> dataMemory = Integer.parseInt(args[++i]);
+        default -> source = Path.of(args[i]);
+      }
+    }
+    if(source == null){
+      System.err.println("Usage: GdbServer file.asm [--port N] [--data-memory N]");
+      System.exit(2);
+    }
+
+    GdbServer server = new GdbServer(Simulator.forProgram(Files.readString(source), dataMemory));
+    SocketAddress address = server.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    System.out.println("Waiting for GDB on " + address);
+  }
+}
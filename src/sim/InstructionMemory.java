@@ -5,10 +5,14 @@ import java.util.List;
 /**
  * This class represents the instruction memory of a MIPS simulator. It stores the binary
  * instructions and provides methods to access them by address.
+ * <p>
+ * Instructions can be overwritten for self-modifying code. The loaded program is kept, copied on
+ * the first write, so that {@link #reset()} can restore it.
  */
 public class InstructionMemory {
   private static final int BASE_ADDRESS = 0x00400000;
-  private final String[] memory;
+  private final String[] program;
+  private String[] memory;
 
   /**
    * Constructs an sim.InstructionMemory instance with the given list of binary instructions.
@@ -42,11 +46,12 @@ public class InstructionMemory {
       throw new IllegalArgumentException("Memory size must be a multiple of 4 bytes");
     }
 
-    memory = new String[instructionList.size()];
+    program = new String[instructionList.size()];
 
     for(int i = 0; i < instructionList.size(); i++){
-      memory[i] = instructionList.get(i);
+      program[i] = instructionList.get(i);
     }
+    memory = program;
   }
 
   /**
@@ -67,6 +72,56 @@ public class InstructionMemory {
     return memory[index];
   }
 
+  /**
+   * Retrieves the instruction at the specified address as a machine word.
+   *
+   * @param address The memory address of the instruction (must be aligned to 4 bytes).
+   *
+   * @return The instruction word.
+   *
+   * @throws IndexOutOfBoundsException If the address is out of bounds.
+   */
+  public int loadWord(int address) {
+    return Integer.parseUnsignedInt(load(address), 2);
+  }
+
+  /**
+   * Overwrites the instruction at the specified address.
+   *
+   * @param address The memory address of the instruction (must be aligned to 4 bytes).
+   * @param word The new instruction word.
+   *
+   * @throws IndexOutOfBoundsException If the address is out of bounds.
+   */
+  public void store(int address, int word) {
+    int index = convertAddressToIndex(address);
+    if(index < 0 || index >= memory.length || (address&3) != 0){
+      throw new IndexOutOfBoundsException(
+              "Invalid instruction address: " + Integer.toHexString(address));
+    }
+    if(memory == program){
+      memory = program.clone();
+    }
+    String binary = Integer.toBinaryString(word);
+    memory[index] = "0".repeat(32 - binary.length()) + binary;
+  }
+
+  /**
+   * Checks whether any instruction was overwritten since construction or the last reset.
+   *
+   * @return True if the memory differs from the loaded program.
+   */
+  public boolean isModified() {
+    return memory != program;
+  }
+
+  /**
+   * Restores the loaded program, undoing all writes.
+   */
+  public void reset() {
+    memory = program;
+  }
+
   /**
    * Converts a memory address to an index in the instruction array.
    *
@@ -0,0 +1,257 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Links separately assembled modules into one program, so that a project split into library
+ * routines only re-assembles the files that changed.
+ * <p>
+ * Each source file is assembled into an {@link ObjectModule} with
+ * {@link Assembler#assembleModule(String, String)}. Modules are cached by the SHA-256 hash of
+ * their source, in memory and optionally in a cache directory that persists between runs, so
+ * assembling an unchanged file again is a lookup. Linking places the modules one after another in
+ * instruction memory, the first module at 0x00400000 where execution starts, and patches every
+ * {@code j} and {@code jal} with the address of its target: a label of the same module, or else a
+ * label another module exports with {@code .globl}. The linker defines {@code _end}, the address
+ * past the last instruction, so the entry module can finish the program with {@code j _end}
+ * instead of running into the modules placed after it.
+ */
+public class Linker {
+  public static class LinkerException extends Exception {
+    public LinkerException(String message) {
+      super(message);
+    }
+  }
+
+  private static final int TEXT_BASE = 0x00400000;
+
+  /**
+   * A relocatable, separately assembled module.
+   *
+   * @param name The module name, used in linker errors.
+   * @param code The binary instructions, with jump targets still to be patched.
+   * @param symbols The byte offset of every label from the first instruction of the module.
+   * @param exports The labels visible to other modules.
+   * @param relocations The target label of every {@code j} and {@code jal}, by instruction index.
+   */
+  public record ObjectModule(String name, List<String> code, Map<String, Integer> symbols,
+                             Set<String> exports, Map<Integer, String> relocations) {}
+
+  /**
+   * A linked program.
+   *
+   * @param binary The binary instructions, starting at 0x00400000.
+   * @param labels The address of every exported label and of every module-local label whose name
+   * is not taken by an earlier module.
+   */
+  public record LinkedProgram(List<String> binary, Map<String, Integer> labels) {
+    /**
+     * Loads the program into a simulator whose instruction memory is just large enough for it.
+     *
+     * @param dataMemorySize The data memory size in bytes.
+     *
+     * @return A simulator ready to run the program.
+     */
+    public Simulator simulator(int dataMemorySize) {
+      return Simulator.forProgram(binary, labels, dataMemorySize);
+    }
+  }
+
+  private final Path cacheDirectory;
+  private final Map<String, ObjectModule> cache = new ConcurrentHashMap<>();
+  private final AtomicLong assembled = new AtomicLong();
+
+  /**
+   * Creates a linker that caches modules in memory only.
+   */
+  public Linker() {
+    this(null);
+  }
+
+  /**
+   * Creates a linker that also caches modules in a directory, one file per source hash.
+   *
+   * @param cacheDirectory The cache directory, created if missing, or null for none.
+   */
+  public Linker(Path cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  /**
+   * Assembles a source file into a module, or returns the cached module if a source with the same
+   * content was assembled before.
+   *
+   * @param name The module name.
+   * @param source The assembly source.
+   *
+   * @return The module.
+   *
+   * @throws Assembler.AssemblerException If the source cannot be assembled.
+   */
+  public ObjectModule assemble(String name, String source) throws Assembler.AssemblerException {
+    String hash = hash(source);
+    ObjectModule module = cache.get(hash);
+    if(module == null && cacheDirectory != null){
+      module = readCached(cacheDirectory.resolve(hash + ".obj"));
+    }
+    if(module == null){
+      module = new Assembler().assembleModule(name, source);
+      assembled.incrementAndGet();
+      if(cacheDirectory != null){
+        writeCached(cacheDirectory.resolve(hash + ".obj"), module);
+      }
+    }
+    cache.put(hash, module);
+    return module.name().equals(name) ? module :
+           new ObjectModule(name, module.code(), module.symbols(), module.exports(),
+                            module.relocations());
+  }
+
+  /**
+   * Retrieves how many sources this linker actually assembled, as opposed to found in its cache.
+   *
+   * @return The number of cache misses.
+   */
+  public long getAssembledCount() {
+    return assembled.get();
+  }
+
+  /**
+   * Links modules into a program, in the given order.
+   *
+   * @param modules The modules; execution starts at the first instruction of the first one.
+   *
+   * @return The linked program.
+   *
+   * @throws LinkerException If a label is exported twice or a jump target is not found.
+   */
+  public LinkedProgram link(List<ObjectModule> modules) throws LinkerException {
+    int[] bases = new int[modules.size()];
+    Map<String, Integer> globals = new LinkedHashMap<>();
+    int size = 0;
+    for(int m = 0; m < modules.size(); m++){
+      ObjectModule module = modules.get(m);
+      bases[m] = TEXT_BASE + size * 4;
+      for(String export : module.exports()){
+        Integer offset = module.symbols().get(export);
+        if(offset == null){
+          throw new LinkerException("Exported label not found: " + export + " in module "
+                                    + module.name());
+        }
+        if(globals.putIfAbsent(export, bases[m] + offset) != null){
+          throw new LinkerException("Label exported twice: " + export + " in module "
+                                    + module.name());
+        }
+      }
+      size += module.code().size();
+    }
+    if(globals.putIfAbsent("_end", TEXT_BASE + size * 4) != null){
+      throw new LinkerException("Label reserved by the linker: _end");
+    }
+
+    List<String> binary = new ArrayList<>(size);
+    Map<String, Integer> labels = new LinkedHashMap<>(globals);
+    for(int m = 0; m < modules.size(); m++){
+      ObjectModule module = modules.get(m);
+      List<String> code = new ArrayList<>(module.code());
+      for(Map.Entry<Integer, String> relocation : module.relocations().entrySet()){
+        String symbol = relocation.getValue();
+        Integer offset = module.symbols().get(symbol);
+        Integer address = offset != null ? Integer.valueOf(bases[m] + offset) : globals.get(symbol);
+        if(address == null){
+          throw new LinkerException("Label not found: " + symbol + " in module " + module.name());
+        }
+        String instruction = code.get(relocation.getKey());
+        String target = Integer.toBinaryString((address >> 2)&0x03FFFFFF);
+        code.set(relocation.getKey(),
+                 instruction.substring(0, 6) + "0".repeat(26 - target.length()) + target);
+      }
+      binary.addAll(code);
+      for(Map.Entry<String, Integer> symbol : module.symbols().entrySet()){
+        labels.putIfAbsent(symbol.getKey(), bases[m] + symbol.getValue());
+      }
+    }
+    return new LinkedProgram(Collections.unmodifiableList(binary),
+                             Collections.unmodifiableMap(labels));
+  }
+
+  private static String hash(String source) {
+    try{
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+    } catch(NoSuchAlgorithmException e){
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Reads a module from the cache directory. The format is one record per line:
+   * {@code module}, {@code export}, {@code symbol}, {@code reloc} and {@code code}.
+   *
+   * @return The module, or null if it is not cached or cannot be read.
+   */
+  private static ObjectModule readCached(Path file) {
+    if(!Files.isRegularFile(file)) return null;
+    try{
+      String name = null;
+      List<String> code = new ArrayList<>();
+      Map<String, Integer> symbols = new LinkedHashMap<>();
+      Set<String> exports = new LinkedHashSet<>();
+      Map<Integer, String> relocations = new LinkedHashMap<>();
+      for(String line : Files.readAllLines(file)){
+        String[] fields = line.split(" ");
+        switch(fields[0]){
+          case "module" -> name = fields[1];
+          case "export" -> exports.add(fields[1]);
+          case "symbol" -> symbols.put(fields[1], Integer.parseInt(fields[2]));
+          case "reloc" -> relocations.put(Integer.parseInt(fields[1]), fields[2]);
+          case "code" -> code.add(fields[1]);
+          default -> {
+            return null;
+          }
+        }
+      }
+      return name == null ? null :
+             new ObjectModule(name, List.copyOf(code), Collections.unmodifiableMap(symbols),
+                              Set.copyOf(exports), Collections.unmodifiableMap(relocations));
+    } catch(IOException | RuntimeException e){
+      return null; // A damaged entry is assembled again
+    }
+  }
+
+  private static void writeCached(Path file, ObjectModule module) {
+    StringBuilder text = new StringBuilder();
+    text.append("module ").append(module.name().replace(' ', '_')).append('\n');
+    module.exports().forEach(export->text.append("export ").append(export).append('\n'));
+    module.symbols().forEach((label, offset)->text.append("symbol ").append(label).append(' ')
+                                                  .append(offset).append('\n'));
+    module.relocations().forEach((index, label)->text.append("reloc ").append(index).append(' ')
+                                                     .append(label).append('\n'));
+    module.code().forEach(instruction->text.append("code ").append(instruction).append('\n'));
+    try{
+      Files.createDirectories(file.getParent());
+      Path temporary = Files.createTempFile(file.getParent(), "module", ".tmp");
+      Files.writeString(temporary, text);
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+    } catch(IOException e){
+      // The cache is an optimization; the module is still returned
+    }
+  }
+}
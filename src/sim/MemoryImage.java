@@ -0,0 +1,241 @@
+package sim;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk transfer of datasets between files and a simulator's data memory, so that benchmark kernels
+ * can start on megabytes of input instead of building it with {@code sw} one word at a time.
+ * <p>
+ * Binary files are raw memory images, copied by a file channel straight into and out of the
+ * memory's byte array; since data memory is big-endian, a file of big-endian words lands as words
+ * at aligned addresses. CSV files hold one 32-bit word per value, decimal or {@code 0x} hex,
+ * separated by commas, semicolons or white space, with {@code #} comments; they are parsed into an
+ * int array and stored through an int view of the memory. Files ending in {@code .csv} are CSV,
+ * all others binary.
+ * <p>
+ * Datasets are placed by the address of their lowest byte. Data memory ends at byte 0xFFFFFFFF, so
+ * a dataset of {@code n} bytes filling the top of memory starts at {@code 0xFFFFFFFF - n + 1}, and
+ * {@link Simulator#getDataMemoryLowestAddress()} gives the start of the whole memory. A program
+ * loads the word in bytes {@code a} to {@code a + 3} with {@code lw} at {@code a + 3}, see
+ * {@link DataMemory}. Loads must
+ * happen after any {@link Simulator#reset()}, which clears the memory.
+ */
+public final class MemoryImage {
+  private MemoryImage() {}
+
+  /**
+   * Loads a binary or CSV file into data memory.
+   *
+   * @param simulator The simulator to load into.
+   * @param address The address of the first byte.
+   * @param file The file; CSV if its name ends in {@code .csv}.
+   *
+   * @return The number of bytes loaded.
+   *
+   * @throws IOException If the file cannot be read or a CSV value is malformed.
+   * @throws IndexOutOfBoundsException If the data does not fit in data memory at the address.
+   */
+  public static int load(Simulator simulator, int address, Path file) throws IOException {
+    if(isCsv(file)){
+      int[] words = parseCsv(Files.readString(file));
+      storeWords(simulator, address, words);
+      return words.length * 4;
+    }
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      long size = channel.size();
+      if(size > Integer.MAX_VALUE){
+        throw new IndexOutOfBoundsException("File too large for data memory: " + file);
+      }
+      ByteBuffer buffer = simulator.getDataMemoryBuffer(address, (int) size);
+      while(buffer.hasRemaining()){
+        if(channel.read(buffer) < 0){
+          throw new IOException("File shrank while reading: " + file);
+        }
+      }
+      return (int) size;
+    }
+  }
+
+  /**
+   * Writes a range of data memory to a binary or CSV file, replacing it.
+   *
+   * @param simulator The simulator to dump.
+   * @param address The address of the first byte.
+   * @param length The number of bytes; a multiple of 4 for CSV.
+   * @param file The file; CSV if its name ends in {@code .csv}.
+   *
+   * @throws IOException If the file cannot be written.
+   * @throws IndexOutOfBoundsException If the range does not lie within data memory.
+   */
+  public static void dump(Simulator simulator, int address, int length, Path file)
+          throws IOException {
+    ByteBuffer buffer = simulator.getDataMemoryBuffer(address, length);
+    if(isCsv(file)){
+      if(length % 4 != 0){
+        throw new IllegalArgumentException("CSV dumps hold whole words: " + length + " bytes");
+      }
+      IntBuffer words = buffer.asIntBuffer();
+      try(Writer writer = Files.newBufferedWriter(file)){
+        while(words.hasRemaining()){
+          writer.write(Integer.toString(words.get()));
+          writer.write('\n');
+        }
+      }
+      return;
+    }
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)){
+      while(buffer.hasRemaining()){
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Stores words at ascending aligned addresses.
+   *
+   * @param simulator The simulator to store into.
+   * @param address The address of the lowest byte of the first word.
+   * @param words The words.
+   *
+   * @throws IndexOutOfBoundsException If the words do not fit in data memory at the address.
+   */
+  public static void storeWords(Simulator simulator, int address, int[] words) {
+    if(words.length > Integer.MAX_VALUE / 4){
+      throw new IndexOutOfBoundsException("Too many words for data memory: " + words.length);
+    }
+    simulator.getDataMemoryBuffer(address, words.length * 4).asIntBuffer().put(words);
+  }
+
+  /**
+   * Loads words from ascending aligned addresses.
+   *
+   * @param simulator The simulator to load from.
+   * @param address The address of the lowest byte of the first word.
+   * @param count The number of words.
+   *
+   * @return The words.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within data memory.
+   */
+  public static int[] loadWords(Simulator simulator, int address, int count) {
+    int[] words = new int[count];
+    simulator.getDataMemoryBuffer(address, count * 4).asIntBuffer().get(words);
+    return words;
+  }
+
+  /**
+   * Parses CSV values into words. Values outside both the signed and the unsigned 32-bit range
+   * are rejected.
+   *
+   * @param text The CSV text.
+   *
+   * @return The words in order.
+   *
+   * @throws IOException If a value is malformed, with its line number.
+   */
+  public static int[] parseCsv(CharSequence text) throws IOException {
+    int[] words = new int[Math.max(16, text.length() / 4)];
+    int count = 0, line = 1;
+    int length = text.length();
+    for(int i = 0; i < length; i++){
+      char c = text.charAt(i);
+      if(c == '\n'){
+        line++;
+      } else if(c == '#'){
+        while(i + 1 < length && text.charAt(i + 1) != '\n') i++;
+      } else if(!(c == ',' || c == ';' || Character.isWhitespace(c))){
+        int start = i;
+        while(i + 1 < length && !isSeparator(text.charAt(i + 1))) i++;
+        String token = text.subSequence(start, i + 1).toString();
+        long value;
+        try{
+          value = Long.decode(token);
+        } catch(NumberFormatException e){
+          throw new IOException("Line " + line + ": malformed value: " + token);
+        }
+        if(value < Integer.MIN_VALUE || value > 0xFFFFFFFFL){
+          throw new IOException("Line " + line + ": value out of 32-bit range: " + token);
+        }
+        if(count == words.length){
+          words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[count++] = (int) value;
+      }
+    }
+    return Arrays.copyOf(words, count);
+  }
+
+  private static boolean isSeparator(char c) {
+    return c == ',' || c == ';' || c == '#' || Character.isWhitespace(c);
+  }
+
+  private static boolean isCsv(Path file) {
+    return file.getFileName().toString().toLowerCase().endsWith(".csv");
+  }
+
+  /**
+   * Command-line entry point. Usage: {@code MemoryImage file.asm [--data-memory N] [--steps N]
+   * [--load ADDRESS=file]... [--dump ADDRESS:LENGTH=file]...}. Loads the datasets, runs the
+   * program, writes the dumps and prints the final registers. Addresses are decimal or {@code 0x}
+   * hex.
+   *
+   * @param args The command-line arguments.
+   *
+   * @throws Exception If a file cannot be read or written, or the program cannot be assembled.
+   */
+  public static void main(String[] args) throws Exception {
+    Path source = null;
+    int dataMemory = 128;
+    long steps = Long.MAX_VALUE;
+    List<String> loads = new ArrayList<>(), dumps = new ArrayList<>();
+    for(int i = 0; i < args.length; i++){
+      switch(args[i]){
+        case "--data-memory" -> dataMemory = Integer.parseInt(args[++i]);
+        case "--steps" -> steps = Long.parseLong(args[++i]);
+        case "--load" -> loads.add(args[++i]);
+        case "--dump" -> dumps.add(args[++i]);
+        default -> source = Path.of(args[i]);
+      }
+    }
+    if(source == null){
+      System.err.println("Usage: MemoryImage file.asm [--data-memory N] [--steps N] "
+                         + "[--load ADDRESS=file]... [--dump ADDRESS:LENGTH=file]...");
+      System.exit(2);
+    }
+
+    Assembler assembler = new Assembler();
+    List<String> binary = assembler.assemble(Files.readString(source));
+    Simulator simulator = Simulator.forProgram(binary, assembler.getLabels(), dataMemory);
+    for(String load : loads){
+      String[] parts = load.split("=", 2);
+      int address = (int) (long) Long.decode(parts[0]);
+      int bytes = load(simulator, address, Path.of(parts[1]));
+      System.out.printf("Loaded %d bytes at 0x%08X from %s%n", bytes, address, parts[1]);
+    }
+    long start = System.nanoTime();
+    simulator.run(steps);
+    System.out.printf("Ran %d steps in %.1f ms%n", simulator.getInstructionsExecuted(),
+                      (System.nanoTime() - start) / 1e6);
+    for(String dump : dumps){
+      String[] parts = dump.split("=", 2);
+      String[] range = parts[0].split(":", 2);
+      dump(simulator, (int) (long) Long.decode(range[0]), Integer.decode(range[1]),
+           Path.of(parts[1]));
+    }
+    for(String[] register : simulator.getRegisterState()){
+      System.out.println(register[0] + ":\t" + register[1]);
+    }
+  }
+}
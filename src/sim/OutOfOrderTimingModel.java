@@ -0,0 +1,416 @@
+package sim;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Trace-driven timing model of a Tomasulo-style out-of-order superscalar core. As an
+ * {@link ExecutionListener}, the model is told of every committed instruction and computes when it
+ * would have been dispatched, started, completed and committed on the configured core; it never
+ * feeds anything back, so the functional result is the same with or without a model attached.
+ * <p>
+ * Each instruction is dispatched in program order, at most {@code issueWidth} per cycle, into a
+ * reorder buffer entry and a reservation station of its functional unit kind (integer, memory or
+ * branch). It starts once its operands are ready, renamed registers leaving only true
+ * dependencies, and a pipelined unit of its kind is free, then completes after the latency of its
+ * {@link Simulator.OpcodeClass}. Stores also hold a store queue entry until they commit, and loads
+ * wait for the youngest older store in the queue to the same word; addresses are known, so there
+ * is no other memory ordering. Instructions commit in order, at most
+ * {@code issueWidth} per cycle. Branches are predicted backward taken, forward not taken; a
+ * misprediction stops dispatch until the branch completes plus {@code mispredictPenalty}. Jumps are
+ * always predicted correctly.
+ * <p>
+ * Every cycle an instruction waits beyond the earliest cycle the previous pipeline stage allows is
+ * attributed to one {@link Stall} reason.
+ */
+public class OutOfOrderTimingModel implements ExecutionListener {
+  /**
+   * Reasons an instruction waits.
+   */
+  public enum Stall {
+    /**
+     * Dispatch waits for the front end to be redirected after a mispredicted branch.
+     */
+    CONTROL,
+    /**
+     * Dispatch waits for a free reorder buffer entry.
+     */
+    REORDER_BUFFER_FULL,
+    /**
+     * Dispatch waits for a free reservation station.
+     */
+    RESERVATION_STATIONS_FULL,
+    /**
+     * Dispatch of a store waits for a free store queue entry.
+     */
+    STORE_QUEUE_FULL,
+    /**
+     * Execution waits for a source operand.
+     */
+    DATA_DEPENDENCY,
+    /**
+     * Execution waits for a free functional unit.
+     */
+    FUNCTIONAL_UNIT_BUSY
+  }
+
+  private enum Unit {INTEGER, MEMORY, BRANCH}
+
+  /**
+   * Core configuration.
+   *
+   * @param issueWidth Instructions dispatched and committed per cycle.
+   * @param reorderBufferSize Reorder buffer entries.
+   * @param storeQueueSize Store queue entries, held by stores from dispatch to commit.
+   * @param reservationStations Reservation stations per functional unit kind.
+   * @param functionalUnits Pipelined functional units per kind.
+   * @param mispredictPenalty Cycles from the completion of a mispredicted branch to the next
+   * dispatch.
+   * @param latencies Execution latency in cycles of every instruction class.
+   */
+  public record Config(int issueWidth, int reorderBufferSize, int storeQueueSize,
+                       int reservationStations, int functionalUnits, int mispredictPenalty,
+                       Map<Simulator.OpcodeClass, Integer> latencies) {
+    public Config {
+      if(issueWidth <= 0 || reorderBufferSize <= 0 || storeQueueSize <= 0
+         || reservationStations <= 0 || functionalUnits <= 0 || mispredictPenalty < 0){
+        throw new IllegalArgumentException("Core resources must be positive");
+      }
+      latencies = Map.copyOf(latencies);
+      for(Simulator.OpcodeClass opcodeClass : Simulator.OpcodeClass.values()){
+        Integer latency = latencies.get(opcodeClass);
+        if(latency == null || latency <= 0){
+          throw new IllegalArgumentException("Missing or invalid latency for " + opcodeClass);
+        }
+      }
+    }
+
+    /**
+     * Creates a 4-wide core with a 64-entry reorder buffer, a 16-entry store queue, 8 reservation
+     * stations and 2 units per kind, a 3-cycle misprediction penalty, 3-cycle loads and
+     * single-cycle everything else.
+     *
+     * @return The default configuration.
+     */
+    public static Config defaults() {
+      Map<Simulator.OpcodeClass, Integer> latencies = new EnumMap<>(Simulator.OpcodeClass.class);
+      for(Simulator.OpcodeClass opcodeClass : Simulator.OpcodeClass.values()){
+        latencies.put(opcodeClass, 1);
+      }
+      latencies.put(Simulator.OpcodeClass.LOAD, 3);
+      return new Config(4, 64, 16, 8, 2, 3, latencies);
+    }
+  }
+
+  private final Config config;
+  private final int[] latencies = new int[Simulator.OpcodeClass.values().length];
+
+  // Completion cycle of the last writer of each register
+  private final long[] registerReady = new long[32];
+
+  // Word, completion and commit cycle of the last storeQueueSize stores, indexed by store number
+  private final int[] storeWord;
+  private final long[] storeComplete;
+  private final long[] storeCommit;
+  private long stores;
+
+  // Commit cycle of the last reorderBufferSize instructions, indexed by sequence number
+  private final long[] reorderBuffer;
+
+  // Start cycles of the instructions holding reservation stations, per unit kind
+  private final Map<Unit, PriorityQueue<Long>> reservationStations = new EnumMap<>(Unit.class);
+
+  // Functional units booked per cycle and unit kind, a ring indexed by cycle
+  private final long[] bookedCycle;
+  private final int[][] booked;
+
+  private long fetchCycle;
+  private long dispatchCycle, dispatchedInCycle;
+  private long commitCycle = -1, committedInCycle;
+  private long instructions, mispredictions;
+  private final long[] stallCycles = new long[Stall.values().length];
+  private int memoryAddress; // Of the load or store about to retire
+
+  /**
+   * Creates a timing model.
+   *
+   * @param config The core to model.
+   */
+  public OutOfOrderTimingModel(Config config) {
+    this.config = config;
+    int maxLatency = 1;
+    for(Simulator.OpcodeClass opcodeClass : Simulator.OpcodeClass.values()){
+      latencies[opcodeClass.ordinal()] = config.latencies().get(opcodeClass);
+      maxLatency = Math.max(maxLatency, latencies[opcodeClass.ordinal()]);
+    }
+    for(Unit unit : Unit.values()){
+      reservationStations.put(unit, new PriorityQueue<>());
+    }
+    reorderBuffer = new long[config.reorderBufferSize()];
+    storeWord = new int[config.storeQueueSize()];
+    storeComplete = new long[config.storeQueueSize()];
+    storeCommit = new long[config.storeQueueSize()];
+
+    // In-flight instructions start at most one reorder buffer of latencies apart
+    int window = config.reorderBufferSize() * (maxLatency + 2) + config.mispredictPenalty();
+    window = Integer.highestOneBit(Math.max(64, window));
+    bookedCycle = new long[window * 4];
+    booked = new int[window * 4][Unit.values().length];
+    Arrays.fill(bookedCycle, -1);
+  }
+
+  @Override
+  public void memoryLoaded(int address, int width, int value) {
+    memoryAddress = address;
+  }
+
+  @Override
+  public void memoryStored(int address, int width, int value) {
+    memoryAddress = address;
+  }
+
+  @Override
+  public void instructionRetired(int address, int instruction, int nextAddress) {
+    retire(address, instruction, nextAddress, memoryAddress);
+  }
+
+  /**
+   * Accounts for one committed instruction.
+   *
+   * @param programCounter The address of the instruction.
+   * @param word The instruction word.
+   * @param nextProgramCounter The address of the next instruction executed.
+   * @param memoryAddress The effective address of a load or store, ignored otherwise.
+   */
+  void retire(int programCounter, int word, int nextProgramCounter, int memoryAddress) {
+    int opcode = word >>> 26;
+    int rs = (word >>> 21)&0x1F, rt = (word >>> 16)&0x1F, rd = (word >>> 11)&0x1F;
+    Simulator.OpcodeClass opcodeClass;
+    int source1 = 0, source2 = 0, destination = 0;
+    switch(opcode){
+      case 0b000000 -> {
+        int funct = word&0x3F;
+        opcodeClass = switch(funct){
+          case 36, 37 -> Simulator.OpcodeClass.LOGICAL;
+          case 0, 2 -> Simulator.OpcodeClass.SHIFT;
+          case 8 -> Simulator.OpcodeClass.JUMP;
+          default -> Simulator.OpcodeClass.ARITHMETIC;
+        };
+        if(funct == 8){
+          source1 = rs;
+        } else {
+          source1 = opcodeClass == Simulator.OpcodeClass.SHIFT ? 0 : rs;
+          source2 = rt;
+          destination = rd;
+        }
+      }
+      case 0b001000, 0b100011, 0b100000, 0b100001, 0b100100, 0b100101 -> {
+        opcodeClass = opcode == 0b001000 ? Simulator.OpcodeClass.ARITHMETIC
+                                         : Simulator.OpcodeClass.LOAD;
+        source1 = rs;
+        destination = rt;
+      }
+      case 0b101011, 0b101000, 0b101001, 0b000100, 0b000101 -> {
+        opcodeClass = opcode == 0b000100 || opcode == 0b000101 ? Simulator.OpcodeClass.BRANCH
+                                                               : Simulator.OpcodeClass.STORE;
+        source1 = rs;
+        source2 = rt;
+      }
+      case 0b000011 -> {
+        opcodeClass = Simulator.OpcodeClass.JUMP;
+        destination = 31;
+      }
+      default -> opcodeClass = Simulator.OpcodeClass.JUMP;
+    }
+    Unit unit = switch(opcodeClass){
+      case LOAD, STORE -> Unit.MEMORY;
+      case BRANCH, JUMP -> Unit.BRANCH;
+      default -> Unit.INTEGER;
+    };
+
+    // Dispatch: in order, limited by the issue width, the front end, the ROB and the stations
+    long dispatch = dispatchCycle;
+    if(dispatchedInCycle == config.issueWidth()){
+      dispatch++;
+    }
+    dispatch = wait(dispatch, fetchCycle, Stall.CONTROL);
+    if(instructions >= reorderBuffer.length){
+      dispatch = wait(dispatch, reorderBuffer[(int) (instructions % reorderBuffer.length)] + 1,
+                      Stall.REORDER_BUFFER_FULL);
+    }
+    PriorityQueue<Long> stations = reservationStations.get(unit);
+    while(!stations.isEmpty() && stations.peek() < dispatch){
+      stations.poll();
+    }
+    while(stations.size() >= config.reservationStations()){
+      dispatch = wait(dispatch, stations.poll() + 1, Stall.RESERVATION_STATIONS_FULL);
+    }
+    if(opcodeClass == Simulator.OpcodeClass.STORE && stores >= storeCommit.length){
+      dispatch = wait(dispatch, storeCommit[(int) (stores % storeCommit.length)] + 1,
+                      Stall.STORE_QUEUE_FULL);
+    }
+    dispatchedInCycle = dispatch == dispatchCycle ? dispatchedInCycle + 1 : 1;
+    dispatchCycle = dispatch;
+
+    // Execute: once the operands are ready and a unit is free
+    long ready = Math.max(registerReady[source1], registerReady[source2]);
+    if(opcodeClass == Simulator.OpcodeClass.LOAD){
+      ready = Math.max(ready, pendingStore(memoryAddress >>> 2));
+    }
+    long start = wait(dispatch + 1, ready, Stall.DATA_DEPENDENCY);
+    while(bookings(start, unit) == config.functionalUnits()){
+      start = wait(start, start + 1, Stall.FUNCTIONAL_UNIT_BUSY);
+    }
+    booked[(int) (start&(bookedCycle.length - 1))][unit.ordinal()]++;
+    stations.add(start);
+
+    long complete = start + latencies[opcodeClass.ordinal()];
+    if(destination != 0){
+      registerReady[destination] = complete;
+    }
+    if(opcodeClass == Simulator.OpcodeClass.BRANCH){
+      boolean taken = nextProgramCounter != programCounter + 4;
+      boolean predictedTaken = (short) word < 0; // Backward taken, forward not taken
+      if(taken != predictedTaken){
+        mispredictions++;
+        fetchCycle = complete + config.mispredictPenalty();
+      }
+    }
+
+    // Commit: in order, limited by the issue width
+    long commit = Math.max(complete, commitCycle);
+    if(commit == commitCycle && committedInCycle == config.issueWidth()){
+      commit++;
+    }
+    committedInCycle = commit == commitCycle ? committedInCycle + 1 : 1;
+    commitCycle = commit;
+    reorderBuffer[(int) (instructions % reorderBuffer.length)] = commit;
+    instructions++;
+    if(opcodeClass == Simulator.OpcodeClass.STORE){
+      int entry = (int) (stores++ % storeWord.length);
+      storeWord[entry] = memoryAddress >>> 2;
+      storeComplete[entry] = complete;
+      storeCommit[entry] = commit;
+    }
+  }
+
+  /**
+   * Finds the youngest store in the store queue to a word. Accesses are aligned, so every byte of
+   * an access lies in the same word.
+   *
+   * @param word The address of the word divided by 4.
+   *
+   * @return The completion cycle of the store, or 0 if there is none.
+   */
+  private long pendingStore(int word) {
+    for(long store = stores - 1; store >= 0 && store >= stores - storeWord.length; store--){
+      int entry = (int) (store % storeWord.length);
+      if(storeWord[entry] == word){
+        return storeComplete[entry];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Delays an event until the given cycle, attributing the delay to a stall reason.
+   *
+   * @return The later of both cycles.
+   */
+  private long wait(long cycle, long until, Stall reason) {
+    if(until > cycle){
+      stallCycles[reason.ordinal()] += until - cycle;
+      return until;
+    }
+    return cycle;
+  }
+
+  /**
+   * Retrieves the number of units of a kind booked in a cycle, clearing stale ring entries.
+   */
+  private int bookings(long cycle, Unit unit) {
+    int slot = (int) (cycle&(bookedCycle.length - 1));
+    if(bookedCycle[slot] != cycle){
+      bookedCycle[slot] = cycle;
+      Arrays.fill(booked[slot], 0);
+    }
+    return booked[slot][unit.ordinal()];
+  }
+
+  /**
+   * Retrieves the number of instructions accounted for.
+   *
+   * @return The committed instruction count.
+   */
+  public long getInstructions() {
+    return instructions;
+  }
+
+  /**
+   * Retrieves the number of cycles until the last instruction committed.
+   *
+   * @return The cycle count.
+   */
+  public long getCycles() {
+    return commitCycle + 1;
+  }
+
+  /**
+   * Computes the committed instructions per cycle.
+   *
+   * @return The IPC, or 0 if nothing was committed.
+   */
+  public double getInstructionsPerCycle() {
+    return instructions == 0 ? 0 : (double) instructions / getCycles();
+  }
+
+  /**
+   * Retrieves the number of mispredicted branches.
+   *
+   * @return The misprediction count.
+   */
+  public long getMispredictions() {
+    return mispredictions;
+  }
+
+  /**
+   * Retrieves the cycles instructions waited for the given reason, summed over all instructions.
+   *
+   * @param reason The stall reason.
+   *
+   * @return The stall cycles.
+   */
+  public long getStallCycles(Stall reason) {
+    return stallCycles[reason.ordinal()];
+  }
+
+  /**
+   * Writes a summary of the configuration, IPC and stall breakdown.
+   *
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeReport(Appendable out) throws IOException {
+    out.append(String.format("Core: %d-wide, %d-entry ROB, %d-entry store queue, %d stations and "
+                             + "%d units per kind, %d-cycle mispredict penalty%n",
+                             config.issueWidth(), config.reorderBufferSize(),
+                             config.storeQueueSize(), config.reservationStations(),
+                             config.functionalUnits(), config.mispredictPenalty()));
+    out.append(String.format("Instructions: %d%nCycles: %d%nIPC: %.3f%nMispredictions: %d%n",
+                             instructions, getCycles(), getInstructionsPerCycle(),
+                             mispredictions));
+    long structural = getStallCycles(Stall.REORDER_BUFFER_FULL)
+                      + getStallCycles(Stall.RESERVATION_STATIONS_FULL)
+                      + getStallCycles(Stall.STORE_QUEUE_FULL)
+                      + getStallCycles(Stall.FUNCTIONAL_UNIT_BUSY);
+    out.append(String.format("Stall cycles: structural %d, data %d, control %d%n", structural,
+                             getStallCycles(Stall.DATA_DEPENDENCY), getStallCycles(Stall.CONTROL)));
+    for(Stall reason : Stall.values()){
+      out.append(String.format("  %-26s %d%n", reason, getStallCycles(reason)));
+    }
+  }
+}
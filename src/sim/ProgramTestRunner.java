@@ -0,0 +1,278 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Data-driven test runner for assembly programs that carry their expected outcome in comments, so
+ * that a corpus of thousands of programs needs no Java code per program. Recognized directives:
+ * <ul>
+ *   <li>{@code # expect $t0 = 20} - final value of a register, decimal or {@code 0x} hex</li>
+ *   <li>{@code # expect mem[0xFFFFFFFF] = 136} - final value of a data memory word</li>
+ *   <li>{@code # expect fault} - the program must raise an exception instead of finishing</li>
+ *   <li>{@code # max-steps 1000} - fail unless the program finishes within this many steps</li>
+ *   <li>{@code # data-memory 4096} - data memory size in bytes, if the default is too small</li>
+ * </ul>
+ * These are the comments {@link WorkloadGenerator} emits. A program without expectations passes
+ * if it finishes. Programs are run on a pool of worker threads under a {@link Watchdog}, which
+ * enforces the step limit and an optional time limit and stops programs stuck in an endless loop
+ * early, and each result carries the step count and time of its program.
+ */
+public class ProgramTestRunner {
+  private static final int DEFAULT_DATA_MEMORY = 128;
+  private static final int WATCHDOG_CHECK_INTERVAL = 10_000;
+  private static final Pattern DIRECTIVE =
+          Pattern.compile("#\\s*(expect|max-steps|data-memory)\\b\\s*(.*)");
+  private static final Pattern REGISTER_EXPECTATION = Pattern.compile("(\\$\\w+)\\s*=\\s*(\\S+)");
+  private static final Pattern MEMORY_EXPECTATION =
+          Pattern.compile("mem\\[\\s*(\\S+?)\\s*]\\s*=\\s*(\\S+)");
+
+  /**
+   * The outcome of one program.
+   *
+   * @param name The program name.
+   * @param failures Why the program failed, empty if it passed.
+   * @param steps The number of steps executed.
+   * @param nanos The wall-clock time of assembling and running the program.
+   */
+  public record Result(String name, List<String> failures, long steps, long nanos) {
+    public boolean passed() {
+      return failures.isEmpty();
+    }
+  }
+
+  private final long defaultMaxSteps;
+  private final long maxMillis;
+
+  /**
+   * Creates a runner without a time limit.
+   *
+   * @param defaultMaxSteps The step limit of programs without a {@code max-steps} directive.
+   */
+  public ProgramTestRunner(long defaultMaxSteps) {
+    this(defaultMaxSteps, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a runner.
+   *
+   * @param defaultMaxSteps The step limit of programs without a {@code max-steps} directive.
+   * @param maxMillis The wall-clock time limit of each program's run in milliseconds.
+   */
+  public ProgramTestRunner(long defaultMaxSteps, long maxMillis) {
+    this.defaultMaxSteps = defaultMaxSteps;
+    this.maxMillis = maxMillis;
+  }
+
+  /**
+   * Runs one program and checks its expectations.
+   *
+   * @param name The program name used in the result.
+   * @param source The assembly source with its directives.
+   *
+   * @return The result.
+   */
+  public Result run(String name, String source) {
+    long start = System.nanoTime();
+    List<String> failures = new ArrayList<>();
+    Map<Integer, Long> registers = new LinkedHashMap<>();
+    Map<Integer, Long> memory = new LinkedHashMap<>();
+    boolean expectFault = false;
+    long maxSteps = defaultMaxSteps;
+    int dataMemory = DEFAULT_DATA_MEMORY;
+
+    String[] lines = source.split("\n");
+    for(int i = 0; i < lines.length; i++){
+      int comment = lines[i].indexOf('#');
+      if(comment < 0) continue;
+      Matcher directive = DIRECTIVE.matcher(lines[i].substring(comment));
+      if(!directive.matches()) continue;
+      String argument = directive.group(2).trim();
+      try{
+        switch(directive.group(1)){
+          case "max-steps" -> maxSteps = Long.parseLong(argument);
+          case "data-memory" -> dataMemory = Integer.parseInt(argument);
+          default -> {
+            Matcher register = REGISTER_EXPECTATION.matcher(argument);
+            Matcher word = MEMORY_EXPECTATION.matcher(argument);
+            if(argument.equals("fault")){
+              expectFault = true;
+            } else if(register.matches() && RegisterFile.registerNumber(register.group(1)) >= 0){
+              registers.put(RegisterFile.registerNumber(register.group(1)),
+                            Long.decode(register.group(2)));
+            } else if(word.matches()){
+              int address = (int) (long) Long.decode(word.group(1));
+              memory.put(address, Long.decode(word.group(2)));
+              dataMemory = Math.max(dataMemory, (0xFFFFFFFF - address) / 4 * 4 + 4);
+            } else {
+              failures.add("line " + (i + 1) + ": malformed expectation: " + argument);
+            }
+          }
+        }
+      } catch(NumberFormatException e){
+        failures.add("line " + (i + 1) + ": malformed number: " + argument);
+      }
+    }
+    if(!failures.isEmpty()){
+      return new Result(name, failures, 0, System.nanoTime() - start);
+    }
+
+    Simulator simulator;
+    try{
+      Assembler assembler = new Assembler();
+      List<String> binary = assembler.assemble(source);
+      simulator = Simulator.forProgram(binary, assembler.getLabels(), dataMemory);
+    } catch(Assembler.AssemblerException | IllegalArgumentException e){
+      return new Result(name, List.of("setup failed: " + e.getMessage()), 0,
+                        System.nanoTime() - start);
+    }
+
+    RuntimeException fault = null;
+    String runaway = null;
+    try{
+      new Watchdog(maxSteps, maxMillis, WATCHDOG_CHECK_INTERVAL).run(simulator);
+    } catch(Watchdog.WatchdogException e){
+      runaway = e.getReason() == Watchdog.Reason.STEP_BUDGET ?
+                "did not finish within " + maxSteps + " steps" :
+                "did not finish: " + e.getMessage();
+    } catch(RuntimeException e){
+      fault = e;
+    }
+    long steps = simulator.getInstructionsExecuted();
+
+    if(runaway != null){
+      failures.add(runaway);
+    } else if(fault != null && !expectFault){
+      failures.add("fault at step " + steps + ": " + fault);
+    } else if(fault == null && expectFault){
+      failures.add("expected a fault");
+    }
+    int[] registerValues = simulator.getRegisterValues();
+    registers.forEach((register, expected)->{
+      if(registerValues[register] != expected.intValue()){
+        failures.add(String.format("%s: expected %d, was %d", RegisterFile.registerName(register),
+                                   expected.intValue(), registerValues[register]));
+      }
+    });
+    memory.forEach((address, expected)->{
+      try{
+        int actual = simulator.loadWord(address);
+        if(actual != expected.intValue()){
+          failures.add(String.format("mem[0x%08X]: expected %d, was %d", address,
+                                     expected.intValue(), actual));
+        }
+      } catch(RuntimeException e){
+        failures.add(String.format("mem[0x%08X]: %s", address, e.getMessage()));
+      }
+    });
+    return new Result(name, failures, steps, System.nanoTime() - start);
+  }
+
+  /**
+   * Runs all given programs, spreading them over a pool of worker threads.
+   *
+   * @param programs The assembly files to run.
+   * @param threads The number of worker threads.
+   *
+   * @return The results, in program order.
+   *
+   * @throws InterruptedException If interrupted while waiting for the workers.
+   */
+  public List<Result> runAll(List<Path> programs, int threads) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try{
+      List<Callable<Result>> tasks = new ArrayList<>();
+      for(Path program : programs){
+        tasks.add(()->{
+          try{
+            return run(program.toString(), Files.readString(program));
+          } catch(IOException e){
+            return new Result(program.toString(), List.of("cannot read: " + e.getMessage()), 0,
+                              0);
+          }
+        });
+      }
+
+      List<Result> results = new ArrayList<>();
+      for(Future<Result> future : executor.invokeAll(tasks)){
+        results.add(future.get());
+      }
+      return results;
+    } catch(ExecutionException e){
+      throw new IllegalStateException("Test worker failed", e.getCause());
+    } finally{
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Command-line entry point. Usage: {@code ProgramTestRunner file-or-directory...
+   * [--threads N] [--steps N] [--timeout MILLIS]}. Directories are searched recursively for
+   * {@code .asm} files. Prints one line per program with its step count and time, the failures,
+   * and a summary; exits with status 1 if any program failed.
+   *
+   * @param args The command-line arguments.
+   *
+   * @throws Exception If a directory cannot be listed or the run is interrupted.
+   */
+  public static void main(String[] args) throws Exception {
+    List<Path> programs = new ArrayList<>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    long steps = 10_000_000, timeout = Long.MAX_VALUE;
+    for(int i = 0; i < args.length; i++){
+      switch(args[i]){
+        case "--threads" -> threads = Integer.parseInt(args[++i]);
+        case "--steps" -> steps = Long.parseLong(args[++i]);
+        case "--timeout" -> timeout = Long.parseLong(args[++i]);
+        default -> {
+          Path path = Path.of(args[i]);
+          if(Files.isDirectory(path)){
+            try(Stream<Path> files = Files.walk(path)){
+              files.filter(file->file.toString().endsWith(".asm")).sorted().forEach(programs::add);
+            }
+          } else {
+            programs.add(path);
+          }
+        }
+      }
+    }
+    if(programs.isEmpty()){
+      System.err.println("Usage: ProgramTestRunner file-or-directory... [--threads N] [--steps N] "
+                         + "[--timeout MILLIS]");
+      System.exit(2);
+    }
+
+    long start = System.nanoTime();
+    List<Result> results = new ProgramTestRunner(steps, timeout).runAll(programs, threads);
+    long wall = System.nanoTime() - start;
+    int failed = 0;
+    long totalSteps = 0;
+    for(Result result : results){
+      totalSteps += result.steps();
+      System.out.printf("%s %s (%d steps, %.1f ms)%n", result.passed() ? "PASS" : "FAIL",
+                        result.name(), result.steps(), result.nanos() / 1e6);
+      for(String failure : result.failures()){
+        System.out.println("    " + failure);
+      }
+      if(!result.passed()) failed++;
+    }
+    System.out.printf("%d programs, %d passed, %d failed, %d steps in %d ms on %d threads%n",
+                      results.size(), results.size() - failed, failed, totalSteps,
+                      TimeUnit.NANOSECONDS.toMillis(wall), threads);
+    System.exit(failed == 0 ? 0 : 1);
+  }
+}
@@ -19,6 +19,35 @@ public class RegisterFile {
     this.registers = new int[32];
   }
 
+  /**
+   * Looks up a register number by name.
+   *
+   * @param name The register name, e.g. {@code $t0}.
+   *
+   * @return The register number (0-31), or -1 if the name is unknown.
+   */
+  public static int registerNumber(String name) {
+    for(int i = 0; i < registerNames.length; i++){
+      if(registerNames[i].equals(name)){
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Looks up the name of a register.
+   *
+   * @param registerNumber The register number (0-31).
+   *
+   * @return The register name, e.g. {@code $t0}.
+   *
+   * @throws IndexOutOfBoundsException If the register number is out of range.
+   */
+  public static String registerName(int registerNumber) {
+    return registerNames[registerNumber];
+  }
+
   /**
    * Reads the value of a specific register.
    *
@@ -55,6 +84,25 @@ public class RegisterFile {
     registers[registerNumber] = value;
   }
 
+  /**
+   * Exposes the backing array for the simulator's decoded run loop. Callers must not write
+   * register 0; writes to it have to go through {@link #write(int, int)} so that they fail.
+   *
+   * @return The live register array.
+   */
+  int[] array() {
+    return registers;
+  }
+
+  /**
+   * Retrieves a copy of the raw register values, indexed by register number.
+   *
+   * @return A new array holding the 32 register values.
+   */
+  public int[] getRegisterValues() {
+    return registers.clone();
+  }
+
   /**
    * Retrieves the current state of all registers.
    *
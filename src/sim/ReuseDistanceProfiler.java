@@ -0,0 +1,283 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes cache miss ratios for a whole sweep of cache configurations from one execution. As an
+ * {@link ExecutionListener}, the profiler sees the address of every load and store and records
+ * LRU stack distances: the number of distinct blocks touched since the previous access to the same
+ * block. An LRU cache of {@code n} blocks hits exactly the accesses with a distance below
+ * {@code n}, so one distance histogram yields the miss ratio of every size.
+ * <p>
+ * Fully associative distances are exact and unbounded, computed with a Fenwick tree over access
+ * times in {@code O(log n)} per access. Set-associative configurations keep one bounded LRU stack
+ * per set for every set count in the sweep, since blocks then only compete within their set.
+ * Compulsory misses are reported as an infinite distance.
+ */
+public class ReuseDistanceProfiler implements ExecutionListener {
+  /**
+   * One cache configuration of the sweep.
+   *
+   * @param size The cache size in bytes.
+   * @param associativity The number of ways, or 0 for fully associative.
+   * @param sets The number of sets.
+   */
+  public record CacheConfig(int size, int associativity, int sets) {}
+
+  private final int blockShift;
+  private final List<CacheConfig> configs = new ArrayList<>();
+  private long accesses;
+
+  // Fully associative: time of the last access per block, marked in a Fenwick tree over time
+  private final Map<Long, Integer> lastAccess = new HashMap<>();
+  private int[] tree = new int[1025];
+  private int time;
+  private long[] distances = new long[64];
+  private long coldMisses;
+
+  // Set-associative: bounded LRU stacks and per-way hit counts for every set count of the sweep
+  private final int maxWays;
+  private final Map<Integer, long[][]> stacks = new HashMap<>();
+  private final Map<Integer, int[]> stackDepths = new HashMap<>();
+  private final Map<Integer, long[]> wayHits = new HashMap<>();
+
+  /**
+   * Creates a profiler for a sweep of cache sizes and associativities. Combinations that do not
+   * give a whole power-of-two number of sets are left out of the sweep.
+   *
+   * @param blockSize The block size in bytes, a power of two.
+   * @param sizes The cache sizes in bytes.
+   * @param associativities The numbers of ways, 0 for fully associative.
+   */
+  public ReuseDistanceProfiler(int blockSize, int[] sizes, int[] associativities) {
+    if(blockSize <= 0 || Integer.bitCount(blockSize) != 1){
+      throw new IllegalArgumentException("Block size must be a power of two: " + blockSize);
+    }
+    this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+
+    int ways = 1;
+    for(int size : sizes){
+      for(int associativity : associativities){
+        if(size <= 0 || associativity < 0 || size % blockSize != 0) continue;
+        int blocks = size / blockSize;
+        if(associativity == 0){
+          configs.add(new CacheConfig(size, 0, 1));
+        } else if(blocks % associativity == 0
+                  && Integer.bitCount(blocks / associativity) == 1){
+          configs.add(new CacheConfig(size, associativity, blocks / associativity));
+          ways = Math.max(ways, associativity);
+        }
+      }
+    }
+    if(configs.isEmpty()){
+      throw new IllegalArgumentException("No valid cache configuration in the sweep");
+    }
+
+    this.maxWays = ways;
+    for(CacheConfig config : configs){
+      if(config.associativity() != 0 && !stacks.containsKey(config.sets())){
+        stacks.put(config.sets(), new long[config.sets()][maxWays]);
+        stackDepths.put(config.sets(), new int[config.sets()]);
+        wayHits.put(config.sets(), new long[maxWays]);
+      }
+    }
+  }
+
+  @Override
+  public void memoryLoaded(int address, int width, int value) {
+    access(address);
+  }
+
+  @Override
+  public void memoryStored(int address, int width, int value) {
+    access(address);
+  }
+
+  /**
+   * Records a data memory access.
+   *
+   * @param address The byte address accessed.
+   */
+  void access(int address) {
+    long block = Integer.toUnsignedLong(address) >>> blockShift;
+    accesses++;
+    recordDistance(block);
+    for(Map.Entry<Integer, long[][]> entry : stacks.entrySet()){
+      int sets = entry.getKey();
+      int set = (int) (block&(sets - 1));
+      touch(entry.getValue()[set], stackDepths.get(sets), set, block, wayHits.get(sets));
+    }
+  }
+
+  /**
+   * Records the fully associative stack distance of an access.
+   */
+  private void recordDistance(long block) {
+    if(time + 1 >= tree.length){
+      compact();
+    }
+    Integer previous = lastAccess.put(block, time);
+    if(previous == null){
+      coldMisses++;
+    } else {
+      int distance = prefix(time - 1) - prefix(previous);
+      if(distance >= distances.length){
+        distances = Arrays.copyOf(distances, Math.max(distances.length * 2, distance + 1));
+      }
+      distances[distance]++;
+      add(previous, -1);
+    }
+    add(time, 1);
+    time++;
+  }
+
+  /**
+   * Moves a block to the top of the LRU stack of its set, counting a hit at its previous depth.
+   */
+  private void touch(long[] stack, int[] depths, int set, long block, long[] hits) {
+    int depth = depths[set];
+    int position = 0;
+    while(position < depth && stack[position] != block){
+      position++;
+    }
+    if(position < depth){
+      hits[position]++;
+    } else if(depth < stack.length){
+      depths[set] = ++depth;
+    } else {
+      position = depth - 1; // Evict the least recently used block
+    }
+    System.arraycopy(stack, 0, stack, 1, Math.min(position, stack.length - 1));
+    stack[0] = block;
+  }
+
+  /**
+   * Renumbers the live access times from 0, growing the tree if most of it is live, so memory
+   * stays proportional to the number of distinct blocks however long the program runs.
+   */
+  private void compact() {
+    TreeMap<Integer, Long> byTime = new TreeMap<>();
+    for(Map.Entry<Long, Integer> entry : lastAccess.entrySet()){
+      byTime.put(entry.getValue(), entry.getKey());
+    }
+    int capacity = tree.length - 1;
+    if(byTime.size() * 2 > capacity){
+      capacity *= 2;
+    }
+    tree = new int[capacity + 1];
+    time = 0;
+    for(long block : byTime.values()){
+      lastAccess.put(block, time);
+      add(time++, 1);
+    }
+  }
+
+  private void add(int index, int delta) {
+    for(int i = index + 1; i < tree.length; i += i&-i){
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Sums the marks at times 0 to {@code index}, inclusive.
+   */
+  private int prefix(int index) {
+    int sum = 0;
+    for(int i = index + 1; i > 0; i -= i&-i){
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Retrieves the number of accesses recorded.
+   *
+   * @return The access count.
+   */
+  public long getAccesses() {
+    return accesses;
+  }
+
+  /**
+   * Retrieves the configurations of the sweep.
+   *
+   * @return The cache configurations in sweep order.
+   */
+  public List<CacheConfig> getConfigs() {
+    return List.copyOf(configs);
+  }
+
+  /**
+   * Computes the number of misses of an LRU cache.
+   *
+   * @param config A configuration of the sweep.
+   *
+   * @return The miss count.
+   */
+  public long getMisses(CacheConfig config) {
+    long hits = 0;
+    if(config.associativity() == 0){
+      int blocks = config.size() >>> blockShift;
+      for(int distance = 0; distance < Math.min(blocks, distances.length); distance++){
+        hits += distances[distance];
+      }
+    } else {
+      long[] hitsAtDepth = wayHits.get(config.sets());
+      for(int way = 0; way < config.associativity(); way++){
+        hits += hitsAtDepth[way];
+      }
+    }
+    return accesses - hits;
+  }
+
+  /**
+   * Writes the miss ratio of every configuration as CSV with the header
+   * {@code size,associativity,sets,accesses,misses,miss_ratio}.
+   *
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeMissRatioCurve(Appendable out) throws IOException {
+    out.append("size,associativity,sets,accesses,misses,miss_ratio\n");
+    for(CacheConfig config : configs){
+      long misses = getMisses(config);
+      out.append(String.format("%d,%s,%d,%d,%d,%.6f%n", config.size(),
+                               config.associativity() == 0 ? "full"
+                                                           : String.valueOf(config.associativity()),
+                               config.sets(), accesses, misses,
+                               accesses == 0 ? 0.0 : (double) misses / accesses));
+    }
+  }
+
+  /**
+   * Writes the fully associative reuse-distance histogram as CSV with the header
+   * {@code distance,count}, in power-of-two buckets such as {@code 4-7}. Compulsory misses are
+   * listed last with the distance {@code inf}.
+   *
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void writeHistogram(Appendable out) throws IOException {
+    out.append("distance,count\n");
+    for(int low = 0; low < distances.length; low = low == 0 ? 1 : low * 2){
+      int high = low == 0 ? 0 : Math.min(low * 2, distances.length) - 1;
+      long count = 0;
+      for(int distance = low; distance <= high; distance++){
+        count += distances[distance];
+      }
+      if(count > 0){
+        out.append(low == high ? String.valueOf(low) : low + "-" + (low * 2 - 1))
+           .append(',').append(String.valueOf(count)).append('\n');
+      }
+    }
+    out.append("inf,").append(String.valueOf(coldMisses)).append('\n');
+  }
+}
@@ -0,0 +1,550 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * SimPoint-style sampled simulation, for estimating the timing and cache behaviour of programs too
+ * long to run through the detailed models from start to end.
+ * <p>
+ * The program is split into intervals of a fixed instruction count. The plain functional simulator
+ * fast-forwards through the whole program and checkpoints the architectural state at the start of
+ * a few chosen intervals, less a warm-up. Each checkpoint is then restored into its own simulator
+ * with an {@link OutOfOrderTimingModel} and optionally a {@link ReuseDistanceProfiler} attached,
+ * on a pool of worker threads. The warm-up fills the models' pipeline and cache state and is not
+ * counted; the interval itself is measured. Whole-program statistics are extrapolated from the
+ * per-instruction rates of the samples, each weighted by the share of the program it represents.
+ * <p>
+ * Intervals are chosen either periodically, every n-th interval standing for itself and the
+ * following n-1, or by clustering basic block vectors: a profiling pass counts how often each
+ * instruction runs per interval, the counts are randomly projected to a few dimensions and grouped
+ * with k-means, and the interval closest to each cluster centre stands for the whole cluster.
+ * Periodic sampling keeps the fast path throughout and fast-forwards only once, since the sampled
+ * intervals are known in advance and are checkpointed while counting the intervals; clustering
+ * needs one pass that observes every instruction and a second one to checkpoint, but finds the
+ * phases of a program with far fewer samples.
+ */
+public class SampledSimulation {
+  private static final int PROJECTED_DIMENSIONS = 15;
+  private static final int KMEANS_ITERATIONS = 100;
+
+  /**
+   * How to sample a program.
+   *
+   * @param intervalLength The instructions per interval.
+   * @param warmupLength The instructions run through the detailed models before each sampled
+   * interval without being measured.
+   * @param period For periodic sampling, simulate every n-th interval in detail.
+   * @param clusters For clustered sampling, the number of clusters and so of detailed intervals,
+   * or 0 to sample periodically.
+   * @param threads The number of worker threads for the detailed intervals.
+   * @param seed The seed of the random projection and the clustering.
+   */
+  public record Config(long intervalLength, long warmupLength, int period, int clusters,
+                       int threads, long seed) {
+    public Config {
+      if(intervalLength <= 0 || warmupLength < 0 || period <= 0 || clusters < 0 || threads <= 0){
+        throw new IllegalArgumentException("Invalid sampling configuration");
+      }
+    }
+  }
+
+  /**
+   * The architectural state at an instruction count.
+   *
+   * @param instructions The instructions executed before the checkpoint.
+   * @param programCounter The program counter.
+   * @param registers The register values.
+   * @param memory The data memory words, in the order of {@link Simulator#getDataMemoryValues()}.
+   */
+  public record Checkpoint(long instructions, int programCounter, int[] registers, int[] memory) {}
+
+  /**
+   * One interval simulated in detail.
+   *
+   * @param interval The interval number, 0 for the first.
+   * @param weight The share of all instructions this interval stands for.
+   * @param instructions The instructions measured.
+   * @param cycles The cycles the timing model needed for them.
+   * @param mispredictions The mispredicted branches among them.
+   * @param memoryAccesses The loads and stores among them, 0 without a cache profiler.
+   * @param misses The cache misses of every profiled configuration, in sweep order.
+   */
+  public record Sample(int interval, double weight, long instructions, long cycles,
+                       long mispredictions, long memoryAccesses, long[] misses) {}
+
+  /**
+   * The outcome of a sampled simulation.
+   *
+   * @param instructions The instructions of the whole program.
+   * @param intervals The number of intervals.
+   * @param samples The intervals simulated in detail.
+   * @param cycles The estimated cycles of the whole program.
+   * @param mispredictions The estimated mispredicted branches of the whole program.
+   * @param memoryAccesses The estimated loads and stores of the whole program.
+   * @param cacheConfigs The profiled cache configurations, empty without a cache profiler.
+   * @param misses The estimated cache misses of every profiled configuration.
+   * @param functionalNanos The time spent fast-forwarding and profiling.
+   * @param detailedNanos The wall-clock time of the detailed intervals.
+   */
+  public record Result(long instructions, int intervals, List<Sample> samples, long cycles,
+                       long mispredictions, long memoryAccesses,
+                       List<ReuseDistanceProfiler.CacheConfig> cacheConfigs, long[] misses,
+                       long functionalNanos, long detailedNanos) {
+    /**
+     * Computes the estimated instructions per cycle.
+     *
+     * @return The IPC, or 0 for an empty program.
+     */
+    public double instructionsPerCycle() {
+      return cycles == 0 ? 0 : (double) instructions / cycles;
+    }
+  }
+
+  private final List<String> binary;
+  private final Map<String, Integer> labels;
+  private final int dataMemorySize;
+  private final OutOfOrderTimingModel.Config core;
+  private final Supplier<ReuseDistanceProfiler> caches;
+
+  /**
+   * Creates a sampled simulation of a program.
+   *
+   * @param binary The binary instructions of the program.
+   * @param labels The symbol table of the program.
+   * @param dataMemorySize The data memory size in bytes.
+   * @param core The core the timing model simulates.
+   * @param caches Creates the cache profiler of each detailed interval, or null for none.
+   */
+  public SampledSimulation(List<String> binary, Map<String, Integer> labels, int dataMemorySize,
+                           OutOfOrderTimingModel.Config core,
+                           Supplier<ReuseDistanceProfiler> caches) {
+    this.binary = List.copyOf(binary);
+    this.labels = labels;
+    this.dataMemorySize = dataMemorySize;
+    this.core = core;
+    this.caches = caches;
+  }
+
+  /**
+   * Creates a simulator with the program loaded and nothing executed.
+   *
+   * @return The simulator.
+   */
+  public Simulator newSimulator() {
+    return Simulator.forProgram(binary, labels, dataMemorySize);
+  }
+
+  /**
+   * Samples the program and extrapolates its statistics.
+   *
+   * @param config How to sample.
+   * @param maxInstructions The instruction budget of the program.
+   *
+   * @return The estimate.
+   *
+   * @throws InterruptedException If interrupted while waiting for the workers.
+   */
+  public Result run(Config config, long maxInstructions) throws InterruptedException {
+    long start = System.nanoTime();
+    long[] intervalInstructions;
+    int[] chosen;
+    double[] weights;
+    Checkpoint[] checkpoints;
+    if(config.clusters() > 0){
+      List<double[]> vectors = new ArrayList<>();
+      intervalInstructions = profile(config, maxInstructions, vectors);
+      int[] assignment = cluster(vectors, Math.min(config.clusters(), vectors.size()),
+                                 config.seed());
+      chosen = representatives(vectors, assignment);
+      weights = new double[chosen.length];
+      for(int i = 0; i < assignment.length; i++){
+        weights[assignment[i]] += intervalInstructions[i];
+      }
+      checkpoints = checkpoint(config, chosen, maxInstructions);
+    } else {
+      List<Checkpoint> periodic = new ArrayList<>();
+      intervalInstructions = count(config, maxInstructions, periodic);
+      int intervals = intervalInstructions.length;
+      chosen = new int[(intervals + config.period() - 1) / config.period()];
+      weights = new double[chosen.length];
+      for(int i = 0; i < intervals; i++){
+        chosen[i / config.period()] = i / config.period() * config.period();
+        weights[i / config.period()] += intervalInstructions[i];
+      }
+      checkpoints = periodic.subList(0, chosen.length).toArray(Checkpoint[]::new);
+    }
+    long total = Arrays.stream(intervalInstructions).sum();
+    for(int i = 0; i < weights.length; i++){
+      weights[i] = total == 0 ? 0 : weights[i] / total;
+    }
+    long functional = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    List<Sample> samples = detail(config, chosen, weights, checkpoints, maxInstructions);
+    long detailed = System.nanoTime() - start;
+
+    List<ReuseDistanceProfiler.CacheConfig> cacheConfigs =
+            caches == null ? List.of() : caches.get().getConfigs();
+    double cycles = 0, mispredictions = 0, accesses = 0;
+    double[] misses = new double[cacheConfigs.size()];
+    for(Sample sample : samples){
+      if(sample.instructions() == 0) continue;
+      double scale = sample.weight() * total / sample.instructions();
+      cycles += scale * sample.cycles();
+      mispredictions += scale * sample.mispredictions();
+      accesses += scale * sample.memoryAccesses();
+      for(int c = 0; c < misses.length; c++){
+        misses[c] += scale * sample.misses()[c];
+      }
+    }
+    long[] estimatedMisses = new long[misses.length];
+    for(int c = 0; c < misses.length; c++){
+      estimatedMisses[c] = Math.round(misses[c]);
+    }
+    return new Result(total, intervalInstructions.length, samples, Math.round(cycles),
+                      Math.round(mispredictions), Math.round(accesses), cacheConfigs,
+                      estimatedMisses, functional, detailed);
+  }
+
+  /**
+   * Fast-forwards through the program, counting the instructions of each interval. On the way,
+   * checkpoints the warm-up start of every period-th interval, the intervals periodic sampling
+   * simulates in detail. The last checkpoint may belong to an interval the program does not reach.
+   */
+  private long[] count(Config config, long maxInstructions, List<Checkpoint> checkpoints) {
+    Simulator simulator = newSimulator();
+    List<Long> intervals = new ArrayList<>();
+    long next = 0; // The next interval to checkpoint
+    while(!finished(simulator, maxInstructions)){
+      long before = simulator.getInstructionsExecuted();
+      long end = Math.min(maxInstructions, before + config.intervalLength());
+      long at;
+      while((at = Math.max(0, next * config.intervalLength() - config.warmupLength())) < end){
+        advance(simulator, at);
+        checkpoints.add(capture(simulator));
+        next += config.period();
+      }
+      advance(simulator, end);
+      if(simulator.getInstructionsExecuted() > before){
+        intervals.add(simulator.getInstructionsExecuted() - before);
+      }
+    }
+    return intervals.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /**
+   * Runs the program observing every instruction, and computes the projected basic block vector
+   * of each interval: the execution count of each instruction, normalized to the interval length
+   * and multiplied with a random matrix of {@value #PROJECTED_DIMENSIONS} columns.
+   */
+  private long[] profile(Config config, long maxInstructions, List<double[]> vectors) {
+    Simulator simulator = newSimulator();
+    int instructions = simulator.getInstructionMemorySize();
+    double[][] projection = new double[instructions][PROJECTED_DIMENSIONS];
+    Random random = new Random(config.seed());
+    for(double[] row : projection){
+      for(int d = 0; d < PROJECTED_DIMENSIONS; d++){
+        row[d] = random.nextDouble() * 2 - 1;
+      }
+    }
+    long[] counts = new long[instructions];
+    simulator.addExecutionListener(new ExecutionListener() {
+      @Override
+      public void instructionRetired(int address, int instruction, int nextAddress) {
+        counts[(address - 0x00400000) >> 2]++;
+      }
+    });
+
+    List<Long> intervals = new ArrayList<>();
+    while(!finished(simulator, maxInstructions)){
+      long before = simulator.getInstructionsExecuted();
+      advance(simulator, Math.min(maxInstructions, before + config.intervalLength()));
+      long length = simulator.getInstructionsExecuted() - before;
+      if(length == 0) continue;
+      double[] vector = new double[PROJECTED_DIMENSIONS];
+      for(int i = 0; i < instructions; i++){
+        if(counts[i] == 0) continue;
+        double share = (double) counts[i] / length;
+        for(int d = 0; d < PROJECTED_DIMENSIONS; d++){
+          vector[d] += share * projection[i][d];
+        }
+      }
+      Arrays.fill(counts, 0);
+      vectors.add(vector);
+      intervals.add(length);
+    }
+    return intervals.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /**
+   * Groups vectors with k-means, starting from centres picked by k-means++.
+   *
+   * @return The cluster of every vector.
+   */
+  private static int[] cluster(List<double[]> vectors, int k, long seed) {
+    int[] assignment = new int[vectors.size()];
+    if(k <= 1) return assignment;
+    Random random = new Random(seed);
+    double[][] centres = new double[k][];
+    centres[0] = vectors.get(random.nextInt(vectors.size())).clone();
+    double[] distances = new double[vectors.size()];
+    for(int c = 1; c < k; c++){
+      double sum = 0;
+      for(int i = 0; i < vectors.size(); i++){
+        distances[i] = Double.MAX_VALUE;
+        for(int j = 0; j < c; j++){
+          distances[i] = Math.min(distances[i], distance(vectors.get(i), centres[j]));
+        }
+        sum += distances[i];
+      }
+      int pick = 0;
+      double target = random.nextDouble() * sum;
+      while(pick < vectors.size() - 1 && (target -= distances[pick]) > 0){
+        pick++;
+      }
+      centres[c] = vectors.get(pick).clone();
+    }
+
+    for(int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++){
+      boolean changed = false;
+      for(int i = 0; i < vectors.size(); i++){
+        int best = 0;
+        for(int c = 1; c < k; c++){
+          if(distance(vectors.get(i), centres[c]) < distance(vectors.get(i), centres[best])){
+            best = c;
+          }
+        }
+        changed |= assignment[i] != best || iteration == 0;
+        assignment[i] = best;
+      }
+      if(!changed) break;
+      int[] sizes = new int[k];
+      double[][] sums = new double[k][PROJECTED_DIMENSIONS];
+      for(int i = 0; i < vectors.size(); i++){
+        sizes[assignment[i]]++;
+        for(int d = 0; d < PROJECTED_DIMENSIONS; d++){
+          sums[assignment[i]][d] += vectors.get(i)[d];
+        }
+      }
+      for(int c = 0; c < k; c++){
+        if(sizes[c] == 0) continue; // An empty cluster keeps its centre
+        for(int d = 0; d < PROJECTED_DIMENSIONS; d++){
+          centres[c][d] = sums[c][d] / sizes[c];
+        }
+      }
+    }
+    return assignment;
+  }
+
+  /**
+   * Picks the vector closest to the centre of each cluster. Clusters that ended up empty are
+   * dropped, so the result may be shorter than the number of clusters; assignments are renumbered
+   * to match.
+   *
+   * @return The representative vector index of every cluster.
+   */
+  private static int[] representatives(List<double[]> vectors, int[] assignment) {
+    int k = Arrays.stream(assignment).max().orElse(-1) + 1;
+    double[][] centres = new double[k][PROJECTED_DIMENSIONS];
+    int[] sizes = new int[k];
+    for(int i = 0; i < assignment.length; i++){
+      sizes[assignment[i]]++;
+      for(int d = 0; d < PROJECTED_DIMENSIONS; d++){
+        centres[assignment[i]][d] += vectors.get(i)[d];
+      }
+    }
+    int[] renumbered = new int[k];
+    int clusters = 0;
+    for(int c = 0; c < k; c++){
+      renumbered[c] = sizes[c] == 0 ? -1 : clusters++;
+      for(int d = 0; d < PROJECTED_DIMENSIONS && sizes[c] > 0; d++){
+        centres[c][d] /= sizes[c];
+      }
+    }
+    int[] chosen = new int[clusters];
+    double[] best = new double[clusters];
+    Arrays.fill(best, Double.MAX_VALUE);
+    for(int i = 0; i < assignment.length; i++){
+      int c = renumbered[assignment[i]];
+      double distance = distance(vectors.get(i), centres[assignment[i]]);
+      if(distance < best[c]){
+        best[c] = distance;
+        chosen[c] = i;
+      }
+      assignment[i] = c;
+    }
+    return chosen;
+  }
+
+  private static double distance(double[] a, double[] b) {
+    double sum = 0;
+    for(int d = 0; d < a.length; d++){
+      sum += (a[d] - b[d]) * (a[d] - b[d]);
+    }
+    return sum;
+  }
+
+  /**
+   * Fast-forwards through the program once more, checkpointing the warm-up start of every chosen
+   * interval. Only needed for clustered sampling, which chooses the intervals after profiling.
+   */
+  private Checkpoint[] checkpoint(Config config, int[] chosen, long maxInstructions) {
+    Integer[] order = new Integer[chosen.length];
+    for(int i = 0; i < order.length; i++){
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b)->Integer.compare(chosen[a], chosen[b]));
+
+    Simulator simulator = newSimulator();
+    Checkpoint[] checkpoints = new Checkpoint[chosen.length];
+    for(int i : order){
+      long at = Math.max(0, chosen[i] * config.intervalLength() - config.warmupLength());
+      advance(simulator, Math.min(at, maxInstructions));
+      checkpoints[i] = capture(simulator);
+    }
+    return checkpoints;
+  }
+
+  private static Checkpoint capture(Simulator simulator) {
+    return new Checkpoint(simulator.getInstructionsExecuted(), simulator.getProgramCounter(),
+                          simulator.getRegisterValues(), simulator.getDataMemoryValues());
+  }
+
+  /**
+   * Simulates the chosen intervals in detail on a pool of worker threads.
+   */
+  private List<Sample> detail(Config config, int[] chosen, double[] weights,
+                              Checkpoint[] checkpoints, long maxInstructions)
+          throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(config.threads());
+    try{
+      List<Callable<Sample>> tasks = new ArrayList<>();
+      for(int i = 0; i < chosen.length; i++){
+        int sample = i;
+        long start = chosen[i] * config.intervalLength();
+        long length = Math.min(config.intervalLength(), maxInstructions - start);
+        tasks.add(()->detail(chosen[sample], weights[sample], checkpoints[sample], start, length));
+      }
+      List<Sample> samples = new ArrayList<>();
+      for(Future<Sample> future : executor.invokeAll(tasks)){
+        samples.add(future.get());
+      }
+      return samples;
+    } catch(ExecutionException e){
+      throw new IllegalStateException("Detailed interval failed", e.getCause());
+    } finally{
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Restores a checkpoint, runs the warm-up up to the start of the interval and measures the
+   * interval.
+   */
+  private Sample detail(int interval, double weight, Checkpoint checkpoint, long start,
+                        long length) {
+    Simulator simulator = restore(checkpoint);
+    OutOfOrderTimingModel model = new OutOfOrderTimingModel(core);
+    simulator.addExecutionListener(model);
+    ReuseDistanceProfiler profiler = caches == null ? null : caches.get();
+    if(profiler != null){
+      simulator.addExecutionListener(profiler);
+    }
+
+    advance(simulator, start - checkpoint.instructions());
+    long instructions = model.getInstructions(), cycles = model.getCycles();
+    long mispredictions = model.getMispredictions();
+    long accesses = profiler == null ? 0 : profiler.getAccesses();
+    List<ReuseDistanceProfiler.CacheConfig> configs =
+            profiler == null ? List.of() : profiler.getConfigs();
+    long[] misses = new long[configs.size()];
+    for(int c = 0; c < misses.length; c++){
+      misses[c] = -profiler.getMisses(configs.get(c));
+    }
+
+    advance(simulator, start + length - checkpoint.instructions());
+    for(int c = 0; c < misses.length; c++){
+      misses[c] += profiler.getMisses(configs.get(c));
+    }
+    return new Sample(interval, weight, model.getInstructions() - instructions,
+                      model.getCycles() - cycles, model.getMispredictions() - mispredictions,
+                      profiler == null ? 0 : profiler.getAccesses() - accesses, misses);
+  }
+
+  /**
+   * Creates a simulator in the state of a checkpoint. Its instruction count starts at 0.
+   *
+   * @param checkpoint The checkpoint.
+   *
+   * @return The simulator.
+   */
+  public Simulator restore(Checkpoint checkpoint) {
+    Simulator simulator = newSimulator();
+    for(int register = 1; register < 32; register++){
+      simulator.writeRegister(register, checkpoint.registers()[register]);
+    }
+    int[] memory = checkpoint.memory();
+    for(int i = 0; i < memory.length; i++){
+      if(memory[i] != 0){
+        simulator.storeWord(0xFFFFFFFF - i * 4, memory[i]);
+      }
+    }
+    simulator.setProgramCounter(checkpoint.programCounter());
+    return simulator;
+  }
+
+  /**
+   * Runs a simulator until it has executed the given number of instructions in total, or the
+   * program ends.
+   */
+  private static void advance(Simulator simulator, long instructions) {
+    while(simulator.getInstructionsExecuted() < instructions && !simulator.isFinished()){
+      simulator.run(instructions - simulator.getInstructionsExecuted());
+    }
+  }
+
+  private static boolean finished(Simulator simulator, long maxInstructions) {
+    return simulator.isFinished() || simulator.getInstructionsExecuted() >= maxInstructions;
+  }
+
+  /**
+   * Writes the estimate, the samples and, for comparison, the time of the two phases.
+   *
+   * @param result The estimate.
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public static void writeReport(Result result, Appendable out) throws IOException {
+    out.append(String.format("Instructions: %d in %d intervals, %d simulated in detail%n",
+                             result.instructions(), result.intervals(), result.samples().size()));
+    out.append(String.format("Estimated cycles: %d%nEstimated IPC: %.3f%n"
+                             + "Estimated mispredictions: %d%n", result.cycles(),
+                             result.instructionsPerCycle(), result.mispredictions()));
+    for(int c = 0; c < result.cacheConfigs().size(); c++){
+      ReuseDistanceProfiler.CacheConfig cache = result.cacheConfigs().get(c);
+      out.append(String.format("Estimated misses, %d bytes %s: %d of %d%n", cache.size(),
+                               cache.associativity() == 0 ? "fully associative" :
+                               cache.associativity() + "-way", result.misses()[c],
+                               result.memoryAccesses()));
+    }
+    for(Sample sample : result.samples()){
+      out.append(String.format("  interval %d: weight %.3f, IPC %.3f%n", sample.interval(),
+                               sample.weight(), sample.cycles() == 0 ? 0 :
+                               (double) sample.instructions() / sample.cycles()));
+    }
+    out.append(String.format("Functional: %.1f ms, detailed: %.1f ms%n",
+                             result.functionalNanos() / 1e6, result.detailedNanos() / 1e6));
+  }
+}
@@ -0,0 +1,224 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Preemptive round-robin multitasking of independently assembled programs on one simulated core,
+ * for modelling OS-like workloads and for running many small programs in one simulator.
+ * <p>
+ * Each program is a task with its own {@link Simulator.Context}: address space, registers and
+ * exception PC. The timer interrupt is modelled, not simulated: the scheduler runs the core for
+ * at most {@code quantum} instructions, saves the PC at which the task stopped as its exception
+ * PC, and resumes the next ready task. Guest code never sees a trap, a handler or an exception
+ * PC register, so tasks need no interrupt code. Within a quantum the core runs at full speed on
+ * the decoded fast path. Time is counted in
+ * cycles, one per instruction plus {@code switchCost} cycles for every context switch, so the
+ * report shows what multitasking costs: switch overhead, and how long each task waited for the
+ * core before it finished.
+ * <p>
+ * A task ends when it runs off the end of its program or faults; a fault only ends that task.
+ */
+public class Scheduler {
+  /**
+   * The outcome of one task.
+   *
+   * @param name The task name.
+   * @param instructions The instructions the task executed.
+   * @param preemptions How often the timer interrupted the task.
+   * @param finishCycle The cycle at which the task ended, or -1 if it did not end.
+   * @param waitCycles The cycles between the start and the end of the run that the task spent
+   * waiting, including the switches to and from it.
+   * @param fault The fault that ended the task, or null.
+   * @param registers The final register values.
+   */
+  public record TaskResult(String name, long instructions, long preemptions, long finishCycle,
+                           long waitCycles, String fault, int[] registers) {
+    public boolean finished() {
+      return finishCycle >= 0;
+    }
+  }
+
+  /**
+   * The outcome of a run.
+   *
+   * @param tasks The tasks, in the order they were added.
+   * @param cycles The cycles of the whole run.
+   * @param instructions The instructions of all tasks.
+   * @param switches The number of context switches.
+   * @param switchCycles The cycles spent switching.
+   */
+  public record Result(List<TaskResult> tasks, long cycles, long instructions, long switches,
+                       long switchCycles) {
+    /**
+     * Computes the share of the cycles spent switching contexts.
+     *
+     * @return The switch overhead between 0 and 1.
+     */
+    public double switchOverhead() {
+      return cycles == 0 ? 0 : (double) switchCycles / cycles;
+    }
+
+    /**
+     * Computes the throughput in tasks finished per million cycles.
+     *
+     * @return The throughput.
+     */
+    public double throughput() {
+      return cycles == 0 ? 0 : tasks.stream().filter(TaskResult::finished).count() * 1e6 / cycles;
+    }
+  }
+
+  private static final class Task {
+    final String name;
+    final Simulator.Context context;
+    final int endAddress;
+    long instructions, preemptions, finishCycle = -1;
+    String fault;
+
+    Task(String name, Simulator.Context context, int instructionCount) {
+      this.name = name;
+      this.context = context;
+      this.endAddress = 0x00400000 + instructionCount * 4;
+    }
+  }
+
+  private final long quantum;
+  private final int switchCost;
+  private final Simulator core = new Simulator(List.of(), Map.of(), 4, 4);
+  private final List<Task> tasks = new ArrayList<>();
+
+  /**
+   * Creates a scheduler with no tasks.
+   *
+   * @param quantum The instructions a task runs before the timer interrupts it.
+   * @param switchCost The cycles a context switch costs.
+   */
+  public Scheduler(long quantum, int switchCost) {
+    if(quantum <= 0 || switchCost < 0){
+      throw new IllegalArgumentException("Quantum must be positive and switch cost non-negative");
+    }
+    this.quantum = quantum;
+    this.switchCost = switchCost;
+  }
+
+  /**
+   * Retrieves the simulated core, e.g. to attach an {@link ExecutionListener} that observes all
+   * tasks. Coverage belongs to a task's context rather than the core, so coverage attached here
+   * records no task.
+   *
+   * @return The core.
+   */
+  public Simulator getCore() {
+    return core;
+  }
+
+  /**
+   * Adds an assembled program as a task.
+   *
+   * @param name The task name.
+   * @param binaryInstructions The binary machine code instructions.
+   * @param labels The symbol table of the program.
+   * @param dataMemorySize The data memory size of the task in bytes.
+   */
+  public void add(String name, List<String> binaryInstructions, Map<String, Integer> labels,
+                  int dataMemorySize) {
+    Simulator.Context context = Simulator.createContext(binaryInstructions, labels,
+                                                        dataMemorySize);
+    tasks.add(new Task(name, context, binaryInstructions.size()));
+  }
+
+  /**
+   * Assembles a program and adds it as a task with a 128-byte data memory.
+   *
+   * @param name The task name.
+   * @param source The assembly source.
+   *
+   * @throws Assembler.AssemblerException If the source cannot be assembled.
+   */
+  public void add(String name, String source) throws Assembler.AssemblerException {
+    Assembler assembler = new Assembler();
+    add(name, assembler.assemble(source), assembler.getLabels(), 128);
+  }
+
+  /**
+   * Runs the tasks until all have ended or the cycle budget is spent. Can only be called once.
+   *
+   * @param maxCycles The cycle budget.
+   *
+   * @return The outcome.
+   */
+  public Result run(long maxCycles) {
+    Simulator.Context idle = core.getContext();
+    Deque<Task> ready = new ArrayDeque<>(tasks);
+    Task current = null;
+    long cycles = 0, switches = 0;
+    while(!ready.isEmpty() && cycles < maxCycles){
+      Task task = ready.poll();
+      if(task != current){
+        core.switchContext(task.context);
+        current = task;
+        switches++;
+        cycles += switchCost;
+        if(cycles >= maxCycles){
+          ready.addFirst(task);
+          break;
+        }
+      }
+
+      long before = core.getInstructionsExecuted();
+      try{
+        core.run(Math.min(quantum, maxCycles - cycles));
+      } catch(RuntimeException e){
+        task.fault = e.getMessage() != null ? e.getMessage() : e.toString();
+      }
+      long executed = core.getInstructionsExecuted() - before;
+      task.instructions += executed;
+      cycles += executed;
+
+      if(task.fault != null || core.isFinished() || core.getProgramCounter() == task.endAddress){
+        task.finishCycle = cycles;
+      } else {
+        task.preemptions++; // Timer interrupt
+        ready.add(task);
+      }
+    }
+    core.switchContext(idle); // Saves the state of the last task
+
+    List<TaskResult> results = new ArrayList<>();
+    for(Task task : tasks){
+      long end = task.finishCycle >= 0 ? task.finishCycle : cycles;
+      results.add(new TaskResult(task.name, task.instructions, task.preemptions, task.finishCycle,
+                                 end - task.instructions, task.fault,
+                                 task.context.getRegisterValues()));
+    }
+    long instructions = tasks.stream().mapToLong(task->task.instructions).sum();
+    return new Result(results, cycles, instructions, switches, switches * switchCost);
+  }
+
+  /**
+   * Writes one line per task and a summary.
+   *
+   * @param result The outcome of a run.
+   * @param out The destination.
+   *
+   * @throws IOException If writing fails.
+   */
+  public static void writeReport(Result result, Appendable out) throws IOException {
+    for(TaskResult task : result.tasks()){
+      out.append(String.format("%-24s %10d instructions %6d preemptions %10s finish %10d wait%s%n",
+                               task.name(), task.instructions(), task.preemptions(),
+                               task.finished() ? String.valueOf(task.finishCycle()) : "-",
+                               task.waitCycles(),
+                               task.fault() == null ? "" : "  fault: " + task.fault()));
+    }
+    out.append(String.format("%d cycles, %d instructions, %d context switches costing %d cycles "
+                             + "(%.2f%%), %.2f tasks per million cycles%n", result.cycles(),
+                             result.instructions(), result.switches(), result.switchCycles(),
+                             100 * result.switchOverhead(), result.throughput()));
+  }
+}
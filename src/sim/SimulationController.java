@@ -0,0 +1,211 @@
+package sim;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a simulator on its own thread and publishes consistent snapshots of its state to other
+ * threads, such as the Swing event dispatch thread.
+ * <p>
+ * Only the simulation thread touches the simulator while it runs. Between steps it copies the
+ * registers, data memory and program counter into an immutable {@link Snapshot} and publishes it
+ * through a volatile field, so readers always see a whole state from a single point in the
+ * execution and never wait on the simulator, nor the simulator on them. At full speed, snapshots
+ * are taken at most every {@value #PUBLISH_INTERVAL_MILLIS} ms, between chunks of
+ * {@value #CHUNK} steps.
+ * <p>
+ * An optional {@link Watchdog} is checked after every step or chunk, so that a program stuck in an
+ * endless loop stops with the watchdog's diagnostic as its fault.
+ */
+public class SimulationController {
+  private static final int CHUNK = 10_000;
+  private static final long PUBLISH_INTERVAL_MILLIS = 16;
+
+  /**
+   * The state of the simulator at one point of the execution. The arrays are private copies that
+   * must not be modified.
+   *
+   * @param programCounter The address of the next instruction.
+   * @param registers The 32 register values, indexed by register number.
+   * @param memory The data memory words, in {@link DataMemory#getMemoryValues()} order.
+   * @param instructionsExecuted The number of instructions executed since the last reset.
+   * @param opcodeClassCounts The executed instructions per {@link Simulator.OpcodeClass}, indexed
+   * by ordinal, since the last reset.
+   * @param branchesTaken The conditional branches taken since the last reset.
+   * @param finished Whether the program has finished.
+   * @param fault The message of the exception that stopped the run, or null.
+   */
+  public record Snapshot(int programCounter, int[] registers, int[] memory,
+                         long instructionsExecuted, long[] opcodeClassCounts,
+                         long branchesTaken, boolean finished, String fault) {
+    /**
+     * Retrieves the registers formatted like {@link Simulator#getRegisterState()}.
+     *
+     * @return A 2D array of register names and values.
+     */
+    public String[][] registerState() {
+      String[][] state = new String[registers.length][2];
+      for(int i = 0; i < registers.length; i++){
+        state[i][0] = RegisterFile.registerName(i);
+        state[i][1] = (registers.length - i <= 4) ?
+                      String.format("0x%08X", registers[i]) :
+                      String.valueOf(registers[i]);
+      }
+      return state;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Snapshot[pc=0x%08X, registers=%s, instructions=%d, finished=%b]",
+                           programCounter, Arrays.toString(registers), instructionsExecuted,
+                           finished);
+    }
+  }
+
+  private final Simulator simulator;
+  private final Consumer<Snapshot> listener;
+  private volatile Snapshot snapshot;
+  private volatile boolean running;
+  private Thread thread;
+  private Watchdog watchdog;
+
+  /**
+   * Creates a controller and publishes the initial state of the simulator.
+   *
+   * @param simulator The simulator to control. Must not be used by other threads while running.
+   * @param listener Called on the simulation thread after every published snapshot, and once more
+   * after the run stops. Must not block.
+   */
+  public SimulationController(Simulator simulator, Consumer<Snapshot> listener) {
+    this.simulator = simulator;
+    this.listener = listener;
+    this.snapshot = capture(null);
+  }
+
+  /**
+   * Starts running the simulator on a new thread until it finishes, faults or is stopped.
+   *
+   * @param stepDelayMillis Supplies the delay between steps in milliseconds, re-read after every
+   * step. With a delay of 0 the simulator runs at full speed.
+   *
+   * @throws IllegalStateException If the simulator is already running.
+   */
+  public synchronized void start(LongSupplier stepDelayMillis) {
+    if(running){
+      throw new IllegalStateException("Simulation is already running");
+    }
+    running = true;
+    thread = new Thread(()->runLoop(stepDelayMillis), "simulation");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the run and waits for the simulation thread to leave the simulator, so that the caller
+   * may use the simulator directly afterwards. Does nothing if not running.
+   */
+  public synchronized void stop() {
+    running = false;
+    if(thread == null) return;
+    thread.interrupt();
+    boolean interrupted = false;
+    while(true){
+      try{
+        thread.join();
+        break;
+      } catch(InterruptedException e){
+        interrupted = true;
+      }
+    }
+    thread = null;
+    if(interrupted){
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sets the watchdog of the following runs. Must only be called while not running.
+   *
+   * @param watchdog The watchdog, or null to run unwatched.
+   */
+  public void setWatchdog(Watchdog watchdog) {
+    this.watchdog = watchdog;
+  }
+
+  /**
+   * Checks whether the simulation thread is running.
+   *
+   * @return True until the run finishes, faults or is stopped.
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Retrieves the most recently published snapshot without blocking.
+   *
+   * @return The latest snapshot.
+   */
+  public Snapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Publishes the current state after the simulator was changed directly, e.g. by a single step
+   * or a reset. Must only be called while not running.
+   *
+   * @return The new snapshot.
+   */
+  public Snapshot publish() {
+    snapshot = capture(null);
+    return snapshot;
+  }
+
+  private void runLoop(LongSupplier stepDelayMillis) {
+    String fault = null;
+    try{
+      if(watchdog != null) watchdog.start(simulator);
+      long lastPublish = System.nanoTime();
+      while(running && !simulator.isFinished()){
+        long delay = stepDelayMillis.getAsLong();
+        if(delay > 0){
+          simulator.step();
+          if(watchdog != null) watchdog.check();
+          publish(capture(null));
+          lastPublish = System.nanoTime();
+          Thread.sleep(delay);
+        } else {
+          simulator.run(CHUNK);
+          if(watchdog != null) watchdog.check();
+          long now = System.nanoTime();
+          if(now - lastPublish >= TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MILLIS)){
+            publish(capture(null));
+            lastPublish = now;
+          }
+        }
+      }
+    } catch(InterruptedException e){
+      // Stopped while sleeping between steps
+    } catch(RuntimeException e){
+      fault = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    } finally{
+      Snapshot last = capture(fault);
+      running = false;
+      publish(last);
+    }
+  }
+
+  private void publish(Snapshot next) {
+    snapshot = next;
+    listener.accept(next);
+  }
+
+  private Snapshot capture(String fault) {
+    return new Snapshot(simulator.getProgramCounter(), simulator.getRegisterValues(),
+                        simulator.getDataMemoryValues(), simulator.getInstructionsExecuted(),
+                        simulator.getOpcodeClassCounts(), simulator.getBranchesTaken(),
+                        simulator.isFinished(), fault);
+  }
+}
@@ -0,0 +1,460 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless server that runs simulation jobs submitted over a local TCP port or Unix domain socket,
+ * so that many programs can be simulated by one long-lived JVM.
+ * <p>
+ * Jobs run on a fixed pool of virtual-thread workers fed by a bounded queue. When the queue is
+ * full the job is rejected with {@code ERROR BUSY} and the client is expected to retry later.
+ * Each job has a step budget and a wall-clock timeout, after which it is stopped and its partial
+ * state returned. Instruction memory is sized to each program; data memory to the job's request.
+ * <p>
+ * The protocol is line based. A request is a sequence of header lines followed by the program and
+ * a closing {@code END}; any number of requests may be sent over one connection:
+ * <pre>
+ * STEPS 100000              (optional step budget)
+ * TIMEOUT 2000              (optional timeout in milliseconds)
+ * DATA_MEMORY 4096          (optional data memory size in bytes)
+ * REG $t0 5                 (optional initial register values)
+ * MEM 0xFFFFFFFF 42         (optional initial memory words)
+ * SOURCE                    (or BINARY, followed by 32-bit binary instructions)
+ * addi $t1, $t0, 1
+ * END
+ * </pre>
+ * The response starts with the job status ({@code FINISHED}, {@code STEP_LIMIT},
+ * {@code TIMEOUT} or {@code FAULT}) and statistics, followed by {@code REG}, {@code MEM} and
+ * {@code COUNT} lines and a closing {@code END}. Requests that cannot be run are answered with
+ * {@code ERROR <reason> <message>} and {@code END}.
+ * <p>
+ * The execution of all jobs is added up in {@link #getTotals()}, which the command line registers
+ * as a {@link SimulatorMetrics} MBean for monitoring the throughput of the workers.
+ */
+public class SimulationServer implements Closeable {
+  /**
+   * Number of steps executed between checks of a job's deadline.
+   */
+  private static final int TIMEOUT_CHECK_INTERVAL = 10_000;
+
+  private final ThreadPoolExecutor workers;
+  private final long defaultMaxSteps;
+  private final long defaultTimeoutMillis;
+  private final int defaultDataMemorySize;
+  private final SimulatorMetrics.Totals totals = new SimulatorMetrics.Totals();
+  private ServerSocketChannel serverChannel;
+  private Path socketPath;
+
+  /**
+   * The outcome of a job.
+   */
+  public enum Status {FINISHED, STEP_LIMIT, TIMEOUT, FAULT}
+
+  /**
+   * A simulation job. Exactly one of {@code source} and {@code binary} is set.
+   *
+   * @param source Assembly source, or null.
+   * @param binary Prebuilt binary instructions, or null.
+   * @param maxSteps The step budget.
+   * @param timeoutMillis The wall-clock limit in milliseconds.
+   * @param dataMemorySize The data memory size in bytes.
+   * @param registers Initial register values by register number.
+   * @param memory Initial data memory words by address.
+   */
+  public record Job(String source, List<String> binary, long maxSteps, long timeoutMillis,
+                    int dataMemorySize, Map<Integer, Integer> registers,
+                    Map<Integer, Integer> memory) {}
+
+  /**
+   * The result of a job.
+   *
+   * @param status The outcome.
+   * @param message The fault message, or null.
+   * @param steps The number of steps executed.
+   * @param elapsedNanos The time spent simulating.
+   * @param simulator The simulator in its final state.
+   */
+  public record Result(Status status, String message, long steps, long elapsedNanos,
+                       Simulator simulator) {}
+
+  /**
+   * Creates a server. Call {@link #start(SocketAddress)} to begin accepting connections.
+   *
+   * @param workerCount The number of jobs simulated concurrently.
+   * @param queueCapacity The number of jobs that may wait for a worker before new ones are
+   * rejected.
+   * @param defaultMaxSteps The step budget of jobs that do not specify one.
+   * @param defaultTimeoutMillis The timeout of jobs that do not specify one.
+   * @param defaultDataMemorySize The data memory size in bytes of jobs that do not specify one.
+   */
+  public SimulationServer(int workerCount, int queueCapacity, long defaultMaxSteps,
+                          long defaultTimeoutMillis, int defaultDataMemorySize) {
+    this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(queueCapacity),
+                                          Thread.ofVirtual().name("sim-worker-", 0).factory());
+    this.defaultMaxSteps = defaultMaxSteps;
+    this.defaultTimeoutMillis = defaultTimeoutMillis;
+    this.defaultDataMemorySize = defaultDataMemorySize;
+  }
+
+  /**
+   * Binds the server and starts accepting connections in the background.
+   *
+   * @param address A TCP address, normally on the loopback interface, or a
+   * {@link UnixDomainSocketAddress}.
+   *
+   * @return The bound address, e.g. with the actual port if port 0 was requested.
+   *
+   * @throws IOException If the address cannot be bound.
+   */
+  public SocketAddress start(SocketAddress address) throws IOException {
+    if(address instanceof UnixDomainSocketAddress unixAddress){
+      serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      socketPath = unixAddress.getPath();
+    } else {
+      serverChannel = ServerSocketChannel.open();
+    }
+    serverChannel.bind(address);
+    Thread.ofPlatform().name("sim-server-accept").start(this::acceptConnections);
+    return serverChannel.getLocalAddress();
+  }
+
+  /**
+   * Stops accepting connections and abandons queued jobs.
+   *
+   * @throws IOException If the server socket cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    workers.shutdownNow();
+    if(serverChannel != null){
+      serverChannel.close();
+    }
+    if(socketPath != null){
+      Files.deleteIfExists(socketPath);
+    }
+  }
+
+  /**
+   * Queues a job for execution.
+   *
+   * @param job The job to run.
+   *
+   * @return A future completing with the job's result.
+   *
+   * @throws RejectedExecutionException If the queue is full.
+   */
+  public Future<Result> submit(Job job) {
+    return workers.submit(()->execute(job));
+  }
+
+  /**
+   * Runs a job on the calling thread.
+   *
+   * @param job The job to run.
+   *
+   * @return The job's result.
+   *
+   * @throws Assembler.AssemblerException If the job's source cannot be assembled.
+   * @throws IllegalArgumentException If the program or initial state does not fit in memory.
+   */
+  public Result execute(Job job) throws Assembler.AssemblerException {
+    Simulator simulator = job.source() != null ?
+                          Simulator.forProgram(job.source(), job.dataMemorySize()) :
+                          Simulator.forProgram(job.binary(), Map.of(), job.dataMemorySize());
+    try{
+      job.registers().forEach(simulator::writeRegister);
+      job.memory().forEach(simulator::storeWord);
+    } catch(IndexOutOfBoundsException | DataMemory.AlignmentException e){
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(job.timeoutMillis());
+    long steps = 0;
+    Status status = Status.STEP_LIMIT;
+    String message = null;
+    try(SimulatorMetrics.Totals.Tracker tracker = totals.track(simulator)){
+      while(steps < job.maxSteps()){
+        steps += simulator.run(Math.min(TIMEOUT_CHECK_INTERVAL, job.maxSteps() - steps));
+        tracker.update();
+        if(simulator.isFinished()){
+          status = Status.FINISHED;
+          break;
+        }
+        if(System.nanoTime() - deadline > 0){
+          status = Status.TIMEOUT;
+          break;
+        }
+      }
+    } catch(RuntimeException e){
+      status = Status.FAULT;
+      message = describe(e);
+    }
+    return new Result(status, message, steps, System.nanoTime() - start, simulator);
+  }
+
+  /**
+   * Retrieves the combined execution statistics of all jobs run so far.
+   *
+   * @return The totals, updated by the workers while jobs run.
+   */
+  public SimulatorMetrics.Totals getTotals() {
+    return totals;
+  }
+
+  private void acceptConnections() {
+    try{
+      while(true){
+        SocketChannel channel = serverChannel.accept();
+        Thread.ofVirtual().name("sim-connection").start(()->serve(channel));
+      }
+    } catch(ClosedChannelException e){
+      // Server closed
+    } catch(IOException e){
+      System.err.println("Simulation server stopped: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads requests from a connection and answers them in order until the client disconnects.
+   *
+   * @param channel The client connection.
+   */
+  private void serve(SocketChannel channel) {
+    try(channel;
+        BufferedReader in = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8));
+        Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8)){
+      while(true){
+        Job job;
+        try{
+          job = readJob(in);
+        } catch(IllegalArgumentException e){
+          writeError(out, "PROTOCOL", describe(e));
+          return;
+        }
+        if(job == null) return;
+
+        respond(job, out);
+        out.flush();
+      }
+    } catch(IOException e){
+      // Client went away
+    }
+  }
+
+  private void respond(Job job, Writer out) throws IOException {
+    Result result;
+    try{
+      result = submit(job).get();
+    } catch(RejectedExecutionException e){
+      writeError(out, "BUSY", "job queue is full");
+      return;
+    } catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      writeError(out, "SHUTDOWN", "server is stopping");
+      return;
+    } catch(ExecutionException e){
+      Throwable cause = e.getCause();
+      writeError(out, cause instanceof Assembler.AssemblerException ? "ASSEMBLY" : "INVALID",
+                 describe(cause));
+      return;
+    }
+    writeResult(result, out);
+  }
+
+  /**
+   * Parses one request.
+   *
+   * @param in The connection's input.
+   *
+   * @return The job, or null if the client closed the connection before sending one.
+   *
+   * @throws IOException If reading fails.
+   * @throws IllegalArgumentException If the request is malformed.
+   */
+  private Job readJob(BufferedReader in) throws IOException {
+    long maxSteps = defaultMaxSteps, timeoutMillis = defaultTimeoutMillis;
+    int dataMemorySize = defaultDataMemorySize;
+    Map<Integer, Integer> registers = new LinkedHashMap<>();
+    Map<Integer, Integer> memory = new LinkedHashMap<>();
+
+    String line;
+    while((line = in.readLine()) != null){
+      String[] parts = line.trim().split("\\s+");
+      try{
+        switch(parts[0]){
+          case "" -> {}
+          case "STEPS" -> maxSteps = Long.parseLong(parts[1]);
+          case "TIMEOUT" -> timeoutMillis = Long.parseLong(parts[1]);
+          case "DATA_MEMORY" -> {
+            dataMemorySize = Integer.parseInt(parts[1]);
+            if(dataMemorySize <= 0){
+              throw new IllegalArgumentException("Data memory size must be positive: " + line);
+            }
+          }
+          case "REG" -> {
+            int register = RegisterFile.registerNumber(parts[1]);
+            if(register < 0){
+              throw new IllegalArgumentException("Unknown register: " + parts[1]);
+            }
+            registers.put(register, parseWord(parts[2]));
+          }
+          case "MEM" -> memory.put(parseWord(parts[1]), parseWord(parts[2]));
+          case "SOURCE" -> {
+            return new Job(String.join("\n", readProgram(in)), null, maxSteps, timeoutMillis,
+                           dataMemorySize, registers, memory);
+          }
+          case "BINARY" -> {
+            return new Job(null, readProgram(in), maxSteps, timeoutMillis, dataMemorySize,
+                           registers, memory);
+          }
+          default -> throw new IllegalArgumentException("Unknown request line: " + line);
+        }
+      } catch(NumberFormatException | ArrayIndexOutOfBoundsException e){
+        throw new IllegalArgumentException("Malformed request line: " + line);
+      }
+    }
+    return null;
+  }
+
+  private static List<String> readProgram(BufferedReader in) throws IOException {
+    List<String> lines = new ArrayList<>();
+    String line;
+    while((line = in.readLine()) != null && !line.trim().equals("END")){
+      lines.add(line);
+    }
+    if(line == null){
+      throw new IllegalArgumentException("Program not terminated by END");
+    }
+    return lines;
+  }
+
+  /**
+   * Parses a 32-bit word given in decimal or as {@code 0x}-prefixed hexadecimal.
+   */
+  private static int parseWord(String text) {
+    return (int) (long) Long.decode(text);
+  }
+
+  private static void writeResult(Result result, Writer out) throws IOException {
+    Simulator simulator = result.simulator();
+    StringBuilder response = new StringBuilder();
+    response.append(String.format("%s steps=%d instructions=%d time_us=%d pc=0x%08X\n",
+                                  result.status(), result.steps(),
+                                  simulator.getInstructionsExecuted(),
+                                  result.elapsedNanos() / 1000, simulator.getProgramCounter()));
+    if(result.message() != null){
+      response.append("MESSAGE ").append(singleLine(result.message())).append('\n');
+    }
+
+    int[] registers = simulator.getRegisterValues();
+    for(int i = 0; i < registers.length; i++){
+      response.append("REG ").append(RegisterFile.registerName(i)).append(' ')
+              .append(registers[i]).append('\n');
+    }
+    int[] memory = simulator.getDataMemoryValues();
+    for(int i = 0; i < memory.length; i++){
+      if(memory[i] != 0){
+        response.append(String.format("MEM 0x%08X %d\n", 0xFFFFFFFF - i * 4, memory[i]));
+      }
+    }
+    for(Simulator.OpcodeClass opcodeClass : Simulator.OpcodeClass.values()){
+      response.append("COUNT ").append(opcodeClass).append(' ')
+              .append(simulator.getOpcodeClassCount(opcodeClass)).append('\n');
+    }
+    response.append("END\n");
+    out.write(response.toString());
+  }
+
+  private static void writeError(Writer out, String reason, String message) throws IOException {
+    out.write("ERROR " + reason + " " + singleLine(message) + "\nEND\n");
+    out.flush();
+  }
+
+  /**
+   * Describes an exception for a response line: its message, or its class name if it has none.
+   */
+  private static String describe(Throwable e) {
+    String message = e.getMessage();
+    return message == null || message.isBlank() ? e.getClass().getSimpleName() : message;
+  }
+
+  /**
+   * Joins the lines of a text with spaces, so that it cannot break the line framing.
+   */
+  private static String singleLine(String text) {
+    return text.replaceAll("\\R", " ");
+  }
+
+  /**
+   * Command-line entry point. Usage:
+   * {@code SimulationServer [--port N | --socket PATH] [--workers N] [--queue N] [--steps N]
+   * [--timeout MS] [--data-memory BYTES]}. Listens on the loopback interface, port 7878 by default,
+   * and gives jobs 4 KB of data memory unless they request another size.
+   *
+   * @param args The command-line arguments.
+   *
+   * @throws IOException If the server cannot be started.
+   */
+  public static void main(String[] args) throws IOException {
+    SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 7878);
+    int workerCount = Runtime.getRuntime().availableProcessors(), queueCapacity = 64;
+    long maxSteps = 10_000_000, timeoutMillis = 10_000;
+    int dataMemorySize = 4096;
+    for(int i = 0; i < args.length; i++){
+      switch(args[i]){
+        case "--port" -> address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                         Integer.parseInt(args[++i]));
+        case "--socket" -> address = UnixDomainSocketAddress.of(args[++i]);
+        case "--workers" -> workerCount = Integer.parseInt(args[++i]);
+        case "--queue" -> queueCapacity = Integer.parseInt(args[++i]);
+        case "--steps" -> maxSteps = Long.parseLong(args[++i]);
+        case "--timeout" -> timeoutMillis = Long.parseLong(args[++i]);
+        case "--data-memory" -> dataMemorySize = Integer.parseInt(args[++i]);
+        default -> {
+          System.err.println("Unknown option: " + args[i]);
+          System.exit(2);
+        }
+      }
+    }
+
+    SimulationServer server = new SimulationServer(workerCount, queueCapacity, maxSteps,
+                                                   timeoutMillis, dataMemorySize);
+    SimulatorMetrics.register(server.getTotals());
+    Runtime.getRuntime().addShutdownHook(new Thread(()->{
+      try{
+        server.close();
+      } catch(IOException e){
+        // Exiting anyway
+      }
+    }));
+    System.out.println("Simulation server listening on " + server.start(address));
+  }
+}
@@ -1,14 +1,29 @@
 package sim;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * sim.Simulator class that executes MIPS assembly instructions. Manages the program counter, register
  * file, data memory, and instruction memory. Provides methods to execute instructions step-by-step
  * or reset the simulation.
  */
-public class Simulator {
-  private final InstructionMemory instructionMemory;
+public class Simulator implements ExecutionEngine {
+  /**
+   * Coarse instruction classes used for execution statistics.
+   */
+  public enum OpcodeClass {ARITHMETIC, LOGICAL, SHIFT, LOAD, STORE, BRANCH, JUMP}
+
+  private static final int DEFAULT_MEMORY_SIZE = 128;
+
+  private InstructionMemory instructionMemory;
+  private int dataMemorySize;
+  private Map<String, Integer> labels;
+  private int[] sourceLines; // Source line of each instruction, or null if unknown
   private DataMemory dataMemory;
   private RegisterFile registerFile;
   private int programCounter;
@@ -19,6 +34,31 @@ public class Simulator {
   private String opcode, instruction;
   private int rs, rt, rd, shamt, funct, immediate, targetAddress;
 
+  // Execution statistics, written only by the thread driving the simulator
+  private long instructionsExecuted;
+  private final long[] opcodeClassCounts = new long[OpcodeClass.values().length];
+  private long branchesTaken;
+  private CallStackProfiler callStackProfiler;
+  private Coverage coverage;
+  private ExecutionListener[] listeners = new ExecutionListener[0];
+  private OutOfOrderTimingModel timingModel;
+  private ReuseDistanceProfiler reuseDistanceProfiler;
+
+  // Addresses run() stops at, and the same as a per-instruction table built on first use
+  private final Set<Integer> breakpoints = new HashSet<>();
+  private boolean[] breakpointTable;
+
+  // The program whose address space and registers are loaded, created when first switched out
+  private Context context;
+
+  // Pre-decoded program for run(), built on first use
+  private DecodedProgram decodedProgram;
+  private boolean superinstructionsEnabled = true;
+  private boolean loopFastForwardEnabled = true;
+
+  // Whether loads and stores reach the program's own instructions, see setUnifiedMemoryEnabled
+  private boolean unifiedMemory;
+
   /**
    * Constructor: Assembles the given MIPS assembly code, Loads assembled instructions into
    * instruction memory, Initializes data memory and register file.
@@ -27,20 +67,124 @@ public class Simulator {
    * @throws Assembler.AssemblerException if there is an error during assembly
    */
   public Simulator(String assemblyCode) throws Assembler.AssemblerException {
-    Assembler assembler = new Assembler();
-    List<String> binaryInstructions = assembler.assemble(assemblyCode);
+    this(new Assembler(), assemblyCode);
+  }
 
-    this.instructionMemory = new InstructionMemory(binaryInstructions);
-    this.dataMemory = new DataMemory();
+  private Simulator(Assembler assembler, String assemblyCode)
+          throws Assembler.AssemblerException {
+    // Arguments are evaluated in order, so the labels are read after assembly
+    this(assemble(assembler, assemblyCode), assembler.getLabels());
+    this.sourceLines = assembler.getSourceLines();
+  }
+
+  /**
+   * Constructor: Loads already assembled instructions into instruction memory, Initializes data
+   * memory and register file.
+   *
+   * @param binaryInstructions Binary machine code instructions, e.g. as produced by
+   * {@link Assembler#assemble(String)}.
+   * @param labels The symbol table of the program, or an empty map if unknown.
+   */
+  public Simulator(List<String> binaryInstructions, Map<String, Integer> labels) {
+    this(binaryInstructions, labels, DEFAULT_MEMORY_SIZE, DEFAULT_MEMORY_SIZE);
+  }
+
+  /**
+   * Constructor: Loads already assembled instructions into an instruction memory of the given
+   * size, Initializes a data memory of the given size and the register file.
+   *
+   * @param binaryInstructions Binary machine code instructions, e.g. as produced by
+   * {@link Assembler#assemble(String)}.
+   * @param labels The symbol table of the program, or an empty map if unknown.
+   * @param instructionMemorySize The instruction memory size in bytes, see
+   * {@link InstructionMemory#InstructionMemory(List, int)}.
+   * @param dataMemorySize The data memory size in bytes, see {@link DataMemory#DataMemory(int)}.
+   */
+  public Simulator(List<String> binaryInstructions, Map<String, Integer> labels,
+                   int instructionMemorySize, int dataMemorySize) {
+    this.labels = labels;
+    this.instructionMemory = new InstructionMemory(binaryInstructions, instructionMemorySize);
+    this.dataMemorySize = dataMemorySize;
+    this.dataMemory = new DataMemory(dataMemorySize);
     this.registerFile = new RegisterFile();
     this.programCounter = 0x00400000; // Program counter starts at 0x00400000
     registerFile.write(29, stackPointerDefaultValue); // Stack starts at 0xFFFFFFFF
   }
 
+  /**
+   * Creates a simulator whose instruction memory is just large enough for the program, which may
+   * be longer than the default instruction memory allows.
+   *
+   * @param binaryInstructions Binary machine code instructions, e.g. as produced by
+   * {@link Assembler#assemble(String)}.
+   * @param labels The symbol table of the program, or an empty map if unknown.
+   * @param dataMemorySize The data memory size in bytes.
+   *
+   * @return The simulator.
+   */
+  public static Simulator forProgram(List<String> binaryInstructions, Map<String, Integer> labels,
+                                     int dataMemorySize) {
+    return new Simulator(binaryInstructions, labels, programSize(binaryInstructions),
+                         dataMemorySize);
+  }
+
+  /**
+   * Assembles the given code into a simulator whose instruction memory is just large enough for
+   * it, see {@link #forProgram(List, Map, int)}.
+   *
+   * @param assemblyCode MIPS assembly code to be executed
+   * @param dataMemorySize The data memory size in bytes.
+   *
+   * @return The simulator.
+   *
+   * @throws Assembler.AssemblerException if there is an error during assembly
+   */
+  public static Simulator forProgram(String assemblyCode, int dataMemorySize)
+          throws Assembler.AssemblerException {
+    Assembler assembler = new Assembler();
+    Simulator simulator = forProgram(assemble(assembler, assemblyCode), assembler.getLabels(),
+                                     dataMemorySize);
+    simulator.sourceLines = assembler.getSourceLines();
+    return simulator;
+  }
+
+  /**
+   * Computes the smallest valid instruction memory size in bytes holding a program.
+   */
+  private static int programSize(List<String> binaryInstructions) {
+    return Math.max(4, binaryInstructions.size() * 4);
+  }
+
+  /**
+   * Assembles the given code, recording the assembly as a JFR event.
+   *
+   * @param assembler The assembler to use.
+   * @param assemblyCode MIPS assembly code.
+   *
+   * @return The binary machine code instructions.
+   *
+   * @throws Assembler.AssemblerException if there is an error during assembly
+   */
+  private static List<String> assemble(Assembler assembler, String assemblyCode)
+          throws Assembler.AssemblerException {
+    SimulatorEvents.AssembleEvent event = new SimulatorEvents.AssembleEvent();
+    event.begin();
+    List<String> binaryInstructions = assembler.assemble(assemblyCode);
+    event.end();
+    if(event.shouldCommit()){
+      event.sourceLines = assemblyCode.split("\n").length;
+      event.instructions = binaryInstructions.size();
+      event.commit();
+    }
+    return binaryInstructions;
+  }
+
   /**
    * Executes the next instruction in the program. Updates the program counter unless a branch or
-   * jump instruction modifies it.
+   * jump instruction modifies it. Past the last instruction, only marks the program finished, see
+   * {@link #isFinished()}; nothing is printed, so batch tools can run many programs quietly.
    */
+  @Override
   public void step() {
     isBranchOrJump = false;
     isFinished = false;
@@ -49,19 +193,451 @@ public class Simulator {
     rs = rt = rd = shamt = funct = immediate = targetAddress = 0;
 
     if(programCounter >= 0x00400000 + instructionMemory.size() * 4){
-      System.out.println("Program Finished.");
       isFinished = true;
       return;
     }
 
-    fetch();
-    decode();
-    execute();
+    int address = programCounter, memoryAddress = 0;
+    try{
+      fetch();
+      decode();
+      if(callStackProfiler != null){
+        callStackProfiler.sample(1);
+      }
+      if(listeners.length != 0){
+        memoryAddress = registerFile.read(rs) - immediate; // Before execute() overwrites rs
+      }
+      execute();
+    } catch(RuntimeException e){
+      recordFault(e);
+      throw e;
+    }
+    instructionsExecuted++;
 
     // PC increment is handled by branch and jump instructions
     if(!isBranchOrJump){
       programCounter += 4;
     }
+    if(coverage != null){
+      int index = (address - 0x00400000) >> 2;
+      if(opcode.equals("000100") || opcode.equals("000101")){
+        coverage.branch(index, isBranchOrJump);
+      } else {
+        coverage.executed(index);
+      }
+    }
+    if(listeners.length != 0){
+      notifyListeners(address, memoryAddress);
+    }
+  }
+
+  /**
+   * Reports the instruction {@link #step()} just executed to every execution listener.
+   *
+   * @param address The address of the instruction.
+   * @param memoryAddress The effective address of a load or store, ignored otherwise.
+   */
+  private void notifyListeners(int address, int memoryAddress) {
+    int width = switch(opcode){
+      case "100011", "101011" -> 4; // lw, sw
+      case "100001", "100101", "101001" -> 2; // lh, lhu, sh
+      case "100000", "100100", "101000" -> 1; // lb, lbu, sb
+      default -> 0;
+    };
+    int destination = switch(opcode){
+      case "000000" -> switch(funct){
+        case 32, 34, 36, 37, 42, 0, 2 -> rd;
+        default -> 0; // jr
+      };
+      case "001000", "100011", "100001", "100101", "100000", "100100" -> rt;
+      case "000011" -> 31; // jal
+      default -> 0;
+    };
+    boolean store = opcode.startsWith("101");
+    boolean branch = opcode.equals("000100") || opcode.equals("000101");
+    int word = Integer.parseUnsignedInt(instruction, 2);
+    for(ExecutionListener listener : listeners){
+      if(width != 0 && store){
+        int mask = width == 4 ? -1 : (1 << (8 * width)) - 1;
+        listener.memoryStored(memoryAddress, width, registerFile.read(rt)&mask);
+      } else if(width != 0){
+        listener.memoryLoaded(memoryAddress, width, registerFile.read(rt));
+      }
+      if(branch){
+        listener.branchResolved(address, address + 4 + (immediate * 4), isBranchOrJump);
+      }
+      if(destination != 0){
+        listener.registerWritten(destination, registerFile.read(destination));
+      }
+      listener.instructionRetired(address, word, programCounter);
+    }
+  }
+
+  /**
+   * Executes up to {@code maxSteps} steps, recording the run as a JFR event. Runs from the
+   * pre-decoded program, fusing common instruction pairs into superinstructions and
+   * fast-forwarding register-only loops, unless an attached execution listener needs to observe
+   * each step. The resulting state is the same as calling {@link #step()}
+   * {@code maxSteps} times.
+   * <p>
+   * The run stops early before executing an instruction at a breakpoint, except for the first
+   * instruction, so a run started at a breakpoint continues past it.
+   *
+   * @param maxSteps The maximum number of steps to execute.
+   *
+   * @return The number of steps actually executed.
+   */
+  @Override
+  public long run(long maxSteps) {
+    SimulatorEvents.RunEvent event = new SimulatorEvents.RunEvent();
+    long executedBefore = instructionsExecuted;
+    int startProgramCounter = programCounter;
+    event.begin();
+    try{
+      if(listeners.length != 0){
+        return runStepping(maxSteps);
+      }
+      return runDecoded(maxSteps);
+    } finally{
+      event.end();
+      if(event.shouldCommit()){
+        event.instructions = instructionsExecuted - executedBefore;
+        event.startProgramCounter = startProgramCounter;
+        event.endProgramCounter = programCounter;
+        event.finished = isFinished;
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Executes up to {@code maxSteps} steps one {@link #step()} at a time.
+   *
+   * @param maxSteps The maximum number of steps to execute.
+   *
+   * @return The number of steps actually executed.
+   */
+  private long runStepping(long maxSteps) {
+    long steps = 0;
+    while(steps < maxSteps && !isFinished){
+      if(steps > 0 && breakpoints.contains(programCounter)) break;
+      step();
+      steps++;
+    }
+    return steps;
+  }
+
+  /**
+   * Executes up to {@code maxSteps} steps from the pre-decoded program. A superinstruction counts
+   * as two steps and is only dispatched when the budget allows both; likewise, a loop is only
+   * fast-forwarded by as many whole iterations as the budget allows. Running off either end of the
+   * program and instructions the decoder does not support are delegated to {@link #step()}, so
+   * edge cases behave exactly as on the reference path. While breakpoints are set, neither
+   * superinstructions nor loop fast-forwarding are used, so every breakpoint is seen.
+   *
+   * @param maxSteps The maximum number of steps to execute.
+   *
+   * @return The number of steps actually executed.
+   */
+  private long runDecoded(long maxSteps) {
+    if(decodedProgram == null){
+      decodedProgram = new DecodedProgram(instructionMemory);
+    }
+    DecodedProgram program = decodedProgram;
+    boolean[] stops = null;
+    if(!breakpoints.isEmpty()){
+      if(breakpointTable == null){
+        breakpointTable = new boolean[program.size()];
+        for(int address : breakpoints){
+          int index = (address - 0x00400000) >> 2;
+          if(address >= 0x00400000 && index < breakpointTable.length){
+            breakpointTable[index] = true;
+          }
+        }
+      }
+      stops = breakpointTable;
+    }
+    int[] dispatch = superinstructionsEnabled && stops == null ? program.fusedOps : program.ops;
+    DecodedProgram.Loop[] loops = loopFastForwardEnabled && stops == null ? program.loops : null;
+    int[] registers = registerFile.array();
+    int endAddress = 0x00400000 + program.size() * 4;
+
+    long steps = 0;
+    int pc = programCounter;
+    while(steps < maxSteps && !isFinished){
+      int i = (pc - 0x00400000) >> 2;
+      boolean inProgram = pc >= 0x00400000 && pc < endAddress;
+      if(inProgram && stops != null && stops[i] && steps > 0) break;
+      if(!inProgram || program.ops[i] == DecodedProgram.UNSUPPORTED){
+        programCounter = pc;
+        step();
+        pc = programCounter;
+        steps++;
+        continue;
+      }
+
+      if(loops != null && loops[i] != null){
+        DecodedProgram.Loop loop = loops[i];
+        long iterations = loop.run(registers, (maxSteps - steps) / loop.length);
+        if(iterations > 0){
+          for(int c = 0; c < opcodeClassCounts.length; c++){
+            opcodeClassCounts[c] += iterations * loop.classCounts[c];
+          }
+          steps += iterations * loop.length;
+          instructionsExecuted += iterations * loop.length;
+          boolean taken = loop.isTaken(registers);
+          branchesTaken += taken ? iterations : iterations - 1;
+          if(coverage != null){
+            coverage.loop(loop.head, loop.branch, iterations, taken);
+          }
+          if(callStackProfiler != null){
+            callStackProfiler.sample(iterations * loop.length);
+          }
+          if(!taken){
+            pc = 0x00400000 + (loop.branch + 1) * 4;
+          }
+          continue;
+        }
+      }
+
+      int op = maxSteps - steps >= 2 ? dispatch[i] : program.ops[i];
+      if(callStackProfiler != null){
+        callStackProfiler.sample(1); // Before a call or return leaves the function
+      }
+      try{
+        switch(op){
+          case DecodedProgram.ADD -> {
+            setRegister(registers, program.rd[i],
+                        registers[program.rs[i]] + registers[program.rt[i]]);
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+          }
+          case DecodedProgram.SUB -> {
+            setRegister(registers, program.rd[i],
+                        registers[program.rs[i]] - registers[program.rt[i]]);
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+          }
+          case DecodedProgram.AND -> {
+            setRegister(registers, program.rd[i],
+                        registers[program.rs[i]]&registers[program.rt[i]]);
+            count(OpcodeClass.LOGICAL);
+            pc += 4;
+          }
+          case DecodedProgram.OR -> {
+            setRegister(registers, program.rd[i],
+                        registers[program.rs[i]]|registers[program.rt[i]]);
+            count(OpcodeClass.LOGICAL);
+            pc += 4;
+          }
+          case DecodedProgram.SLT -> {
+            setRegister(registers, program.rd[i],
+                        registers[program.rs[i]] < registers[program.rt[i]] ? 1 : 0);
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+          }
+          case DecodedProgram.SLL -> {
+            setRegister(registers, program.rd[i], registers[program.rt[i]] << program.shamt[i]);
+            count(OpcodeClass.SHIFT);
+            pc += 4;
+          }
+          case DecodedProgram.SRL -> {
+            setRegister(registers, program.rd[i], registers[program.rt[i]] >>> program.shamt[i]);
+            count(OpcodeClass.SHIFT);
+            pc += 4;
+          }
+          case DecodedProgram.JR -> {
+            count(OpcodeClass.JUMP);
+            pc = registers[program.rs[i]];
+            if(callStackProfiler != null && program.rs[i] == 31){
+              callStackProfiler.exitFunction(pc);
+            }
+          }
+          case DecodedProgram.ADDI -> {
+            setRegister(registers, program.rt[i], registers[program.rs[i]] + program.immediate[i]);
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+          }
+          case DecodedProgram.LW -> {
+            setRegister(registers, program.rt[i],
+                        load(registers[program.rs[i]] - program.immediate[i], 4));
+            count(OpcodeClass.LOAD);
+            pc += 4;
+          }
+          case DecodedProgram.SW -> {
+            store(registers[program.rs[i]] - program.immediate[i], 4, registers[program.rt[i]]);
+            count(OpcodeClass.STORE);
+            pc += 4;
+          }
+          case DecodedProgram.BEQ -> {
+            count(OpcodeClass.BRANCH);
+            pc = branch(pc, registers[program.rs[i]] == registers[program.rt[i]],
+                        program.immediate[i]);
+          }
+          case DecodedProgram.BNE -> {
+            count(OpcodeClass.BRANCH);
+            pc = branch(pc, registers[program.rs[i]] != registers[program.rt[i]],
+                        program.immediate[i]);
+          }
+          case DecodedProgram.J -> {
+            count(OpcodeClass.JUMP);
+            pc = (pc&0xF0000000)|(program.immediate[i] << 2);
+          }
+          case DecodedProgram.JAL -> {
+            registers[31] = pc + 4;
+            count(OpcodeClass.JUMP);
+            pc = (pc&0xF0000000)|(program.immediate[i] << 2);
+            if(callStackProfiler != null){
+              callStackProfiler.enterFunction(pc, registers[31]);
+            }
+          }
+
+          // Superinstructions: the first instruction retires before the second one executes, so
+          // a fault in the second leaves the same state as single-stepping would.
+          case DecodedProgram.ADD_BNE, DecodedProgram.SUB_BNE, DecodedProgram.ADDI_BNE,
+               DecodedProgram.SLT_BNE -> {
+            int value = switch(op){
+              case DecodedProgram.ADD_BNE -> registers[program.rs[i]] + registers[program.rt[i]];
+              case DecodedProgram.SUB_BNE -> registers[program.rs[i]] - registers[program.rt[i]];
+              case DecodedProgram.ADDI_BNE -> registers[program.rs[i]] + program.immediate[i];
+              default -> registers[program.rs[i]] < registers[program.rt[i]] ? 1 : 0;
+            };
+            setRegister(registers, op == DecodedProgram.ADDI_BNE ? program.rt[i] : program.rd[i],
+                        value);
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+            steps++;
+            instructionsExecuted++;
+
+            count(OpcodeClass.BRANCH);
+            pc = branch(pc, registers[program.rs[i + 1]] != registers[program.rt[i + 1]],
+                        program.immediate[i + 1]);
+          }
+          case DecodedProgram.ADDI_BEQ, DecodedProgram.SLT_BEQ -> {
+            if(op == DecodedProgram.ADDI_BEQ){
+              setRegister(registers, program.rt[i],
+                          registers[program.rs[i]] + program.immediate[i]);
+            } else {
+              setRegister(registers, program.rd[i],
+                          registers[program.rs[i]] < registers[program.rt[i]] ? 1 : 0);
+            }
+            count(OpcodeClass.ARITHMETIC);
+            pc += 4;
+            steps++;
+            instructionsExecuted++;
+
+            count(OpcodeClass.BRANCH);
+            pc = branch(pc, registers[program.rs[i + 1]] == registers[program.rt[i + 1]],
+                        program.immediate[i + 1]);
+          }
+          case DecodedProgram.SW_SW -> {
+            store(registers[program.rs[i]] - program.immediate[i], 4, registers[program.rt[i]]);
+            count(OpcodeClass.STORE);
+            pc += 4;
+            steps++;
+            instructionsExecuted++;
+            if(program.ops[i + 1] != DecodedProgram.SW){
+              // The first store rewrote the second instruction, which is dispatched on its own
+              if(coverage != null) coverage.executed(i);
+              continue;
+            }
+
+            store(registers[program.rs[i + 1]] - program.immediate[i + 1], 4,
+                  registers[program.rt[i + 1]]);
+            count(OpcodeClass.STORE);
+            pc += 4;
+          }
+          case DecodedProgram.LW_LW -> {
+            setRegister(registers, program.rt[i],
+                        load(registers[program.rs[i]] - program.immediate[i], 4));
+            count(OpcodeClass.LOAD);
+            pc += 4;
+            steps++;
+            instructionsExecuted++;
+
+            setRegister(registers, program.rt[i + 1],
+                        load(registers[program.rs[i + 1]] - program.immediate[i + 1], 4));
+            count(OpcodeClass.LOAD);
+            pc += 4;
+          }
+          default -> throw new IllegalStateException("Unknown decoded operation: " + op);
+        }
+      } catch(RuntimeException e){
+        if(coverage != null && pc != 0x00400000 + i * 4){
+          coverage.executed(i); // First half of a superinstruction
+        }
+        programCounter = pc;
+        instruction = instructionMemory.load(pc);
+        recordFault(e);
+        throw e;
+      }
+      if(coverage != null){
+        recordCoverage(program, i, op >= DecodedProgram.ADD_BNE ? i + 1 : i, registers);
+      }
+      if(callStackProfiler != null && op >= DecodedProgram.ADD_BNE){
+        callStackProfiler.sample(1); // Second half of a superinstruction
+      }
+      steps++;
+      instructionsExecuted++;
+    }
+    programCounter = pc;
+    return steps;
+  }
+
+  /**
+   * Records the coverage of one dispatch of the decoded run loop. Branches do not write registers,
+   * so their outcome can be evaluated again afterwards.
+   *
+   * @param first The index of the instruction dispatched.
+   * @param last The index of the last instruction dispatched, after {@code first} for a
+   * superinstruction.
+   */
+  private void recordCoverage(DecodedProgram program, int first, int last, int[] registers) {
+    coverage.executed(first);
+    int op = program.ops[last];
+    if(op == DecodedProgram.BEQ || op == DecodedProgram.BNE){
+      boolean equal = registers[program.rs[last]] == registers[program.rt[last]];
+      coverage.branch(last, equal == (op == DecodedProgram.BEQ));
+    } else {
+      coverage.executed(last);
+    }
+  }
+
+  /**
+   * Writes a register through the decoded run loop's array, failing for $zero exactly like
+   * {@link RegisterFile#write(int, int)}.
+   */
+  private void setRegister(int[] registers, int registerNumber, int value) {
+    if(registerNumber == 0){
+      registerFile.write(0, value); // Throws: $zero is read-only
+    }
+    registers[registerNumber] = value;
+  }
+
+  /**
+   * Computes the program counter after a conditional branch and counts it if taken.
+   */
+  private int branch(int programCounter, boolean taken, int offset) {
+    if(!taken){
+      return programCounter + 4;
+    }
+    branchesTaken++;
+    return programCounter + 4 + (offset * 4);
+  }
+
+  /**
+   * Emits a JFR fault event for an exception raised by the current instruction.
+   *
+   * @param fault The exception raised.
+   */
+  private void recordFault(RuntimeException fault) {
+    SimulatorEvents.FaultEvent event = new SimulatorEvents.FaultEvent();
+    if(event.shouldCommit()){
+      event.programCounter = programCounter;
+      event.instruction = instruction;
+      event.message = fault.toString();
+      event.commit();
+    }
   }
 
   /**
@@ -101,6 +677,12 @@ public class Simulator {
       case "001000": // I-Type (addi)
       case "100011": // I-Type (lw)
       case "101011": // I-Type (sw)
+      case "100000": // I-Type (lb)
+      case "100001": // I-Type (lh)
+      case "100100": // I-Type (lbu)
+      case "100101": // I-Type (lhu)
+      case "101000": // I-Type (sb)
+      case "101001": // I-Type (sh)
       case "000100": // I-Type (beq)
       case "000101": // I-Type (bne)
         immediate = Integer.parseInt(instruction.substring(16), 2);
@@ -134,24 +716,43 @@ public class Simulator {
         break;
       case "001000": // addi
         addi();
+        count(OpcodeClass.ARITHMETIC);
         break;
       case "100011": // lw
         lw();
+        count(OpcodeClass.LOAD);
         break;
       case "101011": // sw
         sw();
+        count(OpcodeClass.STORE);
+        break;
+      case "100000": // lb
+      case "100001": // lh
+      case "100100": // lbu
+      case "100101": // lhu
+        loadPartial();
+        count(OpcodeClass.LOAD);
+        break;
+      case "101000": // sb
+      case "101001": // sh
+        storePartial();
+        count(OpcodeClass.STORE);
         break;
       case "000100": // beq
         beq();
+        count(OpcodeClass.BRANCH);
         break;
       case "000101": // bne
         bne();
+        count(OpcodeClass.BRANCH);
         break;
       case "000010": // j
         jump();
+        count(OpcodeClass.JUMP);
         break;
       case "000011": // jal
         jal();
+        count(OpcodeClass.JUMP);
         break;
       default:
         System.out.println("Unsupported Opcode: " + opcode);
@@ -166,34 +767,49 @@ public class Simulator {
     switch(funct){
       case 32: // add
         registerFile.write(rd, registerFile.read(rs) + registerFile.read(rt));
+        count(OpcodeClass.ARITHMETIC);
         break;
       case 34: // sub
         registerFile.write(rd, registerFile.read(rs) - registerFile.read(rt));
+        count(OpcodeClass.ARITHMETIC);
         break;
       case 36: // and
         registerFile.write(rd, registerFile.read(rs)&registerFile.read(rt));
+        count(OpcodeClass.LOGICAL);
         break;
       case 37: // or
         registerFile.write(rd, registerFile.read(rs)|registerFile.read(rt));
+        count(OpcodeClass.LOGICAL);
         break;
       case 42: // slt
         registerFile.write(rd, (registerFile.read(rs) < registerFile.read(rt)) ? 1 : 0);
+        count(OpcodeClass.ARITHMETIC);
         break;
       case 0: // sll
         registerFile.write(rd, registerFile.read(rt) << shamt);
+        count(OpcodeClass.SHIFT);
         break;
       case 2: // srl
         registerFile.write(rd, registerFile.read(rt) >>> shamt);
+        count(OpcodeClass.SHIFT);
         break;
       case 8: // jr
         programCounter = registerFile.read(rs);
         isBranchOrJump = true;
+        if(callStackProfiler != null && rs == 31){
+          callStackProfiler.exitFunction(programCounter);
+        }
+        count(OpcodeClass.JUMP);
         break;
       default:
         System.out.println("Unsupported R-Type Function Code: " + funct);
     }
   }
 
+  private void count(OpcodeClass opcodeClass) {
+    opcodeClassCounts[opcodeClass.ordinal()]++;
+  }
+
   /**
    * Executes the addi instruction. Uses global variables `rs`, `rt`, and `immediate` to perform the
    * operation and updates the target register.
@@ -208,7 +824,7 @@ public class Simulator {
    */
   private void lw() {
     int address = registerFile.read(rs) - immediate; // Calculate the effective address
-    registerFile.write(rt, dataMemory.load(address)); // Load value from memory into the register
+    registerFile.write(rt, load(address, 4)); // Load value from memory into the register
   }
 
   /**
@@ -217,7 +833,89 @@ public class Simulator {
    */
   private void sw() {
     int address = registerFile.read(rs) - immediate; // Calculate the effective address
-    dataMemory.store(address, registerFile.read(rt)); // Store the value into memory
+    store(address, 4, registerFile.read(rt)); // Store the value into memory
+  }
+
+  /**
+   * Executes the lb, lh, lbu and lhu instructions. Loads a byte or halfword at the address computed
+   * like for lw, sign- or zero-extended by the opcode, into the target register.
+   */
+  private void loadPartial() {
+    int address = registerFile.read(rs) - immediate;
+    int value = switch(opcode){
+      case "100000" -> load(address, 1); // lb
+      case "100001" -> load(address, 2); // lh
+      case "100100" -> load(address, 1)&0xFF; // lbu
+      default -> load(address, 2)&0xFFFF; // lhu
+    };
+    registerFile.write(rt, value);
+  }
+
+  /**
+   * Executes the sb and sh instructions. Stores the low byte or halfword of the target register at
+   * the address computed like for sw.
+   */
+  private void storePartial() {
+    int address = registerFile.read(rs) - immediate;
+    store(address, opcode.equals("101000") ? 1 : 2, registerFile.read(rt)); // sb or sh
+  }
+
+  /**
+   * Loads a value of the given width, sign-extended, from data memory or, with unified memory,
+   * from the program.
+   *
+   * @param address The effective address, naming the lowest byte in the program and the highest
+   * byte in data memory, see {@link DataMemory}.
+   * @param width The access width in bytes: 1, 2 or 4.
+   *
+   * @return The loaded value.
+   */
+  private int load(int address, int width) {
+    if(isProgramAddress(address)){
+      int shift = (4 - width - (address&3)) * 8;
+      DataMemory.checkAlignment(address, width, address);
+      int word = instructionMemory.loadWord(address&~3);
+      return width == 4 ? word : width == 2 ? (short) (word >>> shift) : (byte) (word >>> shift);
+    }
+    return switch(width){
+      case 4 -> dataMemory.load(address);
+      case 2 -> dataMemory.loadHalf(address);
+      default -> dataMemory.loadByte(address);
+    };
+  }
+
+  /**
+   * Stores the low bytes of a value in data memory or, with unified memory, in the program. A
+   * store into the program decodes the instruction again, so the change takes effect the next
+   * time it executes.
+   *
+   * @param address The effective address, naming the lowest byte in the program and the highest
+   * byte in data memory, see {@link DataMemory}.
+   * @param width The access width in bytes: 1, 2 or 4.
+   * @param value The value whose low {@code width} bytes are stored.
+   */
+  private void store(int address, int width, int value) {
+    if(isProgramAddress(address)){
+      int shift = (4 - width - (address&3)) * 8;
+      DataMemory.checkAlignment(address, width, address);
+      int mask = width == 4 ? -1 : ((1 << (8 * width)) - 1) << shift;
+      int word = (instructionMemory.loadWord(address&~3)&~mask)|((value << shift)&mask);
+      instructionMemory.store(address&~3, word);
+      if(decodedProgram != null){
+        decodedProgram.invalidate((address - 0x00400000) >> 2, word);
+      }
+      return;
+    }
+    switch(width){
+      case 4 -> dataMemory.store(address, value);
+      case 2 -> dataMemory.storeHalf(address, value);
+      default -> dataMemory.storeByte(address, value);
+    }
+  }
+
+  private boolean isProgramAddress(int address) {
+    return unifiedMemory &&
+           Integer.compareUnsigned(address - 0x00400000, instructionMemory.size() * 4) < 0;
   }
 
   /**
@@ -229,6 +927,7 @@ public class Simulator {
     if(registerFile.read(rs) == registerFile.read(rt)){
       programCounter = programCounter + 4 + (immediate * 4); // Branch to target address
       isBranchOrJump = true;
+      branchesTaken++;
     }
   }
 
@@ -241,6 +940,7 @@ public class Simulator {
     if(registerFile.read(rs) != registerFile.read(rt)){
       programCounter = programCounter + 4 + (immediate * 4); // Branch to target address
       isBranchOrJump = true;
+      branchesTaken++;
     }
   }
 
@@ -259,10 +959,14 @@ public class Simulator {
    * the target address. Saves the return address in the $ra register.
    */
   private void jal() {
-    registerFile.write(31, programCounter + 4); // Save return address in $ra
+    int returnAddress = programCounter + 4;
+    registerFile.write(31, returnAddress); // Save return address in $ra
     programCounter =
             (programCounter&0xF0000000)|(targetAddress << 2); // Compute absolute jump address
     isBranchOrJump = true;
+    if(callStackProfiler != null){
+      callStackProfiler.enterFunction(programCounter, returnAddress);
+    }
   }
 
   /**
@@ -277,9 +981,19 @@ public class Simulator {
     this.instruction = "";
     this.rs = this.rt = this.rd = this.shamt = this.funct = this.immediate = this.targetAddress = 0;
     this.programCounter = 0x00400000;
-    this.dataMemory = new DataMemory();
+    this.instructionsExecuted = 0;
+    Arrays.fill(opcodeClassCounts, 0);
+    this.branchesTaken = 0;
+    if(callStackProfiler != null){
+      callStackProfiler.resetStack();
+    }
+    this.dataMemory = new DataMemory(dataMemorySize);
     this.registerFile = new RegisterFile();
     registerFile.write(29, stackPointerDefaultValue); // stack pointer default value
+    if(instructionMemory.isModified()){
+      instructionMemory.reset(); // Undo self-modifying code
+      decodedProgram = null;
+    }
   }
 
   // Getters
@@ -291,23 +1005,527 @@ public class Simulator {
     return dataMemory.getMemoryState();
   }
 
+  @Override
+  public int[] getRegisterValues() {
+    return registerFile.getRegisterValues();
+  }
+
+  @Override
+  public int[] getDataMemoryValues() {
+    return dataMemory.getMemoryValues();
+  }
+
   public String[][] getInstructionMemoryState() {
     return instructionMemory.getInstructionMemoryState();
   }
 
+  public int getDataMemorySize() {
+    return dataMemory.size();
+  }
+
   public int getInstructionMemorySize() {
     return instructionMemory.size();
   }
 
+  /**
+   * Writes a register directly, e.g. to set up the initial state of a program.
+   *
+   * @param registerNumber The register to write (1-31).
+   * @param value The value to store.
+   *
+   * @throws IndexOutOfBoundsException If the register number is out of range or is 0.
+   */
+  public void writeRegister(int registerNumber, int value) {
+    registerFile.write(registerNumber, value);
+  }
+
+  /**
+   * Loads a word from data memory directly, without counting it as an executed load. With
+   * unified memory, addresses in the program read its instructions.
+   *
+   * @param address The memory address to load from.
+   *
+   * @return The 32-bit value stored at the address.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws DataMemory.AlignmentException If the address is not word-aligned.
+   */
+  public int loadWord(int address) {
+    return load(address, 4);
+  }
+
+  /**
+   * Stores a word in data memory directly, e.g. to set up the initial state of a program. With
+   * unified memory, addresses in the program overwrite its instructions.
+   *
+   * @param address The memory address to store the value at.
+   * @param value The 32-bit value to store.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   * @throws DataMemory.AlignmentException If the address is not word-aligned.
+   */
+  public void storeWord(int address, int value) {
+    store(address, 4, value);
+  }
+
+  /**
+   * Loads a byte from data memory directly, e.g. for a debugger reading memory. With unified
+   * memory, addresses in the program read its instructions.
+   *
+   * @param address The memory address to load from.
+   *
+   * @return The byte stored at the address, sign-extended.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   */
+  public int loadByte(int address) {
+    return load(address, 1);
+  }
+
+  /**
+   * Stores a byte in data memory directly, e.g. for a debugger writing memory. With unified
+   * memory, addresses in the program overwrite its instructions.
+   *
+   * @param address The memory address to store the value at.
+   * @param value The value whose low 8 bits are stored.
+   *
+   * @throws IndexOutOfBoundsException If the address is invalid or out of range.
+   */
+  public void storeByte(int address, int value) {
+    store(address, 1, value);
+  }
+
+  /**
+   * Copies bytes into data memory directly, e.g. a dataset for the program to process.
+   *
+   * @param address The address of the first byte; the bytes fill ascending addresses.
+   * @param data The bytes to store.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within data memory.
+   */
+  public void storeBytes(int address, byte[] data) {
+    dataMemory.storeBytes(address, data, 0, data.length);
+  }
+
+  /**
+   * Copies bytes out of data memory directly.
+   *
+   * @param address The address of the first byte.
+   * @param length The number of bytes.
+   *
+   * @return The bytes, in ascending address order.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within data memory.
+   */
+  public byte[] loadBytes(int address, int length) {
+    byte[] data = new byte[length];
+    dataMemory.loadBytes(address, data, 0, length);
+    return data;
+  }
+
+  /**
+   * Wraps a range of data memory in a big-endian buffer that reads and writes the memory itself,
+   * for bulk transfers, see {@link MemoryImage}. The buffer stays valid until the memory is
+   * replaced by {@link #reset()} or a context switch.
+   *
+   * @param address The address of the first byte.
+   * @param length The number of bytes.
+   *
+   * @return The buffer.
+   *
+   * @throws IndexOutOfBoundsException If the range does not lie within data memory.
+   */
+  public ByteBuffer getDataMemoryBuffer(int address, int length) {
+    return dataMemory.buffer(address, length);
+  }
+
+  /**
+   * Retrieves the lowest address of data memory, where a dataset filling it would start.
+   *
+   * @return The address of the lowest byte.
+   */
+  public int getDataMemoryLowestAddress() {
+    return dataMemory.getLowestAddress();
+  }
+
   public String getInstruction(int address) {
     return instructionMemory.load(address);
   }
 
+  /**
+   * Retrieves the live data memory, for a {@link Watchdog} tracking its dirty pages.
+   */
+  DataMemory dataMemory() {
+    return dataMemory;
+  }
+
+  /**
+   * Retrieves the live instruction memory, for a {@link Watchdog} noticing self-modified code.
+   */
+  InstructionMemory instructionMemory() {
+    return instructionMemory;
+  }
+
+  /**
+   * Moves the program counter, e.g. for a debugger. A finished program can then be resumed.
+   *
+   * @param address The address of the next instruction to execute.
+   */
+  public void setProgramCounter(int address) {
+    this.programCounter = address;
+    this.isFinished = false;
+  }
+
+  /**
+   * Sets a breakpoint that {@link #run(long)} stops at.
+   *
+   * @param address The instruction address.
+   */
+  public void addBreakpoint(int address) {
+    breakpoints.add(address);
+    breakpointTable = null;
+  }
+
+  /**
+   * Removes a breakpoint.
+   *
+   * @param address The instruction address.
+   */
+  public void removeBreakpoint(int address) {
+    breakpoints.remove(address);
+    breakpointTable = null;
+  }
+
+  /**
+   * Checks whether a breakpoint is set at an address.
+   *
+   * @param address The instruction address.
+   *
+   * @return Whether {@link #run(long)} stops at the address.
+   */
+  public boolean hasBreakpoint(int address) {
+    return breakpoints.contains(address);
+  }
+
+  @Override
   public boolean isFinished() {
     return isFinished;
   }
 
+  @Override
   public int getProgramCounter() {
     return programCounter;
   }
+
+  /**
+   * Retrieves the source line of every instruction, if the simulator assembled the program.
+   *
+   * @return A new array of 1-based line numbers by instruction index, or null if unknown.
+   */
+  public int[] getSourceLines() {
+    return sourceLines == null ? null : sourceLines.clone();
+  }
+
+  /**
+   * Retrieves the symbol table of the assembled program.
+   *
+   * @return An unmodifiable map of label names to their addresses, in source order.
+   */
+  public Map<String, Integer> getLabels() {
+    return labels;
+  }
+
+  /**
+   * Attaches a call-stack profiler that is notified of every executed instruction, {@code jal} and
+   * {@code jr $ra}. Pass null to detach it.
+   *
+   * @param profiler The profiler to attach, or null.
+   */
+  public void setCallStackProfiler(CallStackProfiler profiler) {
+    this.callStackProfiler = profiler;
+  }
+
+  /**
+   * Attaches instruction and branch coverage that records every executed instruction, on every
+   * execution path of the simulator. It belongs to the loaded program, see
+   * {@link #switchContext(Context)}. Pass null to detach it.
+   *
+   * @param coverage The coverage to record into, created for this simulator's program, or null.
+   */
+  public void setCoverage(Coverage coverage) {
+    this.coverage = coverage;
+  }
+
+  /**
+   * Attaches a timing model that is notified of every committed instruction. The model only
+   * observes, so the functional result is unaffected. Pass null to detach it.
+   *
+   * @param model The timing model to attach, or null.
+   */
+  public void setTimingModel(OutOfOrderTimingModel model) {
+    removeExecutionListener(timingModel);
+    this.timingModel = model;
+    addExecutionListener(model);
+  }
+
+  /**
+   * Attaches a reuse-distance profiler that is notified of every load and store address. Pass
+   * null to detach it.
+   *
+   * @param profiler The profiler to attach, or null.
+   */
+  public void setReuseDistanceProfiler(ReuseDistanceProfiler profiler) {
+    removeExecutionListener(reuseDistanceProfiler);
+    this.reuseDistanceProfiler = profiler;
+    addExecutionListener(profiler);
+  }
+
+  /**
+   * Attaches a listener that is notified of every completed instruction, see
+   * {@link ExecutionListener}. While any listener is attached, {@link #run(long)} executes one
+   * {@link #step()} at a time. Null is ignored.
+   *
+   * @param listener The listener to attach.
+   */
+  public void addExecutionListener(ExecutionListener listener) {
+    if(listener == null) return;
+    listeners = Arrays.copyOf(listeners, listeners.length + 1);
+    listeners[listeners.length - 1] = listener;
+  }
+
+  /**
+   * Detaches a listener attached with {@link #addExecutionListener(ExecutionListener)}. Does
+   * nothing if it is not attached.
+   *
+   * @param listener The listener to detach.
+   */
+  public void removeExecutionListener(ExecutionListener listener) {
+    for(int i = 0; i < listeners.length; i++){
+      if(listeners[i] == listener){
+        ExecutionListener[] remaining = new ExecutionListener[listeners.length - 1];
+        System.arraycopy(listeners, 0, remaining, 0, i);
+        System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+        listeners = remaining;
+        return;
+      }
+    }
+  }
+
+  /**
+   * The state of one program when several share this simulator, switched by a {@link Scheduler}:
+   * its address space, registers, exception PC and coverage. A context is only ever loaded into
+   * one simulator at a time.
+   */
+  public static final class Context {
+    private InstructionMemory instructionMemory;
+    private Map<String, Integer> labels;
+    private int[] sourceLines;
+    private int dataMemorySize;
+    private DataMemory dataMemory;
+    private RegisterFile registerFile;
+    private DecodedProgram decodedProgram;
+    private int exceptionProgramCounter = 0x00400000;
+    private boolean finished;
+    private Coverage coverage;
+
+    private Context() {}
+
+    /**
+     * Retrieves the exception PC: the address at which the program resumes, saved when it was
+     * last switched out. No guest code sees it; it is only the resume address.
+     *
+     * @return The exception program counter.
+     */
+    public int getExceptionProgramCounter() {
+      return exceptionProgramCounter;
+    }
+
+    /**
+     * Checks whether the program had finished when it was last switched out.
+     *
+     * @return True if the program has finished.
+     */
+    public boolean isFinished() {
+      return finished;
+    }
+
+    /**
+     * Retrieves the register values saved when the program was last switched out.
+     *
+     * @return A new array of the 32 register values.
+     */
+    public int[] getRegisterValues() {
+      return registerFile.getRegisterValues();
+    }
+
+    /**
+     * Retrieves the data memory saved when the program was last switched out.
+     *
+     * @return The memory words, in the order of {@link Simulator#getDataMemoryValues()}.
+     */
+    public int[] getDataMemoryValues() {
+      return dataMemory.getMemoryValues();
+    }
+  }
+
+  /**
+   * Creates the context of another program, ready to run from its first instruction with a fresh
+   * data memory and registers, for {@link #switchContext(Context)}. Its instruction memory is just
+   * large enough for the program.
+   *
+   * @param binaryInstructions Binary machine code instructions.
+   * @param labels The symbol table of the program, or an empty map if unknown.
+   * @param dataMemorySize The data memory size in bytes.
+   *
+   * @return The new context.
+   */
+  public static Context createContext(List<String> binaryInstructions, Map<String, Integer> labels,
+                                      int dataMemorySize) {
+    Context context = new Context();
+    context.instructionMemory = new InstructionMemory(binaryInstructions,
+                                                      programSize(binaryInstructions));
+    context.labels = labels;
+    context.dataMemorySize = dataMemorySize;
+    context.dataMemory = new DataMemory(dataMemorySize);
+    context.registerFile = new RegisterFile();
+    context.registerFile.write(29, 0xFFFFFFFF);
+    return context;
+  }
+
+  /**
+   * Retrieves the context of the program currently loaded, the one the simulator was created with
+   * until the first switch.
+   *
+   * @return The current context. Its exception PC and finished flag are only up to date once it
+   * has been switched out.
+   */
+  public Context getContext() {
+    if(context == null){
+      context = new Context();
+      context.instructionMemory = instructionMemory;
+      context.labels = labels;
+      context.sourceLines = sourceLines;
+      context.dataMemorySize = dataMemorySize;
+    }
+    return context;
+  }
+
+  /**
+   * Switches to another program, as an operating system does on a timer interrupt. No interrupt
+   * is simulated: the host calls this between runs, so guest code never traps and no handler
+   * runs. The current program counter is saved as the exception PC of the current context, and
+   * the next context's address space, registers, exception PC and coverage are loaded. Coverage
+   * is indexed by the instructions of one program, so it stays with its context; attach it after
+   * switching to the program it covers. Listeners, profilers, breakpoints and the execution
+   * statistics belong to the simulator and carry over.
+   *
+   * @param next The context to resume.
+   */
+  public void switchContext(Context next) {
+    Context current = getContext();
+    if(next == current) return;
+    current.dataMemory = dataMemory;
+    current.registerFile = registerFile;
+    current.decodedProgram = decodedProgram;
+    current.exceptionProgramCounter = programCounter;
+    current.finished = isFinished;
+    current.coverage = coverage;
+
+    context = next;
+    instructionMemory = next.instructionMemory;
+    labels = next.labels;
+    sourceLines = next.sourceLines;
+    dataMemorySize = next.dataMemorySize;
+    dataMemory = next.dataMemory;
+    registerFile = next.registerFile;
+    decodedProgram = next.decodedProgram;
+    programCounter = next.exceptionProgramCounter;
+    isFinished = next.finished;
+    coverage = next.coverage;
+    breakpointTable = null;
+  }
+
+  /**
+   * Enables or disables superinstructions in {@link #run(long)}. Disabling them still runs from
+   * the pre-decoded program, one instruction per dispatch.
+   *
+   * @param enabled Whether to fuse common instruction pairs.
+   */
+  public void setSuperinstructionsEnabled(boolean enabled) {
+    this.superinstructionsEnabled = enabled;
+  }
+
+  /**
+   * Enables or disables loop fast-forwarding in {@link #run(long)}. Loops whose body only computes
+   * registers are then interpreted one instruction at a time like any other code.
+   *
+   * @param enabled Whether to fast-forward register-only loops.
+   */
+  public void setLoopFastForwardEnabled(boolean enabled) {
+    this.loopFastForwardEnabled = enabled;
+  }
+
+  /**
+   * Enables or disables the unified address space. When enabled, loads and stores whose address
+   * lies in the program, from 0x00400000 up to the last instruction, read and write the
+   * instructions as big-endian words, so programs can patch or generate their own code. A store
+   * into the program decodes only the instruction it changes again, together with the
+   * superinstructions and loops that include it; unmodified code stays pre-decoded. A reset
+   * restores the program as loaded. Disabled by default, in which case such addresses are outside
+   * data memory and fault as before.
+   *
+   * @param enabled Whether loads and stores reach the program.
+   */
+  public void setUnifiedMemoryEnabled(boolean enabled) {
+    this.unifiedMemory = enabled;
+  }
+
+  /**
+   * Checks whether loads and stores reach the program, see {@link #setUnifiedMemoryEnabled}.
+   *
+   * @return True if the address space is unified.
+   */
+  public boolean isUnifiedMemoryEnabled() {
+    return unifiedMemory;
+  }
+
+  /**
+   * Retrieves the number of instructions executed since construction or the last reset.
+   *
+   * @return The instruction count.
+   */
+  public long getInstructionsExecuted() {
+    return instructionsExecuted;
+  }
+
+  /**
+   * Retrieves the number of executed instructions belonging to the given class.
+   *
+   * @param opcodeClass The instruction class.
+   *
+   * @return The instruction count for that class.
+   */
+  public long getOpcodeClassCount(OpcodeClass opcodeClass) {
+    return opcodeClassCounts[opcodeClass.ordinal()];
+  }
+
+  /**
+   * Retrieves the executed instruction counts of all classes.
+   *
+   * @return A copy of the counts, indexed by {@link OpcodeClass#ordinal()}.
+   */
+  public long[] getOpcodeClassCounts() {
+    return opcodeClassCounts.clone();
+  }
+
+  /**
+   * Retrieves the number of conditional branches taken since construction or the last reset.
+   * Together with {@link #getOpcodeClassCount(OpcodeClass)} for {@link OpcodeClass#BRANCH} this
+   * gives the taken ratio.
+   *
+   * @return The taken branch count.
+   */
+  public long getBranchesTaken() {
+    return branchesTaken;
+  }
 }
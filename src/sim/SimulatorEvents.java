@@ -0,0 +1,72 @@
+package sim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Custom JDK Flight Recorder events emitted by the simulator. They show up under the "MIPS
+ * Simulator" category in JDK Mission Control and cost next to nothing while no recording is
+ * active.
+ */
+final class SimulatorEvents {
+  private SimulatorEvents() {}
+
+  /**
+   * Emitted once per assembly, covering the time spent in {@link Assembler#assemble(String)}.
+   */
+  @Name("sim.Assemble")
+  @Label("Assemble")
+  @Category("MIPS Simulator")
+  @Description("Assembly of a source program into machine code")
+  static class AssembleEvent extends Event {
+    @Label("Source Lines")
+    int sourceLines;
+
+    @Label("Instructions")
+    int instructions;
+  }
+
+  /**
+   * Spans one call of {@link Simulator#run(long)}, from the first executed step until it stops or
+   * finishes. Drivers that run in chunks, such as {@link SimulationController}, record one event
+   * per chunk; single steps record none.
+   */
+  @Name("sim.Run")
+  @Label("Run")
+  @Category("MIPS Simulator")
+  @Description("A continuous run of the simulator")
+  static class RunEvent extends Event {
+    @Label("Instructions Executed")
+    long instructions;
+
+    @Label("Start PC")
+    int startProgramCounter;
+
+    @Label("End PC")
+    int endProgramCounter;
+
+    @Label("Finished")
+    boolean finished;
+  }
+
+  /**
+   * Emitted when an instruction faults, e.g. on an invalid memory address or program counter.
+   */
+  @Name("sim.Fault")
+  @Label("Fault")
+  @Category("MIPS Simulator")
+  @Description("An instruction raised an exception")
+  static class FaultEvent extends Event {
+    @Label("PC")
+    int programCounter;
+
+    @Label("Instruction")
+    String instruction;
+
+    @Label("Message")
+    String message;
+  }
+}
@@ -0,0 +1,290 @@
+package sim;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * JMX MBean publishing the execution statistics of one {@link Simulator} run by a
+ * {@link SimulationController}, or the combined statistics of the simulators of a worker pool
+ * collected in {@link Totals}. Each registration appears in JConsole or VisualVM as
+ * {@code sim:type=Simulator,id=<n>}.
+ * <p>
+ * Attributes are read from the controller's latest published snapshot or from the totals, never
+ * from a simulator itself, so JMX threads see consistent values without racing the simulation
+ * threads. The
+ * execution rate is measured by the MBean over fixed windows of
+ * {@value #SAMPLE_INTERVAL_MILLIS} ms, so reading it changes nothing and any number of clients
+ * see the same value.
+ */
+public class SimulatorMetrics implements SimulatorMetricsMBean {
+  private static final long SAMPLE_INTERVAL_MILLIS = 1_000;
+  private static final AtomicInteger nextId = new AtomicInteger();
+  private static final ScheduledExecutorService sampler =
+          Executors.newSingleThreadScheduledExecutor(
+                  Thread.ofPlatform().name("sim-metrics").daemon().factory());
+
+  private final Supplier<Counters> source;
+  private final ObjectName objectName;
+  private final ScheduledFuture<?> sampling;
+  private volatile double instructionsPerSecond;
+
+  // Only touched by the sampler thread
+  private long lastSampleTime;
+  private long lastSampleInstructions;
+
+  /**
+   * The attributes at one point in time.
+   */
+  private record Counters(long instructionsExecuted, long[] opcodeClassCounts, int programCounter,
+                          boolean finished) {}
+
+  /**
+   * Thread-safe running totals of any number of simulators, e.g. the jobs of a server's worker
+   * pool. Each worker {@link #track(Simulator) tracks} its simulator and
+   * {@link Tracker#update() updates} the totals between chunks of execution. The program counter
+   * is that of the most recently updated simulator, and the totals count as finished while no
+   * simulator is tracked.
+   */
+  public static final class Totals {
+    private final LongAdder instructionsExecuted = new LongAdder();
+    private final LongAdder[] opcodeClassCounts;
+    private final AtomicInteger tracked = new AtomicInteger();
+    private volatile int programCounter = 0x00400000;
+
+    public Totals() {
+      opcodeClassCounts = new LongAdder[Simulator.OpcodeClass.values().length];
+      for(int i = 0; i < opcodeClassCounts.length; i++){
+        opcodeClassCounts[i] = new LongAdder();
+      }
+    }
+
+    /**
+     * Starts adding the execution of a simulator to the totals.
+     *
+     * @param simulator The simulator, only ever read by the thread calling the tracker.
+     *
+     * @return The tracker. Close it when the simulator is done.
+     */
+    public Tracker track(Simulator simulator) {
+      tracked.incrementAndGet();
+      return new Tracker(simulator);
+    }
+
+    private Counters counters() {
+      long[] counts = new long[opcodeClassCounts.length];
+      for(int i = 0; i < counts.length; i++){
+        counts[i] = opcodeClassCounts[i].sum();
+      }
+      return new Counters(instructionsExecuted.sum(), counts, programCounter, tracked.get() == 0);
+    }
+
+    /**
+     * Adds what one simulator executed since the last update to the totals.
+     */
+    public final class Tracker implements AutoCloseable {
+      private final Simulator simulator;
+      private final long[] reportedCounts;
+      private long reportedInstructions;
+      private boolean closed;
+
+      private Tracker(Simulator simulator) {
+        this.simulator = simulator;
+        this.reportedInstructions = simulator.getInstructionsExecuted();
+        this.reportedCounts = simulator.getOpcodeClassCounts();
+      }
+
+      /**
+       * Adds the instructions executed since the previous update to the totals. Must be called by
+       * the thread running the simulator.
+       */
+      public void update() {
+        long instructions = simulator.getInstructionsExecuted();
+        instructionsExecuted.add(instructions - reportedInstructions);
+        reportedInstructions = instructions;
+        long[] counts = simulator.getOpcodeClassCounts();
+        for(int i = 0; i < counts.length; i++){
+          opcodeClassCounts[i].add(counts[i] - reportedCounts[i]);
+          reportedCounts[i] = counts[i];
+        }
+        programCounter = simulator.getProgramCounter();
+      }
+
+      /**
+       * Makes a final update and stops tracking the simulator.
+       */
+      @Override
+      public void close() {
+        if(closed) return;
+        closed = true;
+        update();
+        tracked.decrementAndGet();
+      }
+    }
+  }
+
+  private SimulatorMetrics(Supplier<Counters> source, ObjectName objectName) {
+    this.source = source;
+    this.objectName = objectName;
+    this.lastSampleTime = System.nanoTime();
+    this.lastSampleInstructions = source.get().instructionsExecuted();
+    this.sampling = sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS,
+                                                SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Registers an MBean for the simulator of the given controller with the platform MBean server.
+   *
+   * @param controller The controller running the simulator to expose.
+   *
+   * @return The registered MBean. Call {@link #unregister()} when the simulator is discarded.
+   *
+   * @throws IllegalStateException If the MBean cannot be registered.
+   */
+  public static SimulatorMetrics register(SimulationController controller) {
+    return register(()->{
+      SimulationController.Snapshot snapshot = controller.snapshot();
+      return new Counters(snapshot.instructionsExecuted(), snapshot.opcodeClassCounts(),
+                          snapshot.programCounter(), snapshot.finished());
+    });
+  }
+
+  /**
+   * Registers an MBean for the combined execution of many simulators with the platform MBean
+   * server, e.g. for a {@link SimulationServer}'s workers.
+   *
+   * @param totals The totals the simulators are tracked in.
+   *
+   * @return The registered MBean. Call {@link #unregister()} when the simulators are discarded.
+   *
+   * @throws IllegalStateException If the MBean cannot be registered.
+   */
+  public static SimulatorMetrics register(Totals totals) {
+    return register(totals::counters);
+  }
+
+  private static SimulatorMetrics register(Supplier<Counters> source) {
+    try{
+      ObjectName name = new ObjectName("sim:type=Simulator,id=" + nextId.getAndIncrement());
+      SimulatorMetrics metrics = new SimulatorMetrics(source, name);
+      try{
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+      } catch(InstanceAlreadyExistsException | MBeanRegistrationException |
+              NotCompliantMBeanException e){
+        metrics.sampling.cancel(false);
+        throw e;
+      }
+      return metrics;
+    } catch(MalformedObjectNameException | InstanceAlreadyExistsException |
+            MBeanRegistrationException | NotCompliantMBeanException e){
+      throw new IllegalStateException("Could not register simulator MBean", e);
+    }
+  }
+
+  /**
+   * Removes this MBean from the platform MBean server. Does nothing if it is already removed.
+   */
+  public void unregister() {
+    sampling.cancel(false);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try{
+      server.unregisterMBean(objectName);
+    } catch(InstanceNotFoundException e){
+      // Already unregistered
+    } catch(MBeanRegistrationException e){
+      throw new IllegalStateException("Could not unregister simulator MBean", e);
+    }
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * Measures the execution rate of the window that just ended.
+   */
+  private void sample() {
+    long now = System.nanoTime();
+    long instructions = source.get().instructionsExecuted();
+    double seconds = (now - lastSampleTime) / 1e9;
+    // A reset rewinds the counter; report the rate of the new run only
+    long delta = instructions >= lastSampleInstructions ?
+                 instructions - lastSampleInstructions :
+                 instructions;
+
+    lastSampleTime = now;
+    lastSampleInstructions = instructions;
+    instructionsPerSecond = seconds > 0 ? delta / seconds : 0;
+  }
+
+  @Override
+  public long getInstructionsExecuted() {
+    return source.get().instructionsExecuted();
+  }
+
+  @Override
+  public double getInstructionsPerSecond() {
+    return instructionsPerSecond;
+  }
+
+  @Override
+  public long getArithmeticInstructions() {
+    return count(Simulator.OpcodeClass.ARITHMETIC);
+  }
+
+  @Override
+  public long getLogicalInstructions() {
+    return count(Simulator.OpcodeClass.LOGICAL);
+  }
+
+  @Override
+  public long getShiftInstructions() {
+    return count(Simulator.OpcodeClass.SHIFT);
+  }
+
+  @Override
+  public long getBranchInstructions() {
+    return count(Simulator.OpcodeClass.BRANCH);
+  }
+
+  @Override
+  public long getJumpInstructions() {
+    return count(Simulator.OpcodeClass.JUMP);
+  }
+
+  @Override
+  public long getMemoryReads() {
+    return count(Simulator.OpcodeClass.LOAD);
+  }
+
+  @Override
+  public long getMemoryWrites() {
+    return count(Simulator.OpcodeClass.STORE);
+  }
+
+  @Override
+  public String getProgramCounter() {
+    return String.format("0x%08X", source.get().programCounter());
+  }
+
+  @Override
+  public boolean isFinished() {
+    return source.get().finished();
+  }
+
+  private long count(Simulator.OpcodeClass opcodeClass) {
+    return source.get().opcodeClassCounts()[opcodeClass.ordinal()];
+  }
+}
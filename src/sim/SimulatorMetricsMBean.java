@@ -0,0 +1,42 @@
+package sim;
+
+/**
+ * JMX management interface exposing live execution statistics of a {@link Simulator}, or of all
+ * simulators tracked in a {@link SimulatorMetrics.Totals}. Values are read from the latest snapshot
+ * published by the {@link SimulationController} or from the totals, so they may lag slightly behind
+ * the simulation threads.
+ */
+public interface SimulatorMetricsMBean {
+  long getInstructionsExecuted();
+
+  /**
+   * Retrieves the execution rate over the last complete sampling window, the same for every
+   * caller. Reads 0 until the first window has ended.
+   *
+   * @return The number of instructions executed per second.
+   */
+  double getInstructionsPerSecond();
+
+  long getArithmeticInstructions();
+
+  long getLogicalInstructions();
+
+  long getShiftInstructions();
+
+  long getBranchInstructions();
+
+  long getJumpInstructions();
+
+  long getMemoryReads();
+
+  long getMemoryWrites();
+
+  /**
+   * Retrieves the current program counter formatted as a hexadecimal address.
+   *
+   * @return The program counter, e.g. {@code 0x00400000}.
+   */
+  String getProgramCounter();
+
+  boolean isFinished();
+}
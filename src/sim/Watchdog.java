@@ -0,0 +1,255 @@
+package sim;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stops runaway programs in unattended runs with a diagnostic instead of letting them spin
+ * forever: a run is limited to a number of steps and an amount of wall-clock time, and is stopped
+ * as soon as it provably makes no progress.
+ * <p>
+ * Progress is checked by hashing the whole machine state every {@code checkInterval} steps: the
+ * PC, the registers, the data memory and, if the program has modified itself, its code. The
+ * simulator is deterministic, so a program that reaches the same state twice loops forever. Only
+ * the data memory pages written since the last check are hashed again, so checks stay cheap for
+ * large memories. The hashes are compared with Brent's cycle detection, which keeps one earlier
+ * hash and finds a repeating sequence of states within a few times its period, whatever the
+ * period. Loops that keep changing the state, such as a counter that never reaches its bound, are
+ * caught by the budgets instead. A repeat is recognized by 64-bit hashes, so a false alarm is
+ * possible in theory but vanishingly unlikely.
+ * <p>
+ * {@link #run(Simulator)} runs a program under the watchdog. Callers driving the simulator
+ * themselves, such as {@link SimulationController} or a loop of {@link Simulator#step()}, call
+ * {@link #start(Simulator)} once and {@link #check()} regularly.
+ */
+public class Watchdog {
+  private static final int CHUNK = 10_000;
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /**
+   * Why the watchdog stopped a program.
+   */
+  public enum Reason {STEP_BUDGET, TIME_BUDGET, REPEATED_STATE}
+
+  /**
+   * Raised when the watchdog stops a program, with a message saying where and why.
+   */
+  public static class WatchdogException extends RuntimeException {
+    private final Reason reason;
+    private final long steps;
+    private final int programCounter;
+
+    public WatchdogException(Reason reason, long steps, int programCounter, String message) {
+      super(message);
+      this.reason = reason;
+      this.steps = steps;
+      this.programCounter = programCounter;
+    }
+
+    public Reason getReason() {
+      return reason;
+    }
+
+    /**
+     * Retrieves the number of steps the run had executed when it was stopped.
+     *
+     * @return The step count.
+     */
+    public long getSteps() {
+      return steps;
+    }
+
+    public int getProgramCounter() {
+      return programCounter;
+    }
+  }
+
+  private final long maxSteps;
+  private final long maxNanos;
+  private final long checkInterval;
+
+  private Simulator simulator;
+  private long startInstructions, startTime, lastHashSteps;
+
+  // Hash of the data memory, updated from its dirty pages
+  private DataMemory hashedMemory;
+  private long[] pageHashes;
+  private long memoryHash;
+
+  // Brent's cycle detection over the state hashes
+  private long savedHash, savedSteps, power, length;
+  private boolean saved;
+
+  /**
+   * Creates a watchdog.
+   *
+   * @param maxSteps The steps a run may execute, or {@link Long#MAX_VALUE} for no limit.
+   * @param maxMillis The wall-clock milliseconds a run may take, or {@link Long#MAX_VALUE} for no
+   * limit.
+   * @param checkInterval The steps between state hashes, or 0 to disable the detection of
+   * repeated states.
+   */
+  public Watchdog(long maxSteps, long maxMillis, long checkInterval) {
+    if(maxSteps < 0 || maxMillis < 0 || checkInterval < 0){
+      throw new IllegalArgumentException("Budgets and check interval must not be negative");
+    }
+    this.maxSteps = maxSteps;
+    this.maxNanos = maxMillis >= Long.MAX_VALUE / 1_000_000 ?
+                    Long.MAX_VALUE :
+                    maxMillis * 1_000_000;
+    this.checkInterval = checkInterval;
+  }
+
+  /**
+   * Starts watching a run of a simulator from its current state. The budgets count from here.
+   *
+   * @param simulator The simulator about to run.
+   */
+  public void start(Simulator simulator) {
+    this.simulator = simulator;
+    this.startInstructions = simulator.getInstructionsExecuted();
+    this.startTime = System.nanoTime();
+    this.lastHashSteps = 0;
+    this.hashedMemory = null;
+    this.saved = false;
+    this.power = 1;
+    this.length = 0;
+  }
+
+  /**
+   * Checks the budgets and, every {@code checkInterval} steps, whether the state repeats. Cheap
+   * enough to call after every step.
+   *
+   * @throws WatchdogException If a budget is spent or the program loops forever.
+   * @throws IllegalStateException If {@link #start(Simulator)} was not called.
+   */
+  public void check() {
+    if(simulator == null){
+      throw new IllegalStateException("Watchdog was not started");
+    }
+    long steps = simulator.getInstructionsExecuted() - startInstructions;
+    if(steps >= maxSteps){
+      throw stop(Reason.STEP_BUDGET, steps, "step budget of " + maxSteps + " steps spent");
+    }
+    if(maxNanos != Long.MAX_VALUE && System.nanoTime() - startTime >= maxNanos){
+      throw stop(Reason.TIME_BUDGET, steps,
+                 "time budget of " + maxNanos / 1_000_000 + " ms spent");
+    }
+    if(checkInterval > 0 && steps - lastHashSteps >= checkInterval){
+      lastHashSteps = steps;
+      long hash = hashState();
+      if(saved && hash == savedHash){
+        throw stop(Reason.REPEATED_STATE, steps,
+                   "the PC, registers and memory are the same as at step " + savedSteps +
+                   ", so the program loops forever");
+      }
+      if(++length == power){
+        savedHash = hash;
+        savedSteps = steps;
+        saved = true;
+        power *= 2;
+        length = 0;
+      }
+    }
+  }
+
+  /**
+   * Runs a simulator under the watchdog until the program finishes or stops at a breakpoint.
+   *
+   * @param simulator The simulator to run.
+   *
+   * @return The number of steps executed.
+   *
+   * @throws WatchdogException If a budget is spent or the program loops forever.
+   */
+  public long run(Simulator simulator) {
+    start(simulator);
+    int endAddress = 0x00400000 + simulator.getInstructionMemorySize() * 4;
+    while(!simulator.isFinished()){
+      long remaining = maxSteps - (simulator.getInstructionsExecuted() - startInstructions);
+      if(remaining <= 0 && simulator.getProgramCounter() == endAddress){
+        simulator.step(); // Only marks the program finished, executes nothing
+        break;
+      }
+      check();
+      long chunk = Math.min(remaining, checkInterval > 0 ? Math.min(checkInterval, CHUNK) : CHUNK);
+      if(simulator.run(chunk) < chunk && !simulator.isFinished()) break; // Breakpoint
+    }
+    return simulator.getInstructionsExecuted() - startInstructions;
+  }
+
+  private long hashState() {
+    long hash = simulator.getProgramCounter();
+    for(int value : simulator.getRegisterValues()){
+      hash = (hash + value) * MULTIPLIER;
+    }
+    hash = (hash + hashMemory()) * MULTIPLIER;
+    InstructionMemory code = simulator.instructionMemory();
+    if(code.isModified()){
+      for(int i = 0; i < code.size(); i++){
+        hash = (hash + code.load(0x00400000 + i * 4).hashCode()) * MULTIPLIER;
+      }
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Hashes the data memory as the sum of its mixed page hashes, so that a dirty page is updated
+   * by replacing its term. A memory not seen before, e.g. after a reset, is hashed whole.
+   */
+  private long hashMemory() {
+    DataMemory memory = simulator.dataMemory();
+    long[] dirty = memory.dirtyPages();
+    if(memory != hashedMemory){
+      hashedMemory = memory;
+      pageHashes = new long[memory.pageCount()];
+      memoryHash = 0;
+      for(int page = 0; page < pageHashes.length; page++){
+        pageHashes[page] = memory.hashPage(page);
+        memoryHash += mix(pageHashes[page]);
+      }
+      Arrays.fill(dirty, 0);
+      return memoryHash;
+    }
+    for(int i = 0; i < dirty.length; i++){
+      long bits = dirty[i];
+      dirty[i] = 0;
+      while(bits != 0){
+        int page = (i << 6)|Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        long pageHash = memory.hashPage(page);
+        memoryHash += mix(pageHash) - mix(pageHashes[page]);
+        pageHashes[page] = pageHash;
+      }
+    }
+    return memoryHash;
+  }
+
+  /**
+   * Finalizes a hash so that every input bit affects every output bit (MurmurHash3's fmix64).
+   */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  private WatchdogException stop(Reason reason, long steps, String detail) {
+    int programCounter = simulator.getProgramCounter();
+    String instruction = "";
+    try{
+      Map<Integer, String> labels = new HashMap<>();
+      simulator.getLabels().forEach((label, address)->labels.putIfAbsent(address, label));
+      instruction = " (" + Disassembler.disassemble(simulator.getInstruction(programCounter),
+                                                    programCounter, labels) + ")";
+    } catch(IndexOutOfBoundsException e){
+      // The PC is outside the program
+    }
+    return new WatchdogException(reason, steps, programCounter,
+                                 String.format("Stopped after %d steps at 0x%08X%s: %s", steps,
+                                               programCounter, instruction, detail));
+  }
+}
@@ -0,0 +1,335 @@
+package sim;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic assembly workloads of arbitrary size for scaling and stress tests. Every
+ * workload only uses instructions the {@link Assembler} supports, is reproducible from its
+ * parameters and seed, and carries its expected final state, which the generator derives from the
+ * structure of the code it emits rather than by running it.
+ * <p>
+ * The expected state is also appended to the source as comments, one per written register or
+ * memory word: {@code # expect $t0 = 20} and {@code # expect mem[0xFFFFFFFF] = 136}.
+ */
+public final class WorkloadGenerator {
+  private static final int TEXT_BASE = 0x00400000;
+  private static final int STACK_BASE = 0xFFFFFFFF;
+
+  // Registers straight-line code may write: $t0-$t9 and $s0-$s7
+  private static final int[] WRITABLE = {8, 9, 10, 11, 12, 13, 14, 15, 24, 25,
+                                         16, 17, 18, 19, 20, 21, 22, 23};
+
+  private WorkloadGenerator() {}
+
+  /**
+   * A generated program and its expected final state.
+   *
+   * @param name A name describing the parameters.
+   * @param source The assembly source, ending in {@code # expect} comments.
+   * @param instructions The number of instructions of the program.
+   * @param dataWords The number of data memory words the program needs.
+   * @param registers The expected value of every register written, by register number.
+   * @param memory The expected value of every memory word written, by address.
+   */
+  public record Workload(String name, String source, int instructions, int dataWords,
+                         Map<Integer, Integer> registers, Map<Integer, Integer> memory) {
+    /**
+     * Assembles the workload into a simulator whose memories are just large enough for it.
+     *
+     * @return A simulator ready to run the workload.
+     *
+     * @throws Assembler.AssemblerException If the program cannot be assembled.
+     */
+    public Simulator simulator() throws Assembler.AssemblerException {
+      Assembler assembler = new Assembler();
+      List<String> binary = assembler.assemble(source);
+      return Simulator.forProgram(binary, assembler.getLabels(), Math.max(4, dataWords * 4));
+    }
+  }
+
+  /**
+   * Collects the emitted source and the expected state of a workload.
+   */
+  private static final class Builder {
+    private final StringBuilder source = new StringBuilder();
+    private final Map<Integer, Integer> registers = new LinkedHashMap<>();
+    private final Map<Integer, Integer> memory = new LinkedHashMap<>();
+    private int instructions;
+    private int dataWords;
+
+    Builder(String description) {
+      source.append("# ").append(description).append('\n');
+    }
+
+    /**
+     * Emits an instruction.
+     *
+     * @return The address of the instruction.
+     */
+    int emit(String instruction) {
+      source.append(instruction).append('\n');
+      return TEXT_BASE + 4 * instructions++;
+    }
+
+    /**
+     * Emits a label for the next instruction.
+     *
+     * @return The address of the label.
+     */
+    int label(String label) {
+      source.append(label).append(":\n");
+      return TEXT_BASE + 4 * instructions;
+    }
+
+    void expectRegister(int register, int value) {
+      registers.put(register, value);
+    }
+
+    void expectMemory(int address, int value) {
+      memory.put(address, value);
+      dataWords = Math.max(dataWords, (STACK_BASE - address) / 4 + 1);
+    }
+
+    Workload build(String name) {
+      for(Map.Entry<Integer, Integer> register : registers.entrySet()){
+        source.append("# expect ").append(RegisterFile.registerName(register.getKey()))
+              .append(" = ").append(register.getValue()).append('\n');
+      }
+      for(Map.Entry<Integer, Integer> word : memory.entrySet()){
+        source.append(String.format("# expect mem[0x%08X] = %d%n", word.getKey(),
+                                    word.getValue()));
+      }
+      return new Workload(name, source.toString(), instructions, Math.max(1, dataWords),
+                          Map.copyOf(registers), Map.copyOf(memory));
+    }
+  }
+
+  /**
+   * Generates straight-line register arithmetic without branches or memory accesses.
+   *
+   * @param instructions The number of instructions.
+   * @param seed The random seed.
+   *
+   * @return The workload.
+   */
+  public static Workload straightLine(int instructions, long seed) {
+    if(instructions <= 0){
+      throw new IllegalArgumentException("Instruction count must be positive: " + instructions);
+    }
+    Random random = new Random(seed);
+    Builder builder = new Builder(instructions + " instructions of straight-line code, seed "
+                                  + seed);
+    int[] values = new int[32];
+    values[29] = STACK_BASE;
+
+    for(int i = 0; i < instructions; i++){
+      int rd = WRITABLE[random.nextInt(WRITABLE.length)];
+      int rs = WRITABLE[random.nextInt(WRITABLE.length)];
+      int rt = WRITABLE[random.nextInt(WRITABLE.length)];
+      String d = RegisterFile.registerName(rd), s = RegisterFile.registerName(rs);
+      String t = RegisterFile.registerName(rt);
+      int value;
+      switch(i < WRITABLE.length ? 0 : random.nextInt(8)){
+        case 0 -> {
+          int immediate = random.nextInt(65536) - 32768;
+          // Initialize every register once before mixing them
+          if(i < WRITABLE.length){
+            rd = WRITABLE[i];
+            d = RegisterFile.registerName(rd);
+            builder.emit("addi " + d + ", $zero, " + immediate);
+            value = immediate;
+          } else {
+            builder.emit("addi " + d + ", " + s + ", " + immediate);
+            value = values[rs] + immediate;
+          }
+        }
+        case 1 -> {
+          builder.emit("add " + d + ", " + s + ", " + t);
+          value = values[rs] + values[rt];
+        }
+        case 2 -> {
+          builder.emit("sub " + d + ", " + s + ", " + t);
+          value = values[rs] - values[rt];
+        }
+        case 3 -> {
+          builder.emit("and " + d + ", " + s + ", " + t);
+          value = values[rs]&values[rt];
+        }
+        case 4 -> {
+          builder.emit("or " + d + ", " + s + ", " + t);
+          value = values[rs]|values[rt];
+        }
+        case 5 -> {
+          builder.emit("slt " + d + ", " + s + ", " + t);
+          value = values[rs] < values[rt] ? 1 : 0;
+        }
+        case 6 -> {
+          int shamt = random.nextInt(32);
+          builder.emit("sll " + d + ", " + t + ", " + shamt);
+          value = values[rt] << shamt;
+        }
+        default -> {
+          int shamt = random.nextInt(32);
+          builder.emit("srl " + d + ", " + t + ", " + shamt);
+          value = values[rt] >>> shamt;
+        }
+      }
+      values[rd] = value;
+      builder.expectRegister(rd, value);
+    }
+    return builder.build("straight-" + instructions + "-" + seed);
+  }
+
+  /**
+   * Generates counted loops nested {@code depth} deep, each running {@code trips} times, around a
+   * body that counts the innermost iterations in $v0 and sums the innermost counter in $v1.
+   *
+   * @param depth The nesting depth, 1 to 8. Loop counters are $s0 to $s7.
+   * @param trips The iterations per loop, 1 to 32767.
+   * @param seed The random seed, choosing the initial value of $v0.
+   *
+   * @return The workload.
+   */
+  public static Workload nestedLoops(int depth, int trips, long seed) {
+    if(depth < 1 || depth > 8 || trips < 1 || trips > Short.MAX_VALUE){
+      throw new IllegalArgumentException("Invalid loop nest: depth " + depth + ", trips " + trips);
+    }
+    Random random = new Random(seed);
+    Builder builder = new Builder(depth + " nested loops of " + trips + " iterations, seed "
+                                  + seed);
+    int start = random.nextInt(1000);
+    builder.emit("addi $v0, $zero, " + start);
+    for(int level = 0; level < depth; level++){
+      builder.emit("addi $s" + level + ", $zero, " + trips);
+      builder.label("loop" + level);
+    }
+    String innermost = "$s" + (depth - 1);
+    builder.emit("addi $v0, $v0, 1");
+    builder.emit("add $v1, $v1, " + innermost);
+    for(int level = depth - 1; level >= 0; level--){
+      builder.emit("addi $s" + level + ", $s" + level + ", -1");
+      builder.emit("bne $s" + level + ", $zero, loop" + level);
+    }
+
+    // The innermost body runs trips^depth times, summing trips + ... + 1 per innermost loop
+    int outerIterations = 1;
+    for(int level = 0; level < depth - 1; level++){
+      outerIterations *= trips;
+    }
+    int sumPerLoop = (int) ((long) trips * (trips + 1) / 2);
+    builder.expectRegister(2, start + outerIterations * trips);
+    builder.expectRegister(3, outerIterations * sumPerLoop);
+    for(int level = 0; level < depth; level++){
+      builder.expectRegister(16 + level, 0);
+    }
+    return builder.build("loops-" + depth + "x" + trips + "-" + seed);
+  }
+
+  /**
+   * Generates a chain of {@code depth} functions, each calling the next with {@code jal}. Every
+   * non-leaf function pushes $ra and its argument $a0 on the stack, adds a random amount to $a0
+   * for its callee, and after the call restores both and adds its argument to $v0.
+   *
+   * @param depth The number of functions.
+   * @param seed The random seed, choosing the argument increments.
+   *
+   * @return The workload.
+   */
+  public static Workload callChain(int depth, long seed) {
+    if(depth < 1){
+      throw new IllegalArgumentException("Call depth must be positive: " + depth);
+    }
+    Random random = new Random(seed);
+    Builder builder = new Builder("call chain of depth " + depth + ", seed " + seed);
+    int initialArgument = random.nextInt(1000), argument = initialArgument;
+    builder.emit("addi $a0, $zero, " + argument);
+    int returnAddress = builder.emit("jal f0") + 4;
+    builder.emit("j done");
+
+    int stackPointer = STACK_BASE;
+    int sum = 0;
+    for(int level = 0; level < depth - 1; level++){
+      int increment = random.nextInt(100);
+      stackPointer -= 8;
+      builder.label("f" + level);
+      builder.emit("addi $sp, $sp, -8");
+      builder.emit("sw $ra, 4($sp)");
+      builder.emit("sw $a0, 0($sp)");
+      builder.emit("addi $a0, $a0, " + increment);
+      int nextReturnAddress = builder.emit("jal f" + (level + 1)) + 4;
+      builder.emit("lw $ra, 4($sp)");
+      builder.emit("lw $a0, 0($sp)");
+      builder.emit("add $v0, $v0, $a0");
+      builder.emit("addi $sp, $sp, 8");
+      builder.emit("jr $ra");
+
+      builder.expectMemory(stackPointer - 4, returnAddress);
+      builder.expectMemory(stackPointer, argument);
+      sum += argument;
+      argument += increment;
+      returnAddress = nextReturnAddress;
+    }
+    builder.label("f" + (depth - 1));
+    builder.emit("add $v0, $v0, $a0");
+    builder.emit("jr $ra");
+    builder.label("done");
+    sum += argument;
+
+    builder.expectRegister(2, sum);
+    builder.expectRegister(4, initialArgument);
+    builder.expectRegister(29, STACK_BASE);
+    builder.expectRegister(31, TEXT_BASE + 8);
+    return builder.build("calls-" + depth + "-" + seed);
+  }
+
+  /**
+   * Generates {@code passes} sweeps over a memory footprint, incrementing every {@code stride}-th
+   * word by a random amount with a load, add and store.
+   *
+   * @param footprintWords The number of words the sweep spans, starting at $sp.
+   * @param strideWords The distance between accessed words, 1 to 8192.
+   * @param passes The number of sweeps, 1 to 32767.
+   * @param seed The random seed, choosing the increment.
+   *
+   * @return The workload.
+   */
+  public static Workload memorySweep(int footprintWords, int strideWords, int passes, long seed) {
+    int accesses = footprintWords <= 0 || strideWords <= 0 ? 0
+                                                           : (footprintWords - 1) / strideWords + 1;
+    if(accesses < 1 || accesses > Short.MAX_VALUE || strideWords > 8192 || passes < 1
+       || passes > Short.MAX_VALUE){
+      throw new IllegalArgumentException("Invalid sweep: footprint " + footprintWords
+                                         + ", stride " + strideWords + ", passes " + passes);
+    }
+    Random random = new Random(seed);
+    Builder builder = new Builder("sweep of " + footprintWords + " words with stride "
+                                  + strideWords + ", " + passes + " passes, seed " + seed);
+    int increment = 1 + random.nextInt(1000);
+    builder.emit("addi $s2, $zero, " + passes);
+    builder.label("pass");
+    builder.emit("addi $t0, $sp, 0");
+    builder.emit("addi $s1, $zero, " + accesses);
+    builder.label("sweep");
+    builder.emit("lw $t1, 0($t0)");
+    builder.emit("addi $t1, $t1, " + increment);
+    builder.emit("sw $t1, 0($t0)");
+    builder.emit("addi $t0, $t0, " + (-4 * strideWords));
+    builder.emit("addi $s1, $s1, -1");
+    builder.emit("bne $s1, $zero, sweep");
+    builder.emit("addi $s2, $s2, -1");
+    builder.emit("bne $s2, $zero, pass");
+
+    for(int i = 0; i < accesses; i++){
+      builder.expectMemory(STACK_BASE - 4 * i * strideWords, passes * increment);
+    }
+    builder.expectRegister(8, STACK_BASE - 4 * accesses * strideWords);
+    builder.expectRegister(9, passes * increment);
+    builder.expectRegister(17, 0);
+    builder.expectRegister(18, 0);
+    return builder.build("sweep-" + footprintWords + "x" + strideWords + "x" + passes + "-"
+                         + seed);
+  }
+}
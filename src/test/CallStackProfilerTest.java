@@ -0,0 +1,82 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.CallStackProfiler;
+import sim.ExecutionListener;
+import sim.Simulator;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallStackProfilerTest {
+
+  @Test
+  void testNestedCallsProduceCollapsedStacks() throws Exception {
+    String testCode = """
+                      main:
+                      addi $t0, $zero, 3
+                      jal outer
+                      j end
+                      outer:
+                      sw $ra, 0($sp)
+                      jal inner
+                      jal inner
+                      lw $ra, 0($sp)
+                      jr $ra
+                      inner:
+                      addi $t1, $t1, 1
+                      jr $ra
+                      end:
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    CallStackProfiler profiler = new CallStackProfiler(simulator.getLabels(), 1);
+    simulator.setCallStackProfiler(profiler);
+    simulator.run(Long.MAX_VALUE);
+
+    StringBuilder collapsed = new StringBuilder();
+    profiler.writeCollapsed(collapsed);
+    assertEquals("main 3\nmain;outer 5\nmain;outer;inner 4\n", collapsed.toString());
+    assertEquals(Map.of("main", 12L, "outer", 9L, "inner", 4L), profiler.getInclusiveSamples());
+  }
+
+  @Test
+  void testDecodedRunSamplesLikeStepping() throws Exception {
+    // The loop in work is fast-forwarded and the pairs around it fused on the decoded path
+    String testCode = """
+                      main:
+                      addi $s0, $zero, 5
+                      again:
+                      jal work
+                      addi $s0, $s0, -1
+                      bne $s0, $zero, again
+                      j end
+                      work:
+                      addi $t0, $zero, 0
+                      addi $t1, $zero, 1000
+                      loop:
+                      addi $t0, $t0, 1
+                      add $t2, $t2, $t0
+                      bne $t0, $t1, loop
+                      jr $ra
+                      end:
+                      """;
+    Simulator decoded = new Simulator(testCode);
+    CallStackProfiler decodedProfiler = new CallStackProfiler(decoded.getLabels(), 7);
+    decoded.setCallStackProfiler(decodedProfiler);
+    decoded.run(Long.MAX_VALUE);
+
+    Simulator stepped = new Simulator(testCode);
+    CallStackProfiler steppedProfiler = new CallStackProfiler(stepped.getLabels(), 7);
+    stepped.setCallStackProfiler(steppedProfiler);
+    stepped.addExecutionListener(new ExecutionListener() {}); // Forces single steps
+    stepped.run(Long.MAX_VALUE);
+
+    StringBuilder decodedStacks = new StringBuilder(), steppedStacks = new StringBuilder();
+    decodedProfiler.writeCollapsed(decodedStacks);
+    steppedProfiler.writeCollapsed(steppedStacks);
+    assertEquals(steppedStacks.toString(), decodedStacks.toString());
+    assertEquals(decoded.getInstructionsExecuted() / 7,
+                 (long) decodedProfiler.getInclusiveSamples().get("main"));
+  }
+}
@@ -0,0 +1,99 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Coverage;
+import sim.DifferentialHarness;
+import sim.Simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverageTest {
+
+  @Test
+  void testReports() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 5
+                      # Double until 20
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      beq $t0, $zero, skip
+                      sw $t0, 0($sp)
+                      skip:
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    Coverage coverage = new Coverage(simulator);
+    simulator.setCoverage(coverage);
+    simulator.run(Long.MAX_VALUE);
+
+    StringBuilder report = new StringBuilder();
+    coverage.writeReport(report, testCode);
+    assertEquals("""
+                     1 +   addi $t1, $zero, 20
+                     2 +   addi $t0, $zero, 5
+                     3     # Double until 20
+                     4     test1:
+                     5 +   add $t0, $t0, $t0
+                     6 +TN bne $t0, $t1, test1
+                     7 +N  beq $t0, $zero, skip
+                     8 +   sw $t0, 0($sp)
+                     9     skip:
+                 Instructions: 6/6 (100.0%), branch outcomes: 3/4 (75.0%)
+                 """, report.toString());
+
+    StringBuilder lcov = new StringBuilder();
+    coverage.writeLcov(lcov, "double.asm");
+    assertEquals("""
+                 TN:
+                 SF:double.asm
+                 DA:1,1
+                 DA:2,1
+                 DA:5,1
+                 DA:6,1
+                 DA:7,1
+                 DA:8,1
+                 BRDA:6,0,0,1
+                 BRDA:6,0,1,1
+                 BRDA:7,0,0,0
+                 BRDA:7,0,1,1
+                 BRF:4
+                 BRH:3
+                 LF:6
+                 LH:6
+                 end_of_record
+                 """, lcov.toString());
+  }
+
+  @Test
+  void testFastPathMatchesStepping() throws Exception {
+    for(long seed = 0; seed < 100; seed++){
+      String source = DifferentialHarness.randomProgram(seed).source();
+      for(long steps : new long[]{5, 50, 100_000}){
+        Simulator fast = new Simulator(source);
+        Coverage fastCoverage = new Coverage(fast);
+        fast.setCoverage(fastCoverage);
+        Simulator stepped = new Simulator(source);
+        Coverage steppedCoverage = new Coverage(stepped);
+        stepped.setCoverage(steppedCoverage);
+        try{
+          fast.run(steps);
+        } catch(RuntimeException e){
+          // Faults are part of the comparison
+        }
+        try{
+          for(long i = 0; i < steps && !stepped.isFinished(); i++){
+            stepped.step();
+          }
+        } catch(RuntimeException e){
+          // Likewise
+        }
+
+        StringBuilder expected = new StringBuilder(), actual = new StringBuilder();
+        steppedCoverage.writeLcov(expected, "random.asm");
+        fastCoverage.writeLcov(actual, "random.asm");
+        assertEquals(expected.toString(), actual.toString(), "seed " + seed + ", " + steps);
+      }
+    }
+  }
+}
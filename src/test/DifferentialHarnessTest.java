@@ -0,0 +1,102 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.DifferentialHarness;
+import sim.Simulator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifferentialHarnessTest {
+
+  @Test
+  void testCorpusAndRandomProgramsAgree() throws Exception {
+    List<DifferentialHarness.Program> programs = new ArrayList<>();
+    for(int i = 1; i <= 3; i++){
+      programs.add(DifferentialHarness.loadProgram(Path.of("src/test/test_code_" + i + ".asm")));
+    }
+    for(long seed = 0; seed < 200; seed++){
+      programs.add(DifferentialHarness.randomProgram(seed));
+    }
+
+    DifferentialHarness harness = new DifferentialHarness(Simulator::forProgram, 1_000_000, 1,
+                                                          128);
+    assertEquals(List.of(), harness.checkAll(programs, 4));
+  }
+
+  @Test
+  void testDecodedEnginesAgreeAtCheckpoints() throws Exception {
+    List<DifferentialHarness.Program> programs = new ArrayList<>();
+    for(long seed = 1000; seed < 1200; seed++){
+      programs.add(DifferentialHarness.randomProgram(seed));
+    }
+
+    // An odd interval makes checkpoints split superinstructions
+    DifferentialHarness fused = new DifferentialHarness(Simulator::forProgram, 1_000_000, 7, 128);
+    assertEquals(List.of(), fused.checkAll(programs, 4));
+
+    DifferentialHarness decoded = new DifferentialHarness((source, dataMemorySize)->{
+      Simulator simulator = Simulator.forProgram(source, dataMemorySize);
+      simulator.setSuperinstructionsEnabled(false);
+      return simulator;
+    }, 1_000_000, 1000, 128);
+    assertEquals(List.of(), decoded.checkAll(programs, 4));
+  }
+
+  @Test
+  void testProgramsLargerThanDefaultMemories() throws Assembler.AssemblerException {
+    // 128 instructions storing into a 1 KB stack, then a fast-forwarded loop
+    StringBuilder testCode = new StringBuilder();
+    for(int i = 0; i < 64; i++){
+      testCode.append("addi $t0, $zero, ").append(i).append('\n');
+      testCode.append("sw $t0, ").append(i * 4).append("($sp)\n");
+    }
+    testCode.append("""
+                    addi $t1, $zero, 1000
+                    loop:
+                    addi $t2, $t2, 3
+                    addi $t1, $t1, -1
+                    bne $t1, $zero, loop
+                    """);
+
+    DifferentialHarness harness = new DifferentialHarness(Simulator::forProgram, 1_000_000, 5,
+                                                          1024);
+    assertNull(harness.check(new DifferentialHarness.Program("large", testCode.toString())));
+  }
+
+  @Test
+  void testRandomProgramsAreReproducibleAndTerminate() throws Assembler.AssemblerException {
+    for(long seed = 0; seed < 50; seed++){
+      String source = DifferentialHarness.randomProgram(seed).source();
+      assertEquals(source, DifferentialHarness.randomProgram(seed).source());
+
+      Simulator simulator = new Simulator(source);
+      simulator.run(1_000_000);
+      assertTrue(simulator.isFinished(), "seed " + seed + " did not terminate");
+    }
+  }
+
+  @Test
+  void testReportsFirstDivergentInstruction() throws Assembler.AssemblerException {
+    String testCode = """
+                      addi $t0, $zero, 1
+                      addi $t1, $zero, 2
+                      add $t2, $t0, $t1
+                      sw $t2, 0($sp)
+                      """;
+    DifferentialHarness harness = new DifferentialHarness(
+            (source, dataMemorySize)->Simulator.forProgram(source.replace("add $t2", "sub $t2"),
+                                                           dataMemorySize), 1000, 100, 128);
+
+    DifferentialHarness.Divergence divergence =
+            harness.check(new DifferentialHarness.Program("broken", testCode));
+    assertNotNull(divergence);
+    assertEquals(2, divergence.step());
+    assertEquals(0x00400008, divergence.programCounter());
+    assertTrue(divergence.detail().startsWith("register $t2"), divergence.detail());
+  }
+}
@@ -0,0 +1,100 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.DifferentialHarness;
+import sim.Disassembler;
+import sim.Simulator;
+import sim.WorkloadGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisassemblerTest {
+
+  @Test
+  void testInstructions() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, -20
+                      test1:
+                      add $t0, $t0, $t0
+                      sll $t2, $t0, 3
+                      lbu $a0, -4($sp)
+                      sw $t0, 8($sp)
+                      bne $t0, $t1, test1
+                      jal test1
+                      jr $ra
+                      done:
+                      """;
+    Disassembler disassembler = new Disassembler(new Simulator(testCode));
+    StringBuilder listing = new StringBuilder();
+    disassembler.writeListing(listing);
+    assertEquals("""
+                 addi $t1, $zero, -20
+                 test1:
+                 add $t0, $t0, $t0
+                 sll $t2, $t0, 3
+                 lbu $a0, -4($sp)
+                 sw $t0, 8($sp)
+                 bne $t0, $t1, test1
+                 jal test1
+                 jr $ra
+                 done:
+                 """, listing.toString());
+    assertEquals("test1", disassembler.labelAt(0x00400004));
+    assertSame(disassembler.disassemble(0x00400008), disassembler.disassemble(0x00400008));
+    assertThrows(IndexOutOfBoundsException.class, ()->disassembler.disassemble(0x00400020));
+    assertThrows(IndexOutOfBoundsException.class, ()->disassembler.disassemble(0x00400002));
+
+    // Without labels, targets are addresses; unknown words stay visible
+    assertEquals("beq $t0, $zero, 0x00400000",
+                 Disassembler.disassemble(0x1100FFFF, 0x00400000, Map.of()));
+    assertEquals("j 0x00400010", Disassembler.disassemble(0x08100004, 0x00400000, Map.of()));
+    assertEquals(".word 0xFC000000", Disassembler.disassemble(0xFC000000, 0x00400000, Map.of()));
+  }
+
+  @Test
+  void testListingReassembles() throws Exception {
+    List<String> sources = new ArrayList<>();
+    for(long seed = 0; seed < 200; seed++){
+      sources.add(DifferentialHarness.randomProgram(seed).source());
+    }
+    sources.add(WorkloadGenerator.callChain(4, 1).source());
+    sources.add(WorkloadGenerator.nestedLoops(3, 10, 2).source());
+    for(String source : sources){
+      Assembler assembler = new Assembler();
+      List<String> binary = assembler.assemble(source);
+      for(Map<String, Integer> labels : List.of(assembler.getLabels(), Map.<String, Integer>of())){
+        Simulator simulator = Simulator.forProgram(binary, labels, 128);
+        StringBuilder listing = new StringBuilder();
+        new Disassembler(simulator).writeListing(listing);
+        assertEquals(binary, new Assembler().assemble(listing.toString()), source);
+      }
+    }
+  }
+
+  @Test
+  void testListingLabelsUnlabeledTargets() throws Exception {
+    List<String> binary = new Assembler().assemble("""
+                                                   loop:
+                                                   addi $t0, $t0, -1
+                                                   bne $t0, $zero, loop
+                                                   j done
+                                                   addi $t1, $zero, 1
+                                                   done:
+                                                   """);
+    StringBuilder listing = new StringBuilder();
+    new Disassembler(Simulator.forProgram(binary, Map.of(), 128)).writeListing(listing);
+    assertEquals("""
+                 L_00400000:
+                 addi $t0, $t0, -1
+                 bne $t0, $zero, L_00400000
+                 j L_00400010
+                 addi $t1, $zero, 1
+                 L_00400010:
+                 """, listing.toString());
+  }
+}
@@ -0,0 +1,72 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.ExecutionListener;
+import sim.Simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionListenerTest {
+
+  @Test
+  void testEventsInExecutionOrder() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 10
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      sb $t1, 4($sp)
+                      lh $t2, 4($sp)
+                      """;
+    List<String> events = new ArrayList<>();
+    ExecutionListener recorder = new ExecutionListener() {
+      @Override
+      public void instructionRetired(int address, int instruction, int nextAddress) {
+        events.add(String.format("retire %x -> %x", address, nextAddress));
+      }
+
+      @Override
+      public void memoryLoaded(int address, int width, int value) {
+        events.add(String.format("load %x/%d = %d", address, width, value));
+      }
+
+      @Override
+      public void memoryStored(int address, int width, int value) {
+        events.add(String.format("store %x/%d = %d", address, width, value));
+      }
+
+      @Override
+      public void branchResolved(int address, int target, boolean taken) {
+        events.add(String.format("branch %x -> %x %s", address, target, taken ? "taken" : "not"));
+      }
+
+      @Override
+      public void registerWritten(int registerNumber, int value) {
+        events.add("write $" + registerNumber + " = " + value);
+      }
+    };
+    Simulator simulator = new Simulator(testCode);
+    simulator.addExecutionListener(recorder);
+    simulator.run(Long.MAX_VALUE);
+
+    assertEquals(List.of("write $9 = 20", "retire 400000 -> 400004",
+                         "write $8 = 10", "retire 400004 -> 400008",
+                         "write $8 = 20", "retire 400008 -> 40000c",
+                         "branch 40000c -> 400008 not", "retire 40000c -> 400010",
+                         "store fffffffb/1 = 20", "retire 400010 -> 400014",
+                         "load fffffffb/2 = 20", "write $10 = 20", "retire 400014 -> 400018"),
+                 events);
+
+    // Detached listeners see nothing, and the fast path resumes
+    events.clear();
+    simulator.removeExecutionListener(recorder);
+    simulator.reset();
+    simulator.run(Long.MAX_VALUE);
+    assertTrue(events.isEmpty());
+    assertEquals(20, simulator.getRegisterValues()[10]);
+  }
+}
@@ -0,0 +1,128 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.GdbServer;
+import sim.Simulator;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GdbServerTest {
+
+  @Test
+  void testDebugSession() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 5
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      sw $t0, 0($sp)
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    try(GdbServer server = new GdbServer(simulator)){
+      InetSocketAddress address = (InetSocketAddress) server.start(
+              new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      try(Socket socket = new Socket(address.getAddress(), address.getPort())){
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+
+        assertTrue(exchange(in, out, "qSupported:multiprocess+").startsWith("PacketSize="));
+        assertEquals("S05", exchange(in, out, "?"));
+
+        String registers = exchange(in, out, "g");
+        assertEquals(38 * 8, registers.length());
+        assertEquals("ffffffff", registers.substring(29 * 8, 30 * 8)); // $sp
+        assertEquals("00400000", registers.substring(37 * 8)); // pc
+
+        // The first instruction, addi $t1, $zero, 20
+        assertEquals("20090014", exchange(in, out, "m400000,4"));
+
+        assertEquals("OK", exchange(in, out, "Z0,400008,4"));
+        assertEquals("S05", exchange(in, out, "c"));
+        assertEquals("00400008", exchange(in, out, "p25"));
+        assertEquals("S05", exchange(in, out, "c")); // Second iteration of the loop
+        assertEquals("0000000a", exchange(in, out, "p8"));
+        assertEquals("OK", exchange(in, out, "z0,400008,4"));
+
+        assertEquals("S05", exchange(in, out, "s"));
+        assertEquals("0040000c", exchange(in, out, "p25"));
+        assertEquals("OK", exchange(in, out, "P8=00000005"));
+        assertEquals("OK", exchange(in, out, "Z0,400010,4"));
+        assertEquals("S05", exchange(in, out, "c400008"));
+        assertEquals("00400010", exchange(in, out, "p25"));
+        assertEquals("00000014", exchange(in, out, "p8"));
+
+        assertEquals("S05", exchange(in, out, "s"));
+        // The word at $sp, in bytes 0xFFFFFFFC to 0xFFFFFFFF
+        assertEquals("00000014", exchange(in, out, "mfffffffc,4"));
+        assertEquals("14", exchange(in, out, "mffffffff,4")); // Stops at the top, never wraps
+        assertEquals("OK", exchange(in, out, "Mfffffffc,4:000000ff"));
+        assertEquals("W00", exchange(in, out, "c"));
+        assertEquals("E01", exchange(in, out, "m00100000,4"));
+        assertEquals("OK", exchange(in, out, "D"));
+      }
+    }
+    assertEquals(20, simulator.getRegisterValues()[8]);
+    assertEquals(0xFF, simulator.loadWord(0xFFFFFFFF));
+  }
+
+  @Test
+  void testMalformedPackets() throws Exception {
+    Simulator simulator = new Simulator("addi $t0, $zero, 1\naddi $t1, $zero, 2");
+    try(GdbServer server = new GdbServer(simulator)){
+      InetSocketAddress address = (InetSocketAddress) server.start(
+              new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      try(Socket socket = new Socket(address.getAddress(), address.getPort())){
+        socket.setSoTimeout(5_000); // Fail instead of hanging if the server died
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+
+        out.write("$g#zz".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        assertEquals('-', in.read());
+
+        // Cut short to the packet size instead of overflowing the reply buffer
+        assertEquals("2008000120090002", exchange(in, out, "m400000,40000000"));
+        assertEquals("E01", exchange(in, out, "m400000,zz"));
+      }
+
+      // The server still accepts debuggers after the first one disconnected without detaching
+      try(Socket socket = new Socket(address.getAddress(), address.getPort())){
+        socket.setSoTimeout(5_000);
+        assertEquals("S05", exchange(socket.getInputStream(), socket.getOutputStream(), "?"));
+      }
+    }
+  }
+
+  /**
+   * Sends a packet and returns the data of the reply.
+   */
+  private static String exchange(InputStream in, OutputStream out, String data) throws Exception {
+    int checksum = 0;
+    for(byte b : data.getBytes(StandardCharsets.ISO_8859_1)){
+      checksum += b;
+    }
+    out.write(String.format("$%s#%02x", data, checksum&0xFF).getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+
+    int c;
+    while((c = in.read()) != '$'){
+      assertNotEquals(-1, c);
+    }
+    StringBuilder reply = new StringBuilder();
+    while((c = in.read()) != '#'){
+      reply.append((char) c);
+    }
+    in.read();
+    in.read();
+    out.write('+');
+    return reply.toString();
+  }
+}
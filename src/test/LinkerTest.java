@@ -0,0 +1,110 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.Linker;
+import sim.Simulator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkerTest {
+  private static final String MAIN = """
+                                     addi $a0, $zero, 5
+                                     jal square
+                                     add $s0, $v0, $zero
+                                     j _end
+                                     loop:
+                                     j loop
+                                     """;
+
+  private static final String LIBRARY = """
+                                        .globl square
+                                        loop:
+                                        j loop
+                                        square:
+                                        addi $t0, $zero, 0
+                                        addi $v0, $zero, 0
+                                        loop2:
+                                        add $v0, $v0, $a0
+                                        addi $t0, $t0, 1
+                                        bne $t0, $a0, loop2
+                                        jr $ra
+                                        """;
+
+  @Test
+  void testLinkAcrossModules() throws Exception {
+    Linker linker = new Linker();
+    Linker.LinkedProgram program = linker.link(List.of(linker.assemble("main.asm", MAIN),
+                                                       linker.assemble("lib.asm", LIBRARY)));
+    assertEquals(12, program.binary().size());
+    assertEquals(0x00400018, (int) program.labels().get("square"));
+    assertEquals(0x00400010, (int) program.labels().get("loop")); // The first module keeps the name
+    assertEquals(0x00400030, (int) program.labels().get("_end"));
+    // Each module's own "loop" wins over the other's
+    assertEquals("000010" + String.format("%26s", Integer.toBinaryString(0x00400010 >> 2))
+                                  .replace(' ', '0'), program.binary().get(4));
+    assertEquals("000010" + String.format("%26s", Integer.toBinaryString(0x00400014 >> 2))
+                                  .replace(' ', '0'), program.binary().get(5));
+
+    Simulator simulator = program.simulator(128);
+    simulator.run(10_000);
+    assertEquals(25, simulator.getRegisterValues()[16]);
+    assertEquals(0x00400030, simulator.getProgramCounter());
+  }
+
+  @Test
+  void testCacheByContent() throws Exception {
+    Path directory = Files.createTempDirectory("modules");
+    try{
+      Linker linker = new Linker(directory);
+      linker.assemble("main.asm", MAIN);
+      linker.assemble("lib.asm", LIBRARY);
+      assertEquals(2, linker.getAssembledCount());
+
+      // Unchanged sources are not assembled again, edited ones are
+      Linker.ObjectModule main = linker.assemble("main.asm", MAIN);
+      Linker.ObjectModule library = linker.assemble("lib.asm", LIBRARY + "addi $t9, $zero, 1\n");
+      assertEquals(3, linker.getAssembledCount());
+      assertEquals(8, library.code().size());
+
+      // A new linker finds both modules in the cache directory
+      Linker restarted = new Linker(directory);
+      assertEquals(main, restarted.assemble("main.asm", MAIN));
+      assertEquals(library, restarted.assemble("lib.asm", LIBRARY + "addi $t9, $zero, 1\n"));
+      assertEquals(0, restarted.getAssembledCount());
+      assertEquals("other.asm", restarted.assemble("other.asm", MAIN).name());
+
+      Simulator simulator = restarted.link(List.of(main, library)).simulator(128);
+      simulator.run(10_000);
+      assertEquals(25, simulator.getRegisterValues()[16]);
+    } finally{
+      try(var files = Files.walk(directory)){
+        files.sorted((a, b)->b.compareTo(a)).forEach(path->path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  void testErrors() throws Exception {
+    Linker linker = new Linker();
+    Linker.ObjectModule main = linker.assemble("main.asm", MAIN);
+    Linker.LinkerException undefined =
+            assertThrows(Linker.LinkerException.class, ()->linker.link(List.of(main)));
+    assertEquals("Label not found: square in module main.asm", undefined.getMessage());
+
+    Linker.ObjectModule library = linker.assemble("lib.asm", LIBRARY);
+    Linker.ObjectModule copy = linker.assemble("copy.asm", LIBRARY);
+    Linker.LinkerException duplicate =
+            assertThrows(Linker.LinkerException.class, ()->linker.link(List.of(main, library, copy)));
+    assertEquals("Label exported twice: square in module copy.asm", duplicate.getMessage());
+
+    assertThrows(Assembler.AssemblerException.class,
+                 ()->linker.assemble("bad.asm", ".globl missing\naddi $t9, $zero, 1\n"));
+    // A single program still needs every jump target
+    assertThrows(Assembler.AssemblerException.class, ()->new Assembler().assemble(MAIN));
+  }
+}
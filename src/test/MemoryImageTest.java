@@ -0,0 +1,93 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.MemoryImage;
+import sim.Simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryImageTest {
+  // Sums the 1024 words at the bottom of a 4 KB data memory and doubles each in place
+  private static final String KERNEL = """
+                                       addi $a0, $sp, -4092
+                                       addi $t1, $zero, 1024
+                                       loop:
+                                       lw $t0, 0($a0)
+                                       add $s0, $s0, $t0
+                                       add $t0, $t0, $t0
+                                       sw $t0, 0($a0)
+                                       addi $a0, $a0, 4
+                                       addi $t1, $t1, -1
+                                       bne $t1, $zero, loop
+                                       """;
+
+  private static Simulator kernel() throws Assembler.AssemblerException {
+    Assembler assembler = new Assembler();
+    List<String> binary = assembler.assemble(KERNEL);
+    return Simulator.forProgram(binary, assembler.getLabels(), 4096);
+  }
+
+  @Test
+  void testLoadRunDump() throws Exception {
+    Path directory = Files.createTempDirectory("datasets");
+    try{
+      Simulator simulator = kernel();
+      int low = simulator.getDataMemoryLowestAddress();
+      assertEquals(0xFFFFF000, low);
+
+      Path csv = directory.resolve("input.csv");
+      Files.writeString(csv, "# values 1 to 1024\n0x1, 2;3\n" +
+                             IntStream.rangeClosed(4, 1024).mapToObj(Integer::toString)
+                                      .collect(Collectors.joining(",")) + "\n");
+      assertEquals(4096, MemoryImage.load(simulator, low, csv));
+      assertEquals(3, simulator.loadWord(low + 11)); // Bytes low + 8 to low + 11
+      simulator.run(Long.MAX_VALUE);
+      assertEquals(1024 * 1025 / 2, simulator.getRegisterValues()[16]);
+
+      Path binary = directory.resolve("output.bin");
+      Path text = directory.resolve("output.csv");
+      MemoryImage.dump(simulator, low, 4096, binary);
+      MemoryImage.dump(simulator, low + 4092, 4, text);
+      ByteBuffer dumped = ByteBuffer.wrap(Files.readAllBytes(binary));
+      assertEquals(4096, dumped.capacity());
+      for(int i = 0; i < 1024; i++){
+        assertEquals(2 * (i + 1), dumped.getInt(i * 4));
+      }
+      assertEquals("2048\n", Files.readString(text));
+
+      // The binary dump loads back as the same image
+      Simulator reloaded = kernel();
+      assertEquals(4096, MemoryImage.load(reloaded, low, binary));
+      assertArrayEquals(simulator.getDataMemoryValues(), reloaded.getDataMemoryValues());
+      assertArrayEquals(new int[]{6, 8}, MemoryImage.loadWords(reloaded, low + 8, 2));
+
+      assertThrows(IndexOutOfBoundsException.class,
+                   ()->MemoryImage.load(reloaded, low + 4, binary));
+      assertThrows(IndexOutOfBoundsException.class,
+                   ()->MemoryImage.dump(reloaded, low - 4, 8, binary));
+    } finally{
+      try(var files = Files.walk(directory)){
+        files.sorted((a, b)->b.compareTo(a)).forEach(path->path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  void testParseCsv() throws Exception {
+    assertArrayEquals(new int[]{-1, -1, 255, -2147483648},
+                      MemoryImage.parseCsv("-1 0xFFFFFFFF\t255 # comment, 7\n-2147483648"));
+    assertArrayEquals(new int[0], MemoryImage.parseCsv(""));
+    IOException malformed = assertThrows(IOException.class, ()->MemoryImage.parseCsv("1\n2x\n"));
+    assertEquals("Line 2: malformed value: 2x", malformed.getMessage());
+    assertThrows(IOException.class, ()->MemoryImage.parseCsv("0x100000000"));
+  }
+}
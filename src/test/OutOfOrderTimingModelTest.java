@@ -0,0 +1,109 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.OutOfOrderTimingModel;
+import sim.Simulator;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutOfOrderTimingModelTest {
+
+  @Test
+  void testWideCoreOverlapsIndependentInstructions() throws Exception {
+    String testCode = """
+                      addi $t0, $zero, 1
+                      addi $t1, $zero, 2
+                      addi $t2, $zero, 3
+                      addi $t3, $zero, 4
+                      addi $t4, $zero, 5
+                      addi $t5, $zero, 6
+                      addi $t6, $zero, 7
+                      addi $t7, $zero, 8
+                      """;
+    OutOfOrderTimingModel wide = run(testCode, OutOfOrderTimingModel.Config.defaults());
+    assertEquals(8, wide.getInstructions());
+    assertTrue(wide.getInstructionsPerCycle() > 1, wide.getInstructionsPerCycle() + " IPC");
+    assertEquals(0, wide.getStallCycles(OutOfOrderTimingModel.Stall.DATA_DEPENDENCY));
+
+    OutOfOrderTimingModel.Config defaults = OutOfOrderTimingModel.Config.defaults();
+    OutOfOrderTimingModel scalar = run(testCode, new OutOfOrderTimingModel.Config(
+            1, 64, 16, 8, 1, 0, defaults.latencies()));
+    assertTrue(scalar.getInstructionsPerCycle() <= 1);
+  }
+
+  @Test
+  void testStallBreakdown() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 5
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      sw $t0, 0($sp)
+                      lw $t2, 0($sp)
+                      add $t3, $t2, $t2
+                      """;
+    OutOfOrderTimingModel model = run(testCode, OutOfOrderTimingModel.Config.defaults());
+    assertEquals(9, model.getInstructions());
+    assertTrue(model.getStallCycles(OutOfOrderTimingModel.Stall.DATA_DEPENDENCY) > 0);
+    assertEquals(1, model.getMispredictions()); // The final fall-through of the loop
+    assertTrue(model.getStallCycles(OutOfOrderTimingModel.Stall.CONTROL) > 0);
+
+    // A long-latency load chain fills a tiny reorder buffer
+    OutOfOrderTimingModel.Config defaults = OutOfOrderTimingModel.Config.defaults();
+    Map<Simulator.OpcodeClass, Integer> latencies = new EnumMap<>(defaults.latencies());
+    latencies.put(Simulator.OpcodeClass.LOAD, 50);
+    OutOfOrderTimingModel small = run(testCode, new OutOfOrderTimingModel.Config(
+            4, 2, 2, 8, 2, 3, latencies));
+    assertTrue(small.getStallCycles(OutOfOrderTimingModel.Stall.REORDER_BUFFER_FULL) > 0);
+    assertTrue(small.getCycles() > 50);
+  }
+
+  @Test
+  void testLoadsWaitForStoresToTheSameWord() throws Exception {
+    OutOfOrderTimingModel.Config defaults = OutOfOrderTimingModel.Config.defaults();
+    Map<Simulator.OpcodeClass, Integer> latencies = new EnumMap<>(defaults.latencies());
+    latencies.put(Simulator.OpcodeClass.STORE, 50);
+    OutOfOrderTimingModel.Config config = new OutOfOrderTimingModel.Config(4, 64, 16, 8, 2, 3,
+                                                                           latencies);
+
+    // The byte store lies in the word the first load reads, but not in the second one
+    OutOfOrderTimingModel sameWord = run("sb $zero, 6($sp)\nlw $t0, 4($sp)\n", config);
+    OutOfOrderTimingModel otherWord = run("sb $zero, 6($sp)\nlw $t0, 8($sp)\n", config);
+    assertTrue(sameWord.getStallCycles(OutOfOrderTimingModel.Stall.DATA_DEPENDENCY) >= 49);
+    assertEquals(0, otherWord.getStallCycles(OutOfOrderTimingModel.Stall.DATA_DEPENDENCY));
+
+    // Stores to distinct words take turns in a single queue entry
+    OutOfOrderTimingModel.Config oneEntry = new OutOfOrderTimingModel.Config(4, 64, 1, 8, 2, 3,
+                                                                             latencies);
+    OutOfOrderTimingModel queued = run("""
+                                       sw $zero, 0($sp)
+                                       sw $zero, 4($sp)
+                                       sw $zero, 8($sp)
+                                       """, oneEntry);
+    assertTrue(queued.getStallCycles(OutOfOrderTimingModel.Stall.STORE_QUEUE_FULL) >= 100);
+  }
+
+  /**
+   * Runs a program with a timing model attached and checks that the functional result matches a
+   * run without the model.
+   */
+  private static OutOfOrderTimingModel run(String testCode, OutOfOrderTimingModel.Config config)
+          throws Exception {
+    Simulator reference = new Simulator(testCode);
+    reference.run(Long.MAX_VALUE);
+
+    Simulator simulator = new Simulator(testCode);
+    OutOfOrderTimingModel model = new OutOfOrderTimingModel(config);
+    simulator.setTimingModel(model);
+    simulator.run(Long.MAX_VALUE);
+
+    assertArrayEquals(reference.getRegisterValues(), simulator.getRegisterValues());
+    assertArrayEquals(reference.getDataMemoryValues(), simulator.getDataMemoryValues());
+    assertEquals(reference.getInstructionsExecuted(), simulator.getInstructionsExecuted());
+    return model;
+  }
+}
@@ -0,0 +1,96 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.ProgramTestRunner;
+import sim.WorkloadGenerator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramTestRunnerTest {
+
+  @Test
+  void testExpectations() {
+    ProgramTestRunner runner = new ProgramTestRunner(1_000_000);
+    String testCode = """
+                      addi $t0, $zero, 170
+                      addi $t1, $zero, 204
+                      and $t2, $t0, $t1
+                      sw $t2, 0($sp)   # expect mem[0xFFFFFFFF] = 136
+                      # expect $t2 = 0x88
+                      # expect $t1 = 204
+                      """;
+    ProgramTestRunner.Result result = runner.run("and", testCode);
+    assertTrue(result.passed(), result.failures().toString());
+    assertEquals(4, result.steps());
+
+    result = runner.run("wrong", testCode + "# expect $t0 = 171\n# expect mem[0xFFFFFFFB] = 1\n");
+    assertEquals(List.of("$t0: expected 171, was 170", "mem[0xFFFFFFFB]: expected 1, was 0"),
+                 result.failures());
+
+    String loop = """
+                  loop:
+                  addi $t0, $t0, 1
+                  j loop
+                  # max-steps 1000
+                  """;
+    result = runner.run("loop", loop);
+    assertEquals(List.of("did not finish within 1000 steps"), result.failures());
+    assertEquals(1000, result.steps());
+
+    // An endless loop that repeats its state is stopped long before the step limit
+    result = runner.run("stuck", "stuck:\nbeq $zero, $zero, stuck\n# expect fault\n");
+    assertEquals(1, result.failures().size());
+    assertTrue(result.failures().get(0).startsWith("did not finish: "), result.failures().get(0));
+    assertTrue(result.steps() < 100_000, String.valueOf(result.steps()));
+
+    assertTrue(runner.run("fault", "lw $t0, 2($sp)\n# expect fault\n").passed());
+    assertFalse(runner.run("no fault", "addi $t0, $zero, 1\n# expect fault\n").passed());
+    assertEquals(List.of("line 2: malformed expectation: $t0 == 1"),
+                 runner.run("typo", "addi $t0, $zero, 1\n# expect $t0 == 1\n").failures());
+
+    // Exactly as many steps as instructions still finishes
+    assertTrue(runner.run("exact", "addi $t0, $zero, 1\naddi $t1, $zero, 2\n# max-steps 2\n")
+                     .passed());
+  }
+
+  @Test
+  void testRunAllInParallel() throws Exception {
+    Path directory = Files.createTempDirectory("programs");
+    try{
+      List<Path> programs = new ArrayList<>();
+      for(int seed = 0; seed < 20; seed++){
+        WorkloadGenerator.Workload workload = switch(seed % 4){
+          case 0 -> WorkloadGenerator.straightLine(500, seed);
+          case 1 -> WorkloadGenerator.nestedLoops(2, 50, seed);
+          case 2 -> WorkloadGenerator.callChain(4, seed);
+          default -> WorkloadGenerator.memorySweep(4096, 3, 2, seed); // Needs 16 KB of data
+        };
+        Path program = directory.resolve("workload" + seed + ".asm");
+        Files.writeString(program, workload.source());
+        programs.add(program);
+      }
+      Path broken = directory.resolve("broken.asm");
+      Files.writeString(broken, "addi $t0, $zero, 1\n# expect $t0 = 2\n");
+      programs.add(broken);
+
+      List<ProgramTestRunner.Result> results = new ProgramTestRunner(1_000_000).runAll(programs,
+                                                                                        4);
+      assertEquals(programs.size(), results.size());
+      for(int i = 0; i < 20; i++){
+        assertEquals(programs.get(i).toString(), results.get(i).name());
+        assertTrue(results.get(i).passed(), results.get(i).failures().toString());
+        assertTrue(results.get(i).steps() > 0);
+      }
+      assertEquals(List.of("$t0: expected 2, was 1"), results.get(20).failures());
+    } finally{
+      try(var files = Files.walk(directory)){
+        files.sorted((a, b)->b.compareTo(a)).forEach(path->path.toFile().delete());
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.DifferentialHarness;
+import sim.ReuseDistanceProfiler;
+import sim.Simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReuseDistanceProfilerTest {
+
+  @Test
+  void testMissRatioCurve() throws Exception {
+    String testCode = """
+                      addi $s0, $zero, 2
+                      sw $s0, 0($sp)
+                      sw $s0, 4($sp)
+                      sw $s0, 8($sp)
+                      sw $s0, 12($sp)
+                      loop:
+                      lw $t0, 0($sp)
+                      lw $t1, 4($sp)
+                      lw $t2, 8($sp)
+                      lw $t3, 12($sp)
+                      addi $s0, $s0, -1
+                      bne $s0, $zero, loop
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    ReuseDistanceProfiler profiler = new ReuseDistanceProfiler(4, new int[]{8, 16},
+                                                               new int[]{1, 2, 0});
+    simulator.setReuseDistanceProfiler(profiler);
+    simulator.run(Long.MAX_VALUE);
+
+    StringBuilder curve = new StringBuilder();
+    profiler.writeMissRatioCurve(curve);
+    assertEquals("""
+                 size,associativity,sets,accesses,misses,miss_ratio
+                 8,1,2,12,12,1.000000
+                 8,2,1,12,12,1.000000
+                 8,full,1,12,12,1.000000
+                 16,1,4,12,4,0.333333
+                 16,2,2,12,4,0.333333
+                 16,full,1,12,4,0.333333
+                 """, curve.toString());
+
+    StringBuilder histogram = new StringBuilder();
+    profiler.writeHistogram(histogram);
+    assertEquals("distance,count\n2-3,8\ninf,4\n", histogram.toString());
+  }
+
+  @Test
+  void testSingleSetMatchesFullyAssociative() throws Exception {
+    int[] sizes = {4, 8, 16, 32, 64, 128};
+    for(long seed = 0; seed < 50; seed++){
+      Simulator simulator = new Simulator(DifferentialHarness.randomProgram(seed).source());
+      ReuseDistanceProfiler profiler = new ReuseDistanceProfiler(4, sizes,
+                                                                 new int[]{1, 2, 4, 8, 16, 32, 0});
+      simulator.setReuseDistanceProfiler(profiler);
+      simulator.run(100_000);
+
+      // A single set with as many ways as blocks is a fully associative cache
+      Map<Integer, Long> fullyAssociative = new HashMap<>();
+      for(ReuseDistanceProfiler.CacheConfig config : profiler.getConfigs()){
+        if(config.associativity() == 0){
+          fullyAssociative.put(config.size(), profiler.getMisses(config));
+        }
+      }
+      for(ReuseDistanceProfiler.CacheConfig config : profiler.getConfigs()){
+        if(config.sets() == 1){
+          assertEquals((long) fullyAssociative.get(config.size()), profiler.getMisses(config),
+                       "seed " + seed + ", " + config);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.OutOfOrderTimingModel;
+import sim.ReuseDistanceProfiler;
+import sim.SampledSimulation;
+import sim.Simulator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledSimulationTest {
+  // An arithmetic phase followed by a memory phase
+  private static final String PHASES = """
+                                       addi $t1, $zero, 3000
+                                       phase1:
+                                       add $t2, $t2, $t0
+                                       addi $t0, $t0, 1
+                                       sub $t3, $t2, $t0
+                                       bne $t0, $t1, phase1
+                                       addi $t0, $zero, 0
+                                       phase2:
+                                       sw $t0, 0($sp)
+                                       lw $t4, 0($sp)
+                                       add $t5, $t5, $t4
+                                       sw $t5, 64($sp)
+                                       addi $t0, $t0, 1
+                                       bne $t0, $t1, phase2
+                                       """;
+
+  private final Supplier<ReuseDistanceProfiler> caches =
+          ()->new ReuseDistanceProfiler(4, new int[]{64}, new int[]{1});
+
+  private SampledSimulation sampled() throws Assembler.AssemblerException {
+    Assembler assembler = new Assembler();
+    List<String> binary = assembler.assemble(PHASES);
+    return new SampledSimulation(binary, assembler.getLabels(), 128,
+                                 OutOfOrderTimingModel.Config.defaults(), caches);
+  }
+
+  @Test
+  void testEstimatesMatchFullDetailedSimulation() throws Exception {
+    SampledSimulation sampled = sampled();
+    Simulator simulator = sampled.newSimulator();
+    OutOfOrderTimingModel model = new OutOfOrderTimingModel(OutOfOrderTimingModel.Config.defaults());
+    ReuseDistanceProfiler profiler = caches.get();
+    simulator.addExecutionListener(model);
+    simulator.addExecutionListener(profiler);
+    simulator.run(Long.MAX_VALUE);
+    long instructions = simulator.getInstructionsExecuted();
+    long misses = profiler.getMisses(profiler.getConfigs().get(0));
+
+    SampledSimulation.Result periodic =
+            sampled.run(new SampledSimulation.Config(500, 200, 4, 0, 4, 1), Long.MAX_VALUE);
+    assertEquals(instructions, periodic.instructions());
+    assertEquals(61, periodic.intervals());
+    assertEquals(16, periodic.samples().size());
+    assertEquals(1.0, periodic.samples().stream().mapToDouble(SampledSimulation.Sample::weight)
+                              .sum(), 1e-9);
+    // The core settles into a slightly different steady-state schedule depending on where it
+    // starts, so cycles are only expected within a few percent
+    assertEquals(model.getCycles(), periodic.cycles(), model.getCycles() * 0.05);
+    assertEquals(profiler.getAccesses(), periodic.memoryAccesses(),
+                 profiler.getAccesses() * 0.02);
+    assertEquals(misses, periodic.misses()[0], misses * 0.05 + 5);
+
+    // Clustering finds the two phases and needs one interval of each
+    SampledSimulation.Result clustered =
+            sampled.run(new SampledSimulation.Config(500, 200, 1, 2, 4, 1), Long.MAX_VALUE);
+    assertEquals(instructions, clustered.instructions());
+    assertEquals(2, clustered.samples().size());
+    int[] intervals = clustered.samples().stream().mapToInt(SampledSimulation.Sample::interval)
+                               .sorted().toArray();
+    assertTrue(intervals[0] < 24 && intervals[1] > 24, Arrays.toString(intervals));
+    assertEquals(model.getCycles(), clustered.cycles(), model.getCycles() * 0.05);
+    assertEquals(profiler.getAccesses(), clustered.memoryAccesses(),
+                 profiler.getAccesses() * 0.05);
+  }
+
+  @Test
+  void testCheckpointRestoresState() throws Exception {
+    SampledSimulation sampled = sampled();
+    Simulator original = sampled.newSimulator();
+    original.run(13_000);
+    SampledSimulation.Checkpoint checkpoint =
+            new SampledSimulation.Checkpoint(original.getInstructionsExecuted(),
+                                             original.getProgramCounter(),
+                                             original.getRegisterValues(),
+                                             original.getDataMemoryValues());
+    Simulator restored = sampled.restore(checkpoint);
+    original.run(1_000);
+    restored.run(1_000);
+    assertEquals(original.getProgramCounter(), restored.getProgramCounter());
+    assertArrayEquals(original.getRegisterValues(), restored.getRegisterValues());
+    assertArrayEquals(original.getDataMemoryValues(), restored.getDataMemoryValues());
+
+    // A budget shorter than the program samples only what runs
+    SampledSimulation.Result result =
+            sampled.run(new SampledSimulation.Config(500, 0, 1, 0, 2, 1), 1_250);
+    assertEquals(1_250, result.instructions());
+    assertEquals(3, result.intervals());
+    assertEquals(250, result.samples().get(2).instructions());
+  }
+}
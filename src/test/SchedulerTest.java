@@ -0,0 +1,105 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.Coverage;
+import sim.Scheduler;
+import sim.Simulator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+  private static final String COUNT = """
+                                      addi $t1, $zero, 1000
+                                      loop:
+                                      addi $t0, $t0, 1
+                                      sw $t0, 0($sp)
+                                      bne $t0, $t1, loop
+                                      """;
+  private static final String SUM = """
+                                    addi $t1, $zero, 500
+                                    loop:
+                                    addi $t0, $t0, 1
+                                    add $t2, $t2, $t0
+                                    sw $t2, 4($sp)
+                                    bne $t0, $t1, loop
+                                    """;
+
+  @Test
+  void testTasksMatchRunningAlone() throws Exception {
+    Scheduler scheduler = new Scheduler(100, 10);
+    scheduler.add("count", COUNT);
+    scheduler.add("sum", SUM);
+    scheduler.add("short", "addi $t0, $zero, 7\n");
+    Scheduler.Result result = scheduler.run(Long.MAX_VALUE);
+
+    List<Scheduler.TaskResult> tasks = result.tasks();
+    String[] sources = {COUNT, SUM, "addi $t0, $zero, 7\n"};
+    for(int i = 0; i < sources.length; i++){
+      Simulator alone = new Simulator(sources[i]);
+      alone.run(Long.MAX_VALUE);
+      assertTrue(tasks.get(i).finished(), tasks.get(i).name());
+      assertNull(tasks.get(i).fault());
+      assertEquals(alone.getInstructionsExecuted(), tasks.get(i).instructions());
+      assertArrayEquals(alone.getRegisterValues(), tasks.get(i).registers());
+    }
+    assertEquals(125_250, tasks.get(1).registers()[10]);
+
+    // 3001 and 2001 instructions in slices of 100; the short task runs once
+    assertEquals(30, tasks.get(0).preemptions());
+    assertEquals(20, tasks.get(1).preemptions());
+    assertEquals(0, tasks.get(2).preemptions());
+    assertEquals(3 * 10 + 2 * 100, tasks.get(2).waitCycles()); // Three switches, two slices
+    assertEquals(5003, result.instructions());
+    assertEquals(result.instructions() + result.switchCycles(), result.cycles());
+    assertEquals(10 * result.switches(), result.switchCycles());
+    // Both long tasks alternate until sum ends; count then runs alone without switching
+    assertEquals(3 + 2 * 20 + 1, result.switches());
+    assertEquals(result.cycles(), tasks.get(0).finishCycle());
+  }
+
+  @Test
+  void testFaultsAndBudget() throws Exception {
+    Scheduler scheduler = new Scheduler(50, 0);
+    scheduler.add("fault", "addi $t0, $zero, 1\nlw $t1, 2($sp)\naddi $t0, $zero, 2\n");
+    scheduler.add("count", COUNT);
+    Scheduler.Result result = scheduler.run(Long.MAX_VALUE);
+    assertNotNull(result.tasks().get(0).fault());
+    assertEquals(1, result.tasks().get(0).registers()[8]);
+    assertTrue(result.tasks().get(1).finished());
+    assertEquals(1000, result.tasks().get(1).registers()[8]);
+
+    scheduler = new Scheduler(50, 5);
+    scheduler.add("count", COUNT);
+    scheduler.add("sum", SUM);
+    result = scheduler.run(1_000);
+    assertEquals(1_000, result.cycles());
+    assertFalse(result.tasks().get(0).finished());
+    assertFalse(result.tasks().get(1).finished());
+    assertEquals(1_000 - result.switchCycles(), result.instructions());
+    assertEquals(0.0, result.throughput(), 0);
+  }
+
+  @Test
+  void testCoverageStaysWithItsContext() throws Exception {
+    Simulator simulator = new Simulator("addi $t0, $zero, 1\nbeq $t0, $zero, end\nend:\n");
+    Coverage first = new Coverage(simulator);
+    simulator.setCoverage(first);
+    Simulator.Context firstContext = simulator.getContext();
+
+    // SUM is longer and has no coverage; none of its instructions may land in the first one's
+    Assembler assembler = new Assembler();
+    Simulator.Context sum = Simulator.createContext(assembler.assemble(SUM),
+                                                    assembler.getLabels(), 128);
+    simulator.switchContext(sum);
+    simulator.run(Long.MAX_VALUE);
+    simulator.switchContext(firstContext);
+    simulator.run(Long.MAX_VALUE);
+
+    assertEquals(2, first.getExecutedCount());
+    assertFalse(first.isTaken(1));
+    assertTrue(first.isNotTaken(1));
+  }
+}
@@ -0,0 +1,123 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.DataMemory;
+import sim.Disassembler;
+import sim.Simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelfModifyingCodeTest {
+  // Writes "addi $t0, $zero, 42" (0x2008002A) over the last instruction and reads it back
+  private static final String PATCH = """
+                                      addi $t1, $zero, 64
+                                      sll $t1, $t1, 16
+                                      addi $t2, $zero, 8200
+                                      sll $t2, $t2, 16
+                                      addi $t2, $t2, 42
+                                      sw $t2, -28($t1)
+                                      lw $t3, -28($t1)
+                                      addi $t0, $zero, 1
+                                      """;
+
+  /**
+   * Runs a program on the decoded fast path and by single steps, and checks both end in the same
+   * state. Stepping decodes every instruction from instruction memory, so it cannot run stale
+   * code.
+   */
+  private static Simulator runBothWays(String source) throws Exception {
+    Simulator fast = new Simulator(source);
+    Simulator stepped = new Simulator(source);
+    fast.setUnifiedMemoryEnabled(true);
+    stepped.setUnifiedMemoryEnabled(true);
+    fast.run(1_000_000);
+    for(int i = 0; i < 1_000_000 && !stepped.isFinished(); i++){
+      stepped.step();
+    }
+    assertArrayEquals(stepped.getRegisterValues(), fast.getRegisterValues());
+    assertEquals(stepped.getProgramCounter(), fast.getProgramCounter());
+    assertEquals(stepped.getInstructionsExecuted(), fast.getInstructionsExecuted());
+    assertArrayEquals(stepped.getDataMemoryValues(), fast.getDataMemoryValues());
+    return fast;
+  }
+
+  @Test
+  void testStoreIntoProgram() throws Exception {
+    Simulator simulator = runBothWays(PATCH);
+    assertEquals(42, simulator.getRegisterValues()[8]); // $t0
+    assertEquals(0x2008002A, simulator.getRegisterValues()[11]); // $t3
+    assertEquals(0x2008002A, simulator.loadWord(0x0040001C));
+
+    // Debugger writes go through the same path, and the disassembly follows
+    Disassembler disassembler = new Disassembler(simulator);
+    assertEquals("addi $t0, $zero, 42", disassembler.disassemble(0x0040001C));
+    simulator.storeByte(0x0040001F, 7);
+    assertEquals("addi $t0, $zero, 7", disassembler.disassemble(0x0040001C));
+
+    // A reset restores the program as loaded
+    simulator.reset();
+    assertEquals("addi $t0, $zero, 1", disassembler.disassemble(0x0040001C));
+    simulator.run(6);
+    simulator.setUnifiedMemoryEnabled(false);
+    assertThrows(IndexOutOfBoundsException.class, ()->simulator.run(1));
+  }
+
+  @Test
+  void testPatchedLoopIsDecodedAgain() throws Exception {
+    // The loop is fast-forwarded once, then its increment is patched from 1 to 3 and its sum
+    // replaced by "sw $t0, 0($sp)" (0xAFA80000), so it can no longer be fast-forwarded
+    String source = """
+                    addi $t1, $zero, 1000
+                    loop:
+                    addi $t0, $t0, 1
+                    add $t7, $t7, $t0
+                    bne $t0, $t1, loop
+                    addi $t4, $t4, 1
+                    addi $t5, $zero, 2
+                    beq $t4, $t5, done
+                    addi $t2, $zero, 8456
+                    sll $t2, $t2, 16
+                    addi $t2, $t2, 3
+                    addi $t3, $zero, 64
+                    sll $t3, $t3, 16
+                    sw $t2, -4($t3)
+                    addi $t2, $zero, -20568
+                    sll $t2, $t2, 16
+                    sw $t2, -8($t3)
+                    addi $t1, $zero, 2998
+                    j loop
+                    done:
+                    """;
+    Simulator simulator = runBothWays(source);
+    assertEquals(2998, simulator.getRegisterValues()[8]); // $t0
+    assertEquals(1 + 3 * 1000 + 3 + 11 + 3 * 666 + 3, simulator.getInstructionsExecuted());
+    assertEquals(1000 * 1001 / 2, simulator.getRegisterValues()[15]); // $t7
+    assertEquals(2998, simulator.loadWord(0xFFFFFFFF));
+  }
+
+  @Test
+  void testStoreSplitsSuperinstruction() throws Exception {
+    // The first store of a fused pair overwrites the second with "addi $t0, $zero, 42"
+    String source = """
+                    addi $t1, $zero, 64
+                    sll $t1, $t1, 16
+                    addi $t2, $zero, 8200
+                    sll $t2, $t2, 16
+                    addi $t2, $t2, 42
+                    sw $t2, -24($t1)
+                    sw $t2, 0($sp)
+                    """;
+    Simulator simulator = runBothWays(source);
+    assertEquals(42, simulator.getRegisterValues()[8]); // $t0
+    assertEquals(0, simulator.loadWord(0xFFFFFFFF));
+  }
+
+  @Test
+  void testUnalignedProgramAccessFaults() throws Exception {
+    Simulator simulator = new Simulator(PATCH);
+    simulator.setUnifiedMemoryEnabled(true);
+    assertThrows(DataMemory.AlignmentException.class, ()->simulator.storeWord(0x00400002, 0));
+    assertEquals(0x20, simulator.loadByte(0x00400000)); // addi $t1, $zero, 64 is 0x20090040
+    assertEquals(0x40, simulator.loadByte(0x00400003));
+  }
+}
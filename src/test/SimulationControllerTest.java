@@ -0,0 +1,87 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.SimulationController;
+import sim.Simulator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationControllerTest {
+
+  @Test
+  void testSnapshotsAreConsistent() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, -1
+                      loop:
+                      addi $t0, $t0, 1
+                      sw $t0, 0($sp)
+                      bne $t0, $t1, loop
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    AtomicInteger published = new AtomicInteger();
+    SimulationController controller = new SimulationController(simulator,
+                                                               _->published.incrementAndGet());
+    controller.start(()->0);
+
+    // Every snapshot holds the state of one point of the execution
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+    long previous = 0;
+    while(System.nanoTime() < deadline || published.get() < 2){
+      SimulationController.Snapshot snapshot = controller.snapshot();
+      long iterations = snapshot.registers()[8]; // $t0
+      long expected = switch(snapshot.programCounter()){
+        case 0x00400004 -> 1 + 3 * iterations;
+        case 0x00400008 -> 3 * iterations - 1;
+        default -> 3 * iterations;
+      };
+      assertEquals(expected, snapshot.instructionsExecuted(), snapshot.toString());
+      assertEquals(snapshot.programCounter() == 0x00400008 ? iterations - 1 : iterations,
+                   snapshot.memory()[0], snapshot.toString());
+      // The loop branch is always taken
+      long branches = snapshot.opcodeClassCounts()[Simulator.OpcodeClass.BRANCH.ordinal()];
+      assertEquals(snapshot.programCounter() <= 0x00400004 ? iterations : iterations - 1,
+                   branches, snapshot.toString());
+      assertEquals(branches, snapshot.branchesTaken());
+      assertTrue(snapshot.instructionsExecuted() >= previous);
+      previous = snapshot.instructionsExecuted();
+    }
+
+    controller.stop();
+    assertFalse(controller.isRunning());
+    SimulationController.Snapshot last = controller.snapshot();
+    assertArrayEquals(simulator.getRegisterValues(), last.registers());
+    assertEquals(simulator.getInstructionsExecuted(), last.instructionsExecuted());
+    assertFalse(last.finished());
+  }
+
+  @Test
+  void testRunToCompletion() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 5
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      lw $t2, 1($sp)
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    CountDownLatch stopped = new CountDownLatch(1);
+    SimulationController[] controller = new SimulationController[1];
+    controller[0] = new SimulationController(simulator, _->{
+      if(!controller[0].isRunning()) stopped.countDown();
+    });
+    assertEquals(0x00400000, controller[0].snapshot().programCounter());
+
+    controller[0].start(()->1);
+    assertTrue(stopped.await(10, TimeUnit.SECONDS));
+    SimulationController.Snapshot last = controller[0].snapshot();
+    assertEquals(20, last.registers()[8]); // $t0
+    assertEquals(6, last.instructionsExecuted());
+    assertNotNull(last.fault()); // Unaligned load
+    assertEquals("20", last.registerState()[8][1]);
+  }
+}
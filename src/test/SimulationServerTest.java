@@ -0,0 +1,152 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.SimulationServer;
+import sim.SimulatorMetrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationServerTest {
+
+  @Test
+  void testJobsOverSocket() throws Exception {
+    try(SimulationServer server = new SimulationServer(2, 4, 1_000_000, 5_000, 128)){
+      InetSocketAddress address = (InetSocketAddress) server.start(
+              new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+      try(Socket socket = new Socket(address.getAddress(), address.getPort());
+          PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+                                            StandardCharsets.UTF_8);
+          BufferedReader in = new BufferedReader(
+                  new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))){
+        out.print("""
+                  REG $t1 20
+                  SOURCE
+                  addi $t0, $zero, 5
+                  test1:
+                  add $t0, $t0, $t0
+                  bne $t0, $t1, test1
+                  sw $t0, 0($sp)
+                  END
+                  BINARY
+                  00100000000010000000000000000001
+                  END
+                  """);
+        out.flush();
+
+        List<String> first = readResponse(in);
+        assertTrue(first.get(0).startsWith("FINISHED steps=7 instructions=6"), first.get(0));
+        assertTrue(first.contains("REG $t0 20"));
+        assertTrue(first.contains("MEM 0xFFFFFFFF 20"));
+        assertTrue(first.contains("COUNT BRANCH 2"));
+
+        List<String> second = readResponse(in);
+        assertTrue(second.get(0).startsWith("FINISHED"), second.get(0));
+        assertTrue(second.contains("REG $t0 1"));
+      }
+    }
+  }
+
+  @Test
+  void testLargeProgramWithRequestedDataMemory() throws Exception {
+    try(SimulationServer server = new SimulationServer(1, 1, 1_000_000, 5_000, 128)){
+      InetSocketAddress address = (InetSocketAddress) server.start(
+              new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+      try(Socket socket = new Socket(address.getAddress(), address.getPort());
+          PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+                                            StandardCharsets.UTF_8);
+          BufferedReader in = new BufferedReader(
+                  new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))){
+        // 100 instructions, the last store 200 words below the stack pointer
+        StringBuilder request = new StringBuilder("DATA_MEMORY 1024\nSOURCE\n");
+        for(int i = 0; i < 99; i++){
+          request.append("addi $t0, $t0, 1\n");
+        }
+        request.append("sw $t0, 800($sp)\nEND\n");
+        out.print(request);
+        out.flush();
+
+        List<String> response = readResponse(in);
+        assertTrue(response.get(0).startsWith("FINISHED steps=101 instructions=100"),
+                   response.get(0));
+        assertTrue(response.contains("MEM 0xFFFFFCDF 99"), response.toString());
+      }
+    }
+  }
+
+  @Test
+  void testErrorsKeepLineFraming() throws Exception {
+    try(SimulationServer server = new SimulationServer(1, 1, 1_000, 5_000, 128)){
+      InetSocketAddress address = (InetSocketAddress) server.start(
+              new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+      try(Socket socket = new Socket(address.getAddress(), address.getPort());
+          PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+                                            StandardCharsets.UTF_8);
+          BufferedReader in = new BufferedReader(
+                  new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))){
+        out.print("SOURCE\nfoo $t0\nEND\nSOURCE\nlw $t0, 1($sp)\nEND\n");
+        out.flush();
+
+        assertEquals(List.of("ERROR ASSEMBLY Unsupported instruction: foo"), readResponse(in));
+        List<String> fault = readResponse(in);
+        assertTrue(fault.get(0).startsWith("FAULT steps=0"), fault.get(0));
+        assertTrue(fault.get(1).startsWith("MESSAGE "), fault.get(1));
+        assertEquals("REG $zero 0", fault.get(2));
+      }
+    }
+  }
+
+  @Test
+  void testRunawayJobTimesOut() throws Exception {
+    try(SimulationServer server = new SimulationServer(1, 1, Long.MAX_VALUE, 50, 128)){
+      SimulationServer.Result result = server.execute(
+              new SimulationServer.Job("loop:\nj loop\n", null, Long.MAX_VALUE, 50, 128,
+                                       Map.of(), Map.of()));
+      assertEquals(SimulationServer.Status.TIMEOUT, result.status());
+      assertTrue(result.steps() > 0);
+    }
+  }
+
+  @Test
+  void testMetricsAddUpAllJobs() throws Exception {
+    try(SimulationServer server = new SimulationServer(1, 1, 1_000_000, 5_000, 128)){
+      SimulatorMetrics metrics = SimulatorMetrics.register(server.getTotals());
+      try{
+        SimulationServer.Job job = new SimulationServer.Job(
+                "addi $t0, $zero, 3\nloop:\nsw $t0, 0($sp)\naddi $t0, $t0, -1\n"
+                + "bne $t0, $zero, loop\n", null, 1_000, 1_000, 128, Map.of(), Map.of());
+        assertEquals(11, server.execute(job).steps()); // Running off the end is a step
+        assertEquals(11, server.execute(job).steps());
+
+        assertEquals(20, metrics.getInstructionsExecuted());
+        assertEquals(6, metrics.getMemoryWrites());
+        assertEquals(6, metrics.getBranchInstructions());
+        assertTrue(metrics.isFinished());
+      } finally{
+        metrics.unregister();
+      }
+    }
+  }
+
+  private static List<String> readResponse(BufferedReader in) throws Exception {
+    List<String> lines = new ArrayList<>();
+    String line;
+    while((line = in.readLine()) != null && !line.equals("END")){
+      lines.add(line);
+    }
+    return lines;
+  }
+}
@@ -2,7 +2,12 @@ package test;
 
 import org.junit.jupiter.api.Test;
 import sim.Assembler;
+import sim.DataMemory;
+import sim.SimulationController;
 import sim.Simulator;
+import sim.SimulatorMetrics;
+
+import java.lang.management.ManagementFactory;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +53,60 @@ class SimulatorTest {
     assertEquals("136", memory[0][1]); // Memory location 0($sp)
   }
 
+  @Test
+  void testByteAndHalfwordOperations() throws Assembler.AssemblerException {
+    String testCode = """
+                      addi $t0, $zero, -128
+                      sb $t0, 7($sp)
+                      addi $t1, $zero, 4660
+                      sh $t1, 4($sp)
+                      lb $t2, 7($sp)
+                      lbu $t3, 7($sp)
+                      lh $t4, 6($sp)
+                      lhu $t5, 4($sp)
+                      lw $t6, 4($sp)
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    simulator.run(Long.MAX_VALUE);
+
+    // The word at 4($sp) spans bytes 0xFFFFFFF8 to 0xFFFFFFFB, most significant first, and each
+    // access names its highest byte
+    int[] registers = simulator.getRegisterValues();
+    assertEquals(-128, registers[10]); // $t2
+    assertEquals(128, registers[11]); // $t3
+    assertEquals(-32768, registers[12]); // $t4
+    assertEquals(4660, registers[13]); // $t5
+    assertEquals(0x80001234, registers[14]); // $t6
+    assertEquals(0x80001234, simulator.loadWord(0xFFFFFFFB));
+    assertEquals(0x12, simulator.loadByte(0xFFFFFFFA));
+    assertEquals(5, simulator.getOpcodeClassCount(Simulator.OpcodeClass.LOAD));
+    assertEquals(2, simulator.getOpcodeClassCount(Simulator.OpcodeClass.STORE));
+
+    Simulator unaligned = new Simulator("lw $t0, 1($sp)\n");
+    assertThrows(DataMemory.AlignmentException.class, unaligned::step);
+    Simulator outOfRange = new Simulator("lb $t0, 128($sp)\n");
+    assertThrows(IndexOutOfBoundsException.class, outOfRange::step);
+  }
+
+  @Test
+  void testTopWordDoesNotWrapAround() throws Assembler.AssemblerException {
+    Simulator simulator = new Simulator("lb $t0, 0($zero)\n");
+    simulator.storeWord(0xFFFFFFFF, 0x11223344);
+    assertEquals(0x11, simulator.loadByte(0xFFFFFFFC));
+    assertEquals(0x44, simulator.loadByte(0xFFFFFFFF));
+    for(int address = 0; address <= 2; address++){
+      int nullPointer = address;
+      assertThrows(IndexOutOfBoundsException.class, ()->simulator.loadByte(nullPointer));
+    }
+    assertThrows(IndexOutOfBoundsException.class, simulator::step);
+    Simulator halfword = new Simulator("lh $t0, -1($zero)\n"); // Bytes 0 and 1
+    assertThrows(IndexOutOfBoundsException.class, halfword::step);
+
+    // Words start at multiples of 4 bytes, as in program memory
+    Simulator unaligned = new Simulator("lw $t0, 3($sp)\n"); // Bytes 0xFFFFFFF9 to 0xFFFFFFFC
+    assertThrows(DataMemory.AlignmentException.class, unaligned::step);
+  }
+
   @Test
   void testControlFlow() throws Assembler.AssemblerException {
     String testCode = """
@@ -66,5 +125,82 @@ class SimulatorTest {
     String[][] registers = simulator.getRegisterState();
     assertEquals(-32768, Integer.parseInt(registers[8][1])); // $t0
   }
-}
 
+  @Test
+  void testExecutionStatistics() throws Exception {
+    String testCode = """
+                      addi $t1, $zero, 20
+                      addi $t0, $zero, 5
+                      test1:
+                      add $t0, $t0, $t0
+                      bne $t0, $t1, test1
+                      sw $t0, 0($sp)
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    SimulationController controller = new SimulationController(simulator, _->{});
+    SimulatorMetrics metrics = SimulatorMetrics.register(controller);
+    try{
+      simulator.run(Long.MAX_VALUE);
+      assertEquals(0L, metrics.getInstructionsExecuted()); // Not published yet
+      controller.publish();
+
+      assertEquals(7, simulator.getInstructionsExecuted());
+      assertEquals(4, simulator.getOpcodeClassCount(Simulator.OpcodeClass.ARITHMETIC));
+      assertEquals(2, simulator.getOpcodeClassCount(Simulator.OpcodeClass.BRANCH));
+      assertEquals(1, simulator.getBranchesTaken());
+      assertEquals(1, simulator.getOpcodeClassCount(Simulator.OpcodeClass.STORE));
+      assertEquals(7L, ManagementFactory.getPlatformMBeanServer()
+                                        .getAttribute(metrics.getObjectName(),
+                                                      "InstructionsExecuted"));
+      assertEquals("0x00400014", metrics.getProgramCounter());
+      assertEquals(1, metrics.getMemoryWrites());
+    } finally{
+      metrics.unregister();
+    }
+  }
+
+  @Test
+  void testLoopFastForward() throws Assembler.AssemblerException {
+    String testCode = """
+                      addi $t1, $zero, -32768
+                      addi $s0, $zero, 3
+                      addi $t2, $zero, 7
+                      loop:
+                      sub $t0, $t0, $s0
+                      addi $s1, $s1, 5
+                      add $t3, $t2, $s0
+                      bne $t0, $t1, loop
+                      addi $t4, $zero, 1
+                      double:
+                      add $t4, $t4, $t4
+                      bne $t4, $zero, double
+                      """;
+    Simulator simulator = new Simulator(testCode);
+    simulator.run(Long.MAX_VALUE);
+
+    // 3 * 1431666688 == -32768 modulo 2^32
+    long trips = 1431666688L;
+    int[] registers = simulator.getRegisterValues();
+    assertEquals(-32768, registers[8]); // $t0
+    assertEquals((int) (trips * 5), registers[17]); // $s1
+    assertEquals(10, registers[11]); // $t3
+    assertEquals(0, registers[12]); // $t4
+    assertEquals(3 + 4 * trips + 1 + 2 * 32, simulator.getInstructionsExecuted());
+    assertEquals(trips + 32, simulator.getOpcodeClassCount(Simulator.OpcodeClass.BRANCH));
+    assertEquals(trips - 1 + 31, simulator.getBranchesTaken());
+
+    // Partial runs stop mid-loop exactly where single steps would
+    for(long steps : new long[]{1, 6, 9, 1000}){
+      Simulator fastForwarded = new Simulator(testCode);
+      Simulator stepped = new Simulator(testCode);
+      assertEquals(steps, fastForwarded.run(steps));
+      for(long i = 0; i < steps; i++){
+        stepped.step();
+      }
+      assertArrayEquals(stepped.getRegisterValues(), fastForwarded.getRegisterValues());
+      assertEquals(stepped.getProgramCounter(), fastForwarded.getProgramCounter());
+      assertArrayEquals(stepped.getOpcodeClassCounts(), fastForwarded.getOpcodeClassCounts());
+      assertEquals(stepped.getBranchesTaken(), fastForwarded.getBranchesTaken());
+    }
+  }
+}
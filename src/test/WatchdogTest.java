@@ -0,0 +1,112 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Assembler;
+import sim.SimulationController;
+import sim.Simulator;
+import sim.Watchdog;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchdogTest {
+  private static Simulator simulator(String source, int dataMemory)
+          throws Assembler.AssemblerException {
+    Assembler assembler = new Assembler();
+    List<String> binary = assembler.assemble(source);
+    return Simulator.forProgram(binary, assembler.getLabels(), dataMemory);
+  }
+
+  @Test
+  void testRepeatedStateIsDetected() throws Exception {
+    // The counter wraps every 64 iterations of 4 instructions, and is stored each time
+    String testCode = """
+                      addi $t1, $zero, 63
+                      loop:
+                      addi $t0, $t0, 1
+                      and $t0, $t0, $t1
+                      sw $t0, 0($sp)
+                      j loop
+                      """;
+    Watchdog watchdog = new Watchdog(Long.MAX_VALUE, Long.MAX_VALUE, 1_000);
+    Watchdog.WatchdogException e = assertThrows(Watchdog.WatchdogException.class,
+                                                ()->watchdog.run(simulator(testCode, 128)));
+    assertEquals(Watchdog.Reason.REPEATED_STATE, e.getReason());
+    assertTrue(e.getSteps() > 256 && e.getSteps() < 200_000, String.valueOf(e.getSteps()));
+    assertTrue(e.getMessage().contains("loops forever"), e.getMessage());
+
+    Simulator stuck = simulator("loop:\nbeq $zero, $zero, loop\n", 128);
+    e = assertThrows(Watchdog.WatchdogException.class, ()->watchdog.run(stuck));
+    assertEquals("Stopped after 2000 steps at 0x00400000 (beq $zero, $zero, loop): the PC, "
+                 + "registers and memory are the same as at step 1000, so the program loops "
+                 + "forever", e.getMessage());
+  }
+
+  @Test
+  void testChangingMemoryIsProgress() throws Exception {
+    // At every check the PC and registers are the same, only the counter in memory differs
+    String testCode = """
+                      loop:
+                      lw $t0, 0($sp)
+                      addi $t0, $t0, 1
+                      sw $t0, 0($sp)
+                      addi $t0, $zero, 0
+                      j loop
+                      """;
+    Simulator simulator = simulator(testCode, 4096);
+    Watchdog.WatchdogException e =
+            assertThrows(Watchdog.WatchdogException.class,
+                         ()->new Watchdog(100_000, Long.MAX_VALUE, 5).run(simulator));
+    assertEquals(Watchdog.Reason.STEP_BUDGET, e.getReason());
+    assertEquals(100_000, e.getSteps());
+    assertEquals(20_000, simulator.loadWord(0xFFFFFFFF));
+
+    // Stores from outside the program count too
+    Simulator stepped = simulator(testCode, 4096);
+    Watchdog watchdog = new Watchdog(Long.MAX_VALUE, Long.MAX_VALUE, 5);
+    watchdog.start(stepped);
+    for(int i = 0; i < 1_000; i++){
+      stepped.run(5);
+      stepped.storeWord(0xFFFFF003, i + 1);
+      stepped.storeWord(0xFFFFFFFF, 0);
+      watchdog.check();
+    }
+  }
+
+  @Test
+  void testBudgets() throws Exception {
+    String counter = """
+                     loop:
+                     addi $t0, $t0, 1
+                     j loop
+                     """;
+    Watchdog.WatchdogException e =
+            assertThrows(Watchdog.WatchdogException.class,
+                         ()->new Watchdog(Long.MAX_VALUE, 50, 0).run(simulator(counter, 128)));
+    assertEquals(Watchdog.Reason.TIME_BUDGET, e.getReason());
+
+    // A program that finishes within its budget returns normally, even with no step to spare
+    Simulator simulator = simulator("addi $t0, $zero, 1\naddi $t1, $zero, 2\n", 128);
+    assertEquals(2, new Watchdog(2, Long.MAX_VALUE, 1).run(simulator));
+    assertTrue(simulator.isFinished());
+  }
+
+  @Test
+  void testControllerStopsEndlessLoop() throws Exception {
+    Simulator simulator = new Simulator("loop:\nj loop\n");
+    CountDownLatch stopped = new CountDownLatch(1);
+    SimulationController[] controller = new SimulationController[1];
+    controller[0] = new SimulationController(simulator, _->{
+      if(!controller[0].isRunning()) stopped.countDown();
+    });
+    controller[0].setWatchdog(new Watchdog(Long.MAX_VALUE, Long.MAX_VALUE, 1_000));
+    controller[0].start(()->0);
+    assertTrue(stopped.await(10, TimeUnit.SECONDS));
+    String fault = controller[0].snapshot().fault();
+    assertNotNull(fault);
+    assertTrue(fault.contains("loops forever"), fault);
+  }
+}
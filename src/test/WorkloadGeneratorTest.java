@@ -0,0 +1,56 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sim.Simulator;
+import sim.WorkloadGenerator;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadGeneratorTest {
+
+  @Test
+  void testWorkloadsReachExpectedState() throws Exception {
+    for(long seed = 0; seed < 5; seed++){
+      List<WorkloadGenerator.Workload> workloads = List.of(
+              WorkloadGenerator.straightLine(5000, seed),
+              WorkloadGenerator.nestedLoops(3, 20, seed),
+              WorkloadGenerator.nestedLoops(1, 32767, seed),
+              WorkloadGenerator.callChain(1, seed),
+              WorkloadGenerator.callChain(200, seed),
+              WorkloadGenerator.memorySweep(4096, 3, 4, seed));
+      for(WorkloadGenerator.Workload workload : workloads){
+        Simulator simulator = workload.simulator();
+        simulator.run(Long.MAX_VALUE);
+        assertTrue(simulator.isFinished(), workload.name());
+
+        int[] registers = simulator.getRegisterValues();
+        for(Map.Entry<Integer, Integer> register : workload.registers().entrySet()){
+          assertEquals((int) register.getValue(), registers[register.getKey()],
+                       workload.name() + " register " + register.getKey());
+        }
+        int[] memory = simulator.getDataMemoryValues();
+        for(Map.Entry<Integer, Integer> word : workload.memory().entrySet()){
+          assertEquals((int) word.getValue(), memory[(0xFFFFFFFF - word.getKey()) / 4],
+                       workload.name() + " address " + word.getKey());
+        }
+      }
+    }
+  }
+
+  @Test
+  void testWorkloadsAreReproducible() {
+    assertEquals(WorkloadGenerator.straightLine(300, 42).source(),
+                 WorkloadGenerator.straightLine(300, 42).source());
+    assertNotEquals(WorkloadGenerator.straightLine(300, 42).source(),
+                    WorkloadGenerator.straightLine(300, 43).source());
+
+    WorkloadGenerator.Workload sweep = WorkloadGenerator.memorySweep(10, 2, 3, 7);
+    assertEquals(5, sweep.memory().size());
+    assertEquals(9, sweep.dataWords());
+    assertTrue(sweep.source().contains("# expect mem[0xFFFFFFFF] = "));
+    assertTrue(sweep.source().contains("# expect $s2 = 0\n"));
+  }
+}
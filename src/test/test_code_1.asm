@@ -34,4 +34,9 @@ sw $s5, 20($sp)          # Save $s5 to 20($sp) in the stack
 lw $t0, 12($sp)          # Load $t0 from 12($sp) in the stack
 lw $t1, 4($sp)           # Load $t1 from 4($sp) in the stack
 add $s6, $t1, $t0        # $s6 = $t1 + $t0
-sw $s6, 24($sp)          # Save $s6 to 24($sp) in the stack
\ No newline at end of file
+sw $s6, 24($sp)          # Save $s6 to 24($sp) in the stack
+
+# expect $s6 = 560
+# expect mem[0xFFFFFFFF] = 20
+# expect mem[0xFFFFFFF3] = 480
+# expect mem[0xFFFFFFE7] = 560
@@ -19,4 +19,11 @@ loop:                 # Label: loop
 addi $t4, $t4, 2      # Add immediate value 2 to $t4
 slt $t6, $t5, $t4     # Set $t6 to 1 if $t5 is less than $t4, otherwise set to 0
 beq $zero, $t6, loop  # If $t5 is not less than $t4, loop
-sw $t6, 8($sp)        # Store word from $t6 into memory at address 8 offset from $sp
\ No newline at end of file
+sw $t6, 8($sp)        # Store word from $t6 into memory at address 8 offset from $sp
+
+# expect $t2 = 136
+# expect $t3 = 238
+# expect $t4 = 22
+# expect mem[0xFFFFFFFF] = 136
+# expect mem[0xFFFFFFFB] = 238
+# expect mem[0xFFFFFFF7] = 1
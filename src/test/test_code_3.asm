@@ -6,4 +6,8 @@ sw $t1, 0($sp)              # Store the value of register $t1 at the address in
 loop:                       # Label for the loop
 sub $t0, $t0, $s0           # Subtract the value in $s0 from $t0 and store the result in $t0
 sw $t0, 4($sp)              # Store the value of register $t0 at the address in $sp + 4
-bne $t0, $t1, loop          # If the value in $t0 is not equal to the value in $t1, branch to loop
\ No newline at end of file
+bne $t0, $t1, loop          # If the value in $t0 is not equal to the value in $t1, branch to loop
+
+# expect $t0 = -32768
+# expect mem[0xFFFFFFFB] = -32768
+# max-steps 100000